@@ -0,0 +1,9 @@
+package com.ecoenergy.eco_energy.analytics.dto;
+
+import com.ecoenergy.eco_energy.analytics.model.Anomaly;
+
+import java.util.List;
+
+//Se publica despues de guardar un lote de anomalias (AnomalyWriter)
+public record AnomaliesPersistedEvent(List<Anomaly> anomalies) {
+}
@@ -1,5 +1,6 @@
 package com.ecoenergy.eco_energy.analytics.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -16,6 +17,14 @@ public class Reading {
     private double power;
     private double temperature;
     private LocalDateTime timestamp;
+    //Momento de generacion (System.nanoTime) para medir latencias en modo benchmark; 0 = sin marca
+    @JsonIgnore
+    private long generatedAtNanos;
+
+    public Reading(String deviceId, double voltage, double current, double power, double temperature,
+                   LocalDateTime timestamp) {
+        this(deviceId, voltage, current, power, temperature, timestamp, 0L);
+    }
 
     // Constructor de conveniencia para cálculos
     public Reading(double value, LocalDateTime timestamp) {
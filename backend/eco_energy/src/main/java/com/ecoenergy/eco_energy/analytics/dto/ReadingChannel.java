@@ -0,0 +1,18 @@
+package com.ecoenergy.eco_energy.analytics.dto;
+
+//Variables electricas de una lectura, en el orden usado por los arreglos de analisis
+public enum ReadingChannel {
+    VOLTAGE,
+    CURRENT,
+    POWER,
+    TEMPERATURE;
+
+    public double valueOf(Reading reading) {
+        return switch (this) {
+            case VOLTAGE -> reading.getVoltage();
+            case CURRENT -> reading.getCurrent();
+            case POWER -> reading.getPower();
+            case TEMPERATURE -> reading.getTemperature();
+        };
+    }
+}
@@ -10,7 +10,12 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "anomalies")
+@Table(name = "anomalies", indexes = {
+        // Reportes por dispositivo y rango de fechas
+        @Index(name = "idx_anomalies_device_detected", columnList = "device_id, detected_at"),
+        // Consultas por tipo de anomalia y rango de fechas
+        @Index(name = "idx_anomalies_type_detected", columnList = "anomaly_type, detected_at")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -18,10 +23,13 @@ public class Anomaly {
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
     private UUID id;
-    @Column(nullable = false)
+    @Column(name = "device_id", nullable = false)
     private UUID deviceId;
+    @Column(name = "anomaly_type")
     private String anomalyType;
     private double value;
+    //Llave de particion de la tabla (ver db/partitioning/anomalies.sql)
     @CreationTimestamp
+    @Column(name = "detected_at", nullable = false)
     private LocalDateTime detectedAt;
 }
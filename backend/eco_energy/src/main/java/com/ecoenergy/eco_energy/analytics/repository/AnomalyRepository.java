@@ -1,7 +1,14 @@
 package com.ecoenergy.eco_energy.analytics.repository;
 
 import com.ecoenergy.eco_energy.analytics.model.Anomaly;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -18,4 +25,16 @@ public interface AnomalyRepository extends JpaRepository<Anomaly, UUID> {
     long countByDeviceIdAndDetectedAtBetween(UUID deviceId, LocalDateTime startOfDay, LocalDateTime endOfDay);
 
     List<Anomaly> findByDeviceIdAndDetectedAtBetween(UUID deviceId, LocalDateTime startDateTime, LocalDateTime endDateTime);
+
+    //Lectura por paginas con keyset (detectedAt, id) en el rango semiabierto [start, end) para exportaciones
+    Window<Anomaly> findByDetectedAtGreaterThanEqualAndDetectedAtLessThanOrderByDetectedAtAscIdAsc(
+            LocalDateTime start, LocalDateTime end, ScrollPosition position, Limit limit);
+    Window<Anomaly> findByDeviceIdAndDetectedAtGreaterThanEqualAndDetectedAtLessThanOrderByDetectedAtAscIdAsc(
+            UUID deviceId, LocalDateTime start, LocalDateTime end, ScrollPosition position, Limit limit);
+
+    //Retencion cuando la tabla no esta particionada
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Anomaly a WHERE a.detectedAt < :cutoff")
+    int deleteDetectedBefore(@Param("cutoff") LocalDateTime cutoff);
 }
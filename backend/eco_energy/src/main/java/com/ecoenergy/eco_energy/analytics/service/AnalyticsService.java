@@ -18,6 +18,7 @@ import static java.util.stream.Collectors.toList;
 public class AnalyticsService {
     private final UbidotsService ubidotsService;
     private final AnomalyRepository anomalyRepository;
+    private final AnomalyWriter anomalyWriter;
 
     List<Anomaly> detectAnomallies(List<Reading> readings) {
         //Algoritma Z score para detectar anomalías
@@ -28,14 +29,14 @@ public class AnalyticsService {
         // medias y desviaciones estándar, expresándolos en una escala común.
         //z = (x - μ) / σ
         //
-        var mean = calculateMean(readings);
-        var stdDev = calculateStandardDeviation(readings, mean);
+        var statistics = new RunningStatistics();
+        readings.forEach(r -> statistics.add(r.getValue()));
 
-        return readings.stream()
-                .filter(r -> Math.abs(r.getValue() - mean) > 2 * stdDev)
+        List<Anomaly> anomalies = readings.stream()
+                .filter(r -> statistics.isOutlier(r.getValue(), 2))
                 .map(this::createAnomaly)
-                .map((anomalyRepository::save))
                 .collect(toList());
+        return anomalyWriter.saveBatch(anomalies);
     }
 
     public Anomaly saveAnomaly(UUID deviceId, String type, double value) {
@@ -48,21 +49,6 @@ public class AnalyticsService {
         return anomalyRepository.save(anomaly);
     }
 
-    private double calculateMean(List<Reading> readings) {
-        return readings.stream()
-                .mapToDouble(Reading::getValue)
-                .average()
-                .orElse(0.0);
-    }
-
-    private double calculateStandardDeviation(List<Reading> readings, double mean) {
-        double variance = readings.stream()
-                .mapToDouble(r -> Math.pow(r.getValue() - mean, 2))
-                .average()
-                .orElse(0.0);
-        return Math.sqrt(variance);
-    }
-
     private Anomaly createAnomaly(Reading reading) {
         Anomaly anomaly = new Anomaly();
         anomaly.setDeviceId(UUID.fromString(reading.getDeviceId()));
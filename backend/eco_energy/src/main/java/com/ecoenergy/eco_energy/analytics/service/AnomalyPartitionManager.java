@@ -0,0 +1,140 @@
+package com.ecoenergy.eco_energy.analytics.service;
+
+import com.ecoenergy.eco_energy.analytics.repository.AnomalyRepository;
+import com.ecoenergy.eco_energy.config.AnalyticsConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//Mantenimiento de la tabla anomalies particionada por mes:
+//crea las particiones de los proximos meses y elimina con DROP TABLE las que superan la retencion.
+//Si la tabla no esta particionada, la retencion se aplica con un DELETE por fecha.
+//Las filas fuera de las particiones mensuales caen en la particion DEFAULT (un INSERT nunca falla
+//por la fecha). PostgreSQL no permite crear una particion si DEFAULT tiene filas de su rango, asi
+//que al crearla se mueven esas filas en la misma transaccion. Los meses de DEFAULT dentro de la
+//retencion reciben su particion; lo anterior a la retencion se borra de DEFAULT con DELETE.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AnomalyPartitionManager {
+    private static final String TABLE = "anomalies";
+    private static final String DEFAULT_PARTITION = TABLE + "_default";
+    private static final Pattern PARTITION_NAME = Pattern.compile(TABLE + "_p(\\d{6})");
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AnomalyRepository anomalyRepository;
+    private final AnalyticsConfig analyticsConfig;
+    private final PlatformTransactionManager transactionManager;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintainPartitions();
+    }
+
+    @Scheduled(cron = "0 30 3 * * *") // Todos los dias a las 3:30
+    public void maintainPartitions() {
+        try {
+            YearMonth current = YearMonth.now();
+            YearMonth oldestKept = current.minusMonths(analyticsConfig.getRetentionMonths());
+
+            if (!isPartitioned()) {
+                int deleted = anomalyRepository.deleteDetectedBefore(oldestKept.atDay(1).atStartOfDay());
+                log.info("Anomaly retention removed {} rows older than {}", deleted, oldestKept);
+                return;
+            }
+
+            jdbcTemplate.execute(String.format(
+                    "CREATE TABLE IF NOT EXISTS %s PARTITION OF %s DEFAULT", DEFAULT_PARTITION, TABLE));
+            for (int i = 0; i <= analyticsConfig.getPartitionsAhead(); i++) {
+                createPartition(current.plusMonths(i));
+            }
+            for (YearMonth month : monthsInDefaultPartition(oldestKept)) {
+                createPartition(month);
+            }
+            dropPartitionsBefore(oldestKept);
+        } catch (Exception e) {
+            log.error("Error maintaining anomaly partitions", e);
+        }
+    }
+
+    private boolean isPartitioned() {
+        Boolean partitioned = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table pt " +
+                        "JOIN pg_class c ON c.oid = pt.partrelid WHERE c.relname = ?)",
+                Boolean.class, TABLE);
+        return Boolean.TRUE.equals(partitioned);
+    }
+
+    //Las filas del mes que ya estan en DEFAULT se sacan antes de crear la particion y se vuelven
+    //a insertar despues (el INSERT las envia a la particion nueva)
+    private void createPartition(YearMonth month) {
+        String partition = TABLE + "_p" + month.format(SUFFIX);
+        if (Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, partition))) {
+            return;
+        }
+        LocalDate from = month.atDay(1);
+        LocalDate to = month.plusMonths(1).atDay(1);
+        String range = String.format("detected_at >= '%s' AND detected_at < '%s'", from, to);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            jdbcTemplate.execute(String.format(
+                    "CREATE TEMP TABLE anomalies_moving ON COMMIT DROP AS SELECT * FROM %s WHERE %s",
+                    DEFAULT_PARTITION, range));
+            int moved = jdbcTemplate.update(String.format("DELETE FROM %s WHERE %s", DEFAULT_PARTITION, range));
+            jdbcTemplate.execute(String.format(
+                    "CREATE TABLE %s PARTITION OF %s FOR VALUES FROM ('%s') TO ('%s')",
+                    partition, TABLE, from, to));
+            jdbcTemplate.execute(String.format("INSERT INTO %s SELECT * FROM anomalies_moving", TABLE));
+            log.info("Created anomaly partition {} ({} rows moved from {})", partition, moved, DEFAULT_PARTITION);
+        });
+    }
+
+    private List<YearMonth> monthsInDefaultPartition(YearMonth oldestKept) {
+        return jdbcTemplate.queryForList(String.format(
+                                "SELECT DISTINCT to_char(detected_at, 'YYYYMM') FROM %s WHERE detected_at >= ?",
+                                DEFAULT_PARTITION),
+                        String.class, oldestKept.atDay(1).atStartOfDay())
+                .stream()
+                .map(month -> YearMonth.parse(month, SUFFIX))
+                .toList();
+    }
+
+    //Eliminar una particion completa es inmediato, a diferencia de un DELETE fila por fila.
+    //En DEFAULT solo quedan filas fuera de las particiones, por eso ahi basta un DELETE.
+    private void dropPartitionsBefore(YearMonth oldestKept) {
+        int deleted = jdbcTemplate.update(String.format("DELETE FROM %s WHERE detected_at < ?", DEFAULT_PARTITION),
+                oldestKept.atDay(1).atStartOfDay());
+        if (deleted > 0) {
+            log.info("Anomaly retention removed {} rows older than {} from {}", deleted, oldestKept, DEFAULT_PARTITION);
+        }
+
+        List<String> partitions = jdbcTemplate.queryForList(
+                "SELECT child.relname FROM pg_inherits i " +
+                        "JOIN pg_class parent ON parent.oid = i.inhparent " +
+                        "JOIN pg_class child ON child.oid = i.inhrelid " +
+                        "WHERE parent.relname = ?",
+                String.class, TABLE);
+
+        for (String partition : partitions) {
+            Matcher matcher = PARTITION_NAME.matcher(partition);
+            if (matcher.matches() && YearMonth.parse(matcher.group(1), SUFFIX).isBefore(oldestKept)) {
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+                log.info("Dropped anomaly partition {}", partition);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.ecoenergy.eco_energy.analytics.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.AnomaliesPersistedEvent;
+import com.ecoenergy.eco_energy.analytics.model.Anomaly;
+import com.ecoenergy.eco_energy.analytics.repository.AnomalyRepository;
+import com.ecoenergy.eco_energy.config.AnalyticsConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//Persistencia de anomalias por lotes. Las anomalias en tiempo real se encolan y se guardan
+//con saveAll (INSERT agrupados por JDBC) al llenarse el lote o cumplirse el intervalo.
+//Un lote que falla se reintenta en los siguientes flush (hasta maxRetries); lo que se descarta
+//se cuenta en analytics.anomalies.dropped.
+@Slf4j
+@Component
+public class AnomalyWriter {
+    private final AnomalyRepository anomalyRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final AnalyticsConfig.Writer config;
+    private final BlockingQueue<Anomaly> buffer;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "anomaly-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final Counter droppedAnomalies;
+    private final Counter failedFlushes;
+
+    // Lote que fallo al guardarse; se reintenta antes de tomar anomalias nuevas del buffer
+    private List<Anomaly> retryBatch = List.of();
+    private int retryAttempts;
+
+    public AnomalyWriter(AnomalyRepository anomalyRepository, AnalyticsConfig analyticsConfig,
+                         ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry) {
+        this.anomalyRepository = anomalyRepository;
+        this.eventPublisher = eventPublisher;
+        this.config = analyticsConfig.getWriter();
+        this.buffer = new LinkedBlockingQueue<>(config.getBufferCapacity());
+        this.droppedAnomalies = Counter.builder("analytics.anomalies.dropped")
+                .description("Anomalies discarded because they could not be buffered or persisted")
+                .register(meterRegistry);
+        this.failedFlushes = Counter.builder("analytics.anomalies.write.failures")
+                .description("Anomaly batches that failed to persist")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        long interval = config.getFlushInterval().toMillis();
+        flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        flush();
+        synchronized (this) {
+            int unsaved = retryBatch.size() + buffer.size();
+            if (unsaved > 0) {
+                log.error("Shutting down with {} unsaved anomalies", unsaved);
+                droppedAnomalies.increment(unsaved);
+            }
+        }
+    }
+
+    //Escritura diferida: no bloquea al llamador salvo que el buffer este lleno
+    public void enqueue(Collection<Anomaly> anomalies) {
+        for (Anomaly anomaly : anomalies) {
+            if (!buffer.offer(anomaly)) {
+                // Buffer lleno: el llamador guarda un lote para liberar espacio (backpressure)
+                flush();
+                if (!buffer.offer(anomaly)) {
+                    // La base no acepta escrituras y el buffer sigue lleno
+                    droppedAnomalies.increment();
+                }
+            }
+        }
+        if (buffer.size() >= config.getBatchSize() && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushRequested.set(false);
+                flush();
+            });
+        }
+    }
+
+    //Escritura inmediata de un lote (deteccion sobre historiales completos)
+    public List<Anomaly> saveBatch(List<Anomaly> anomalies) {
+        List<Anomaly> saved = anomalyRepository.saveAll(anomalies);
+        publish(saved);
+        return saved;
+    }
+
+    //Lo ejecuta el hilo anomaly-writer y, con el buffer lleno, quien encola: un flush a la vez
+    synchronized void flush() {
+        if (!retryBatch.isEmpty() && !save(retryBatch)) {
+            return;
+        }
+        List<Anomaly> batch;
+        do {
+            batch = new ArrayList<>(config.getBatchSize());
+            buffer.drainTo(batch, config.getBatchSize());
+            if (!batch.isEmpty() && !save(batch)) {
+                // La base fallo: no se siguen drenando lotes hasta el siguiente intervalo
+                return;
+            }
+        } while (batch.size() == config.getBatchSize());
+    }
+
+    //false si el lote quedo pendiente de reintento
+    private boolean save(List<Anomaly> batch) {
+        try {
+            publish(anomalyRepository.saveAll(batch));
+            retryBatch = List.of();
+            retryAttempts = 0;
+            return true;
+        } catch (Exception e) {
+            failedFlushes.increment();
+            retryAttempts = batch == retryBatch ? retryAttempts + 1 : 1;
+            if (retryAttempts > config.getMaxRetries()) {
+                log.error("Dropping {} anomalies after {} failed attempts", batch.size(), retryAttempts, e);
+                droppedAnomalies.increment(batch.size());
+                retryBatch = List.of();
+                retryAttempts = 0;
+                return true;
+            }
+            log.warn("Error persisting {} anomalies (attempt {}), will retry: {}", batch.size(), retryAttempts, e.toString());
+            // La transaccion se revirtio: sin el id asignado en persist, saveAll vuelve a insertar
+            // por lotes en lugar de hacer merge (SELECT por fila)
+            batch.forEach(anomaly -> anomaly.setId(null));
+            retryBatch = batch;
+            return false;
+        }
+    }
+
+    // Avisa a los consumidores (cache de reportes) que hay anomalias nuevas
+    private void publish(List<Anomaly> saved) {
+        if (!saved.isEmpty()) {
+            eventPublisher.publishEvent(new AnomaliesPersistedEvent(List.copyOf(saved)));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.ecoenergy.eco_energy.analytics.service;
+
+import static com.ecoenergy.eco_energy.analytics.service.ReadingBatch.CHANNELS;
+
+//Media y covarianza de las cuatro variables, actualizadas de forma incremental (Welford multivariado).
+//Dos acumuladores se pueden combinar, lo que permite calcularlas con streams paralelos.
+final class ChannelMoments {
+    private final double alpha;
+    private long count;
+    private final double[] mean = new double[CHANNELS];
+    private final double[] comoment = new double[CHANNELS * CHANNELS];
+    private final double[] value = new double[CHANNELS];
+    private final double[] delta = new double[CHANNELS];
+
+    ChannelMoments() {
+        this(0.0);
+    }
+
+    //Con alpha > 0 la media y la covarianza se ponderan exponencialmente
+    ChannelMoments(double alpha) {
+        this.alpha = alpha;
+    }
+
+    void add(ReadingBatch batch, int row) {
+        add(batch.value(0, row), batch.value(1, row), batch.value(2, row), batch.value(3, row));
+    }
+
+    void add(double voltage, double current, double power, double temperature) {
+        count++;
+        value[0] = voltage;
+        value[1] = current;
+        value[2] = power;
+        value[3] = temperature;
+        for (int j = 0; j < CHANNELS; j++) {
+            delta[j] = value[j] - mean[j];
+        }
+
+        if (alpha > 0 && count > 1) {
+            for (int j = 0; j < CHANNELS; j++) {
+                mean[j] += alpha * delta[j];
+            }
+            for (int j = 0; j < CHANNELS; j++) {
+                for (int k = 0; k < CHANNELS; k++) {
+                    comoment[j * CHANNELS + k] = (1 - alpha) * (comoment[j * CHANNELS + k] + alpha * delta[j] * delta[k]);
+                }
+            }
+            return;
+        }
+
+        for (int j = 0; j < CHANNELS; j++) {
+            mean[j] += delta[j] / count;
+        }
+        for (int j = 0; j < CHANNELS; j++) {
+            for (int k = 0; k < CHANNELS; k++) {
+                // delta con la media anterior por la diferencia con la media nueva
+                comoment[j * CHANNELS + k] += delta[j] * (value[k] - mean[k]);
+            }
+        }
+    }
+
+    //Combinacion de dos acumuladores (Chan et al.); solo para el modo sin ponderacion
+    ChannelMoments merge(ChannelMoments other) {
+        if (other.count == 0) return this;
+        if (count == 0) {
+            count = other.count;
+            System.arraycopy(other.mean, 0, mean, 0, CHANNELS);
+            System.arraycopy(other.comoment, 0, comoment, 0, comoment.length);
+            return this;
+        }
+
+        long total = count + other.count;
+        double[] meanDelta = new double[CHANNELS];
+        for (int j = 0; j < CHANNELS; j++) {
+            meanDelta[j] = other.mean[j] - mean[j];
+        }
+        double factor = (double) count * other.count / total;
+        for (int j = 0; j < CHANNELS; j++) {
+            for (int k = 0; k < CHANNELS; k++) {
+                comoment[j * CHANNELS + k] += other.comoment[j * CHANNELS + k] + meanDelta[j] * meanDelta[k] * factor;
+            }
+        }
+        for (int j = 0; j < CHANNELS; j++) {
+            mean[j] += meanDelta[j] * other.count / total;
+        }
+        count = total;
+        return this;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    double mean(int channel) {
+        return mean[channel];
+    }
+
+    double covariance(int j, int k) {
+        if (count == 0) return 0.0;
+        return alpha > 0 ? comoment[j * CHANNELS + k] : comoment[j * CHANNELS + k] / count;
+    }
+
+    double standardDeviation(int channel) {
+        return Math.sqrt(covariance(channel, channel));
+    }
+
+    //Inversa de la matriz de covarianza (Gauss-Jordan) con una pequena regularizacion en la diagonal
+    //para que variables constantes o perfectamente correlacionadas no la vuelvan singular. La
+    //regularizacion es relativa a la varianza de cada variable (las escalas son muy distintas) mas un
+    //piso minimo para las variables constantes.
+    double[] inverseCovariance() {
+        int n = CHANNELS;
+        double[] a = new double[n * n];
+        double[] inverse = new double[n * n];
+        double trace = 0;
+        for (int j = 0; j < n; j++) {
+            trace += covariance(j, j);
+        }
+        double floor = 1e-12 * trace / n + 1e-12;
+
+        for (int j = 0; j < n; j++) {
+            for (int k = 0; k < n; k++) {
+                a[j * n + k] = j == k ? covariance(j, j) * (1 + 1e-9) + floor : covariance(j, k);
+            }
+            inverse[j * n + j] = 1.0;
+        }
+
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            for (int row = col + 1; row < n; row++) {
+                if (Math.abs(a[row * n + col]) > Math.abs(a[pivot * n + col])) pivot = row;
+            }
+            swapRows(a, col, pivot);
+            swapRows(inverse, col, pivot);
+
+            double diagonal = a[col * n + col];
+            for (int k = 0; k < n; k++) {
+                a[col * n + k] /= diagonal;
+                inverse[col * n + k] /= diagonal;
+            }
+            for (int row = 0; row < n; row++) {
+                if (row == col) continue;
+                double factor = a[row * n + col];
+                for (int k = 0; k < n; k++) {
+                    a[row * n + k] -= factor * a[col * n + k];
+                    inverse[row * n + k] -= factor * inverse[col * n + k];
+                }
+            }
+        }
+        return inverse;
+    }
+
+    private static void swapRows(double[] matrix, int a, int b) {
+        if (a == b) return;
+        for (int k = 0; k < CHANNELS; k++) {
+            double tmp = matrix[a * CHANNELS + k];
+            matrix[a * CHANNELS + k] = matrix[b * CHANNELS + k];
+            matrix[b * CHANNELS + k] = tmp;
+        }
+    }
+}
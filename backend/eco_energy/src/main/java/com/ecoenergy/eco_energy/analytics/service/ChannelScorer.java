@@ -0,0 +1,130 @@
+package com.ecoenergy.eco_energy.analytics.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.ReadingChannel;
+import com.ecoenergy.eco_energy.analytics.model.Anomaly;
+import com.ecoenergy.eco_energy.config.AnalyticsConfig;
+import com.ecoenergy.eco_energy.device.model.Device;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static com.ecoenergy.eco_energy.analytics.service.ReadingBatch.CHANNELS;
+
+//Evalua una lectura sobre las cuatro variables a la vez y devuelve una mascara de bits:
+//por cada variable un bit de Z-score, uno de limite inferior y uno de limite superior
+//(segun los umbrales del dispositivo), mas un bit para la distancia de Mahalanobis conjunta.
+final class ChannelScorer {
+    private static final int BITS_PER_CHANNEL = 3;
+    private static final int Z_SCORE = 0;
+    private static final int LOW = 1;
+    private static final int HIGH = 2;
+    static final int MAHALANOBIS_BIT = CHANNELS * BITS_PER_CHANNEL;
+
+    private final boolean statisticsReady;
+    private final double[] mean = new double[CHANNELS];
+    private final double[] standardDeviation = new double[CHANNELS];
+    private final double[] inverseCovariance;
+    private final double[] low = new double[CHANNELS];
+    private final double[] high = new double[CHANNELS];
+    private final double zScoreThreshold;
+    private final double mahalanobisThreshold;
+
+    ChannelScorer(ChannelMoments moments, Device device, AnalyticsConfig config, boolean statisticsReady) {
+        this.statisticsReady = statisticsReady;
+        for (int j = 0; j < CHANNELS; j++) {
+            mean[j] = moments.mean(j);
+            standardDeviation[j] = moments.standardDeviation(j);
+        }
+        this.inverseCovariance = statisticsReady ? moments.inverseCovariance() : null;
+        this.zScoreThreshold = config.getZScoreThreshold();
+        this.mahalanobisThreshold = config.getMahalanobisThreshold();
+
+        // NaN = sin limite configurado (cualquier comparacion con NaN es falsa)
+        Arrays.fill(low, Double.NaN);
+        Arrays.fill(high, Double.NaN);
+        low[ReadingChannel.VOLTAGE.ordinal()] = limit(device.getMinVoltage());
+        high[ReadingChannel.VOLTAGE.ordinal()] = limit(device.getMaxVoltage());
+        high[ReadingChannel.CURRENT.ordinal()] = limit(device.getMaxCurrent());
+        high[ReadingChannel.TEMPERATURE.ordinal()] = limit(device.getMaxTemperature());
+    }
+
+    boolean isStatisticsReady() {
+        return statisticsReady;
+    }
+
+    //true si los limites del dispositivo siguen siendo los usados al crear el evaluador
+    boolean hasLimitsOf(Device device) {
+        return sameLimit(low[ReadingChannel.VOLTAGE.ordinal()], device.getMinVoltage())
+                && sameLimit(high[ReadingChannel.VOLTAGE.ordinal()], device.getMaxVoltage())
+                && sameLimit(high[ReadingChannel.CURRENT.ordinal()], device.getMaxCurrent())
+                && sameLimit(high[ReadingChannel.TEMPERATURE.ordinal()], device.getMaxTemperature());
+    }
+
+    int score(double[] row) {
+        int flags = 0;
+        for (int j = 0; j < CHANNELS; j++) {
+            int base = j * BITS_PER_CHANNEL;
+            if (row[j] < low[j]) flags |= 1 << (base + LOW);
+            if (row[j] > high[j]) flags |= 1 << (base + HIGH);
+            if (statisticsReady && Math.abs(row[j] - mean[j]) > zScoreThreshold * standardDeviation[j]) {
+                flags |= 1 << (base + Z_SCORE);
+            }
+        }
+        if (statisticsReady && squaredMahalanobis(row) > mahalanobisThreshold) {
+            flags |= 1 << MAHALANOBIS_BIT;
+        }
+        return flags;
+    }
+
+    //d² = (x - μ)ᵀ Σ⁻¹ (x - μ)
+    double squaredMahalanobis(double[] row) {
+        double distance = 0;
+        for (int j = 0; j < CHANNELS; j++) {
+            double dj = row[j] - mean[j];
+            for (int k = 0; k < CHANNELS; k++) {
+                distance += dj * inverseCovariance[j * CHANNELS + k] * (row[k] - mean[k]);
+            }
+        }
+        return distance;
+    }
+
+    List<Anomaly> toAnomalies(UUID deviceId, int flags, double[] row, LocalDateTime timestamp) {
+        List<Anomaly> anomalies = new ArrayList<>(Integer.bitCount(flags));
+        LocalDateTime detectedAt = timestamp != null ? timestamp : LocalDateTime.now();
+        for (int bit = 0; bit <= MAHALANOBIS_BIT; bit++) {
+            if ((flags & (1 << bit)) == 0) continue;
+
+            Anomaly anomaly = new Anomaly();
+            anomaly.setDeviceId(deviceId);
+            anomaly.setAnomalyType(anomalyType(bit));
+            anomaly.setValue(bit == MAHALANOBIS_BIT
+                    ? Math.sqrt(squaredMahalanobis(row))
+                    : row[bit / BITS_PER_CHANNEL]);
+            anomaly.setDetectedAt(detectedAt);
+            anomalies.add(anomaly);
+        }
+        return anomalies;
+    }
+
+    //Ej: VOLTAGE_LOW, TEMPERATURE_HIGH, POWER_Z_SCORE, MAHALANOBIS
+    static String anomalyType(int bit) {
+        if (bit == MAHALANOBIS_BIT) return "MAHALANOBIS";
+        String channel = ReadingChannel.values()[bit / BITS_PER_CHANNEL].name();
+        return switch (bit % BITS_PER_CHANNEL) {
+            case LOW -> channel + "_LOW";
+            case HIGH -> channel + "_HIGH";
+            default -> channel + "_Z_SCORE";
+        };
+    }
+
+    private static double limit(Double value) {
+        return value != null ? value : Double.NaN;
+    }
+
+    private static boolean sameLimit(double current, Double configured) {
+        return Double.compare(current, limit(configured)) == 0;
+    }
+}
@@ -5,7 +5,7 @@ import com.ecoenergy.eco_energy.analytics.dto.Reading;
 import com.ecoenergy.eco_energy.analytics.dto.SimulationResult;
 import com.ecoenergy.eco_energy.analytics.model.Anomaly;
 import com.ecoenergy.eco_energy.device.model.Device;
-import com.ecoenergy.eco_energy.ubidots.service.UbidotsService;
+import com.ecoenergy.eco_energy.timeseries.service.ReadingStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -22,36 +22,27 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 @Slf4j
 public class DigitalTwinService {
-    private final UbidotsService ubidotsService;
+    private final ReadingStore readingStore;
 
     public PowerConsumption predict(Device device, Duration timeFrame) {
         LocalDateTime startTime = LocalDateTime.now().minus(timeFrame);
         LocalDateTime endTime = LocalDateTime.now();
-        List<Reading> readings = ubidotsService.getReading(device.getUbidotsLabel(), startTime, endTime);
+        List<Reading> readings = readingStore.findRange(device.getUbidotsLabel(), startTime, endTime);
 
         if (readings.isEmpty()) {
             log.warn("No readings found for device: {}", device.getUbidotsLabel());
             return new PowerConsumption(0.0, LocalDateTime.now(), 0.0, "No Data");
         }
 
-        double totalPowe = 0.0;
+        RunningStatistics statistics = new RunningStatistics();
         for (Reading reading : readings) {
-            totalPowe += reading.getValue();
+            statistics.add(reading.getValue());
         }
 
-        double averagePower = totalPowe / readings.size();
-
-        double variance = readings.stream()
-                .mapToDouble(r -> Math.pow(r.getValue() - averagePower, 2))
-                .average()
-                .orElse(0.0);
-
-        double stdDev = Math.sqrt(variance);
-
         return new PowerConsumption(
-                averagePower,
+                statistics.getMean(),
                 LocalDateTime.now(),
-                stdDev,
+                statistics.getStandardDeviation(),
                 "SimpleAverage"
         );
     }
@@ -62,25 +53,15 @@ public class DigitalTwinService {
             log.warn("No readings provided for anomaly detection.");
             return List.of();
         }
-        // Calculamos la media de las lecturas
-        // y la desviación estándar para detectar anomalías
-        double sum = 0;
-        for (Reading reading : readings) {
-            sum += reading.getValue();
-        }
-        double mean = sum / readings.size();
-
-        double totalDiference = 0;
+        // Calculamos la media y la desviación estándar en una sola pasada (Welford)
+        RunningStatistics statistics = new RunningStatistics();
         for (Reading reading : readings) {
-            totalDiference += Math.pow(reading.getValue() - mean, 2);
+            statistics.add(reading.getValue());
         }
-        //Aplicamos la fórmula de desviación estándar
-        //para detectar anomalías
-        double stdDev = Math.sqrt(totalDiference / readings.size());
         //Identificamos las anomalías
         List<Anomaly> listAnomalies = new ArrayList<>();
         for (Reading reading : readings) {
-            if (Math.abs(reading.getValue() - mean) > 2 * stdDev) {
+            if (statistics.isOutlier(reading.getValue(), 2)) {
                 Anomaly anomaly = new Anomaly();
                 anomaly.setDeviceId(UUID.fromString(reading.getDeviceId()));
                 anomaly.setAnomalyType("Z-SCORE");
@@ -96,7 +77,7 @@ public class DigitalTwinService {
         LocalDateTime now = LocalDateTime.now();
         LocalDateTime oneDayAgo = now.minusDays(1);
 
-        List<Reading> readings = ubidotsService.getReading(device.getUbidotsLabel(), oneDayAgo, now);
+        List<Reading> readings = readingStore.findRange(device.getUbidotsLabel(), oneDayAgo, now);
         if (readings.isEmpty()) {
             log.warn("No readings available for device: {}", device.getUbidotsLabel());
             return new SimulationResult(0.0, 0.0, parameters, "No Data", 0.0);
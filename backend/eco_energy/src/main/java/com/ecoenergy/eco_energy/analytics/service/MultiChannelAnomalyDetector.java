@@ -0,0 +1,55 @@
+package com.ecoenergy.eco_energy.analytics.service;
+
+import com.ecoenergy.eco_energy.analytics.model.Anomaly;
+import com.ecoenergy.eco_energy.config.AnalyticsConfig;
+import com.ecoenergy.eco_energy.device.model.Device;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static com.ecoenergy.eco_energy.analytics.service.ReadingBatch.CHANNELS;
+
+//Deteccion por lotes sobre voltaje, corriente, potencia y temperatura.
+//Primera pasada: media y covarianza (paralela). Segunda pasada: mascara de anomalias por fila (paralela).
+//Los objetos Anomaly solo se crean para las filas marcadas.
+@Service
+@RequiredArgsConstructor
+public class MultiChannelAnomalyDetector {
+    private final AnalyticsConfig analyticsConfig;
+
+    public List<Anomaly> detect(Device device, ReadingBatch batch) {
+        int size = batch.size();
+        if (size == 0) {
+            return List.of();
+        }
+
+        ChannelMoments moments = IntStream.range(0, size)
+                .parallel()
+                .collect(ChannelMoments::new, (acc, row) -> acc.add(batch, row), ChannelMoments::merge);
+        ChannelScorer scorer = new ChannelScorer(moments, device, analyticsConfig, size > 1);
+
+        int[] flags = new int[size];
+        IntStream.range(0, size)
+                .parallel()
+                .forEach(row -> flags[row] = scorer.score(rowValues(batch, row)));
+
+        List<Anomaly> anomalies = new ArrayList<>();
+        for (int row = 0; row < size; row++) {
+            if (flags[row] != 0) {
+                anomalies.addAll(scorer.toAnomalies(device.getId(), flags[row], rowValues(batch, row), batch.timestamp(row)));
+            }
+        }
+        return anomalies;
+    }
+
+    private static double[] rowValues(ReadingBatch batch, int row) {
+        double[] values = new double[CHANNELS];
+        for (int j = 0; j < CHANNELS; j++) {
+            values[j] = batch.value(j, row);
+        }
+        return values;
+    }
+}
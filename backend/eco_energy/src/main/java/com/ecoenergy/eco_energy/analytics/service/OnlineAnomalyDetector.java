@@ -0,0 +1,74 @@
+package com.ecoenergy.eco_energy.analytics.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.analytics.model.Anomaly;
+import com.ecoenergy.eco_energy.config.AnalyticsConfig;
+import com.ecoenergy.eco_energy.device.model.Device;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Deteccion de anomalias en tiempo real: cada dispositivo mantiene sus estadisticas
+//acumuladas y cada lectura nueva se evalua en O(1), sin volver a consultar el historial.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class OnlineAnomalyDetector {
+    private final AnomalyWriter anomalyWriter;
+    private final AnalyticsConfig analyticsConfig;
+    private final Map<UUID, DeviceState> statesByDevice = new ConcurrentHashMap<>();
+
+    //Estadisticas del dispositivo y el evaluador construido a partir de ellas. Crear el evaluador
+    //invierte la matriz de covarianza, por eso se reutiliza hasta que las estadisticas cambian lo
+    //suficiente (scorerRefreshReadings), termina el calentamiento o cambian los limites del dispositivo.
+    private static final class DeviceState {
+        private final ChannelMoments moments;
+        private ChannelScorer scorer;
+        private long scorerBuiltAt;
+
+        DeviceState(double alpha) {
+            this.moments = new ChannelMoments(alpha);
+        }
+    }
+
+    public List<Anomaly> evaluate(Device device, Reading reading) {
+        DeviceState state = statesByDevice.computeIfAbsent(
+                device.getId(), id -> new DeviceState(analyticsConfig.getEwmaAlpha()));
+        double[] row = {reading.getVoltage(), reading.getCurrent(), reading.getPower(), reading.getTemperature()};
+
+        ChannelScorer scorer;
+        int flags;
+        synchronized (state) {
+            // Evaluamos contra la historia previa y luego incorporamos la lectura
+            scorer = scorerFor(state, device);
+            flags = scorer.score(row);
+            state.moments.add(row[0], row[1], row[2], row[3]);
+        }
+
+        if (flags == 0) {
+            return List.of();
+        }
+
+        List<Anomaly> anomalies = scorer.toAnomalies(device.getId(), flags, row, reading.getTimestamp());
+        log.warn("{} anomalies detected for device {}", anomalies.size(), device.getId());
+        anomalyWriter.enqueue(anomalies);
+        return anomalies;
+    }
+
+    private ChannelScorer scorerFor(DeviceState state, Device device) {
+        long count = state.moments.getCount();
+        boolean ready = count >= analyticsConfig.getMinSamples();
+        ChannelScorer scorer = state.scorer;
+        if (scorer == null || scorer.isStatisticsReady() != ready || !scorer.hasLimitsOf(device)
+                || count - state.scorerBuiltAt >= analyticsConfig.getScorerRefreshReadings()) {
+            state.scorer = new ChannelScorer(state.moments, device, analyticsConfig, ready);
+            state.scorerBuiltAt = count;
+        }
+        return state.scorer;
+    }
+}
@@ -0,0 +1,50 @@
+package com.ecoenergy.eco_energy.analytics.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.analytics.dto.ReadingChannel;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+//Lote de lecturas en estructura de arreglos: un arreglo primitivo por variable.
+//Recorrer una columna es secuencial en memoria y no crea objetos por lectura.
+public final class ReadingBatch {
+    static final int CHANNELS = ReadingChannel.values().length;
+
+    private final double[][] channels;
+    private final LocalDateTime[] timestamps;
+    private final int size;
+
+    private ReadingBatch(double[][] channels, LocalDateTime[] timestamps) {
+        this.channels = channels;
+        this.timestamps = timestamps;
+        this.size = timestamps.length;
+    }
+
+    public static ReadingBatch of(List<Reading> readings) {
+        int size = readings.size();
+        double[][] channels = new double[CHANNELS][size];
+        LocalDateTime[] timestamps = new LocalDateTime[size];
+        for (int i = 0; i < size; i++) {
+            Reading reading = readings.get(i);
+            channels[ReadingChannel.VOLTAGE.ordinal()][i] = reading.getVoltage();
+            channels[ReadingChannel.CURRENT.ordinal()][i] = reading.getCurrent();
+            channels[ReadingChannel.POWER.ordinal()][i] = reading.getPower();
+            channels[ReadingChannel.TEMPERATURE.ordinal()][i] = reading.getTemperature();
+            timestamps[i] = reading.getTimestamp();
+        }
+        return new ReadingBatch(channels, timestamps);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    double value(int channel, int row) {
+        return channels[channel][row];
+    }
+
+    LocalDateTime timestamp(int row) {
+        return timestamps[row];
+    }
+}
@@ -0,0 +1,54 @@
+package com.ecoenergy.eco_energy.analytics.service;
+
+//Media y varianza incrementales (algoritmo de Welford): O(1) por valor y una sola pasada.
+//Con alpha > 0 se usa la version ponderada exponencialmente, que olvida la historia antigua.
+public class RunningStatistics {
+    private final double alpha;
+    private long count;
+    private double mean;
+    private double m2;
+    private double ewmVariance;
+
+    public RunningStatistics() {
+        this(0.0);
+    }
+
+    public RunningStatistics(double alpha) {
+        this.alpha = alpha;
+    }
+
+    public void add(double value) {
+        count++;
+        double delta = value - mean;
+        if (alpha > 0 && count > 1) {
+            double increment = alpha * delta;
+            mean += increment;
+            ewmVariance = (1 - alpha) * (ewmVariance + delta * increment);
+        } else {
+            mean += delta / count;
+            m2 += delta * (value - mean);
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    //Varianza poblacional, igual que el calculo por lotes original
+    public double getVariance() {
+        if (count == 0) return 0.0;
+        return alpha > 0 ? ewmVariance : m2 / count;
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    public boolean isOutlier(double value, double threshold) {
+        return Math.abs(value - mean) > threshold * getStandardDeviation();
+    }
+}
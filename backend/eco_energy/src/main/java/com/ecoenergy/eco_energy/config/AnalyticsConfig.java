@@ -0,0 +1,39 @@
+package com.ecoenergy.eco_energy.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "analytics")
+@Data
+public class AnalyticsConfig {
+    //Desviaciones estandar a partir de las cuales una lectura es anomala
+    private double zScoreThreshold = 2.0;
+    //Lecturas minimas por dispositivo antes de evaluar (calentamiento)
+    private long minSamples = 30;
+    //Peso de la media movil exponencial; 0 usa la media y varianza de toda la historia
+    private double ewmaAlpha = 0.0;
+    //Limite de la distancia de Mahalanobis al cuadrado (chi-cuadrado, 4 grados de libertad, p = 0.001)
+    private double mahalanobisThreshold = 18.47;
+    //Lecturas nuevas de un dispositivo tras las cuales se recalcula su evaluador (medias, desviaciones e
+    //inversa de la covarianza); entre recalculos cada lectura se evalua contra esa foto de las estadisticas
+    private int scorerRefreshReadings = 20;
+    private Writer writer = new Writer();
+    //Meses de anomalias que se conservan; las particiones mas antiguas se eliminan
+    private int retentionMonths = 12;
+    //Particiones mensuales que se crean por adelantado
+    private int partitionsAhead = 2;
+
+    //Escritura diferida de anomalias por lotes
+    @Data
+    public static class Writer {
+        private int bufferCapacity = 50_000;
+        private int batchSize = 500;
+        private Duration flushInterval = Duration.ofSeconds(1);
+        //Intentos de guardar un lote que fallo antes de descartarlo
+        private int maxRetries = 5;
+    }
+}
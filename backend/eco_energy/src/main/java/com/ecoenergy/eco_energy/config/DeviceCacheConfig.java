@@ -0,0 +1,22 @@
+package com.ecoenergy.eco_energy.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "devices.cache")
+@Data
+public class DeviceCacheConfig {
+    //Dispositivos guardados por id y por etiqueta de Ubidots
+    private long maximumSize = 10_000;
+    //Tiempo maximo que un dispositivo permanece en cache sin recargarse de la base de datos
+    private Duration ttl = Duration.ofMinutes(5);
+    //Vigencia de una etiqueta sin dispositivo; se guarda poco para que los agregados y lecturas de
+    //dispositivos no registrados no consulten la base de datos en cada lote
+    private Duration missTtl = Duration.ofSeconds(30);
+    //Vigencia de la lista de dispositivos activos (el simulador la consulta cada 5 segundos)
+    private Duration activeSnapshotTtl = Duration.ofSeconds(30);
+}
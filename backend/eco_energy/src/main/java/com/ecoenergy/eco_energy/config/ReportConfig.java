@@ -0,0 +1,33 @@
+package com.ecoenergy.eco_energy.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "reports")
+@Data
+public class ReportConfig {
+    //Dispositivos procesados en paralelo al calcular los KPIs de toda la flota
+    private int kpiConcurrency = 16;
+    //Tiempo maximo por dispositivo; si se excede se reporta como no disponible
+    private Duration kpiTimeout = Duration.ofSeconds(10);
+    //Filas por record batch en las exportaciones columnares (Arrow)
+    private int columnarBatchRows = 64 * 1024;
+    //Cache de reportes: los periodos que incluyen el dia actual expiran pronto; los cerrados duran mas,
+    //pero tambien expiran porque lecturas tardias o reenviadas todavia pueden cambiarlos
+    private long cacheMaximumSize = 10_000;
+    private Duration cacheOpenPeriodTtl = Duration.ofSeconds(15);
+    private Duration cacheClosedPeriodTtl = Duration.ofHours(1);
+    //Exportaciones en segundo plano: carpeta de los archivos, dispositivos en paralelo por trabajo,
+    //trabajos en curso a la vez (los demas se rechazan) y tiempo que se conservan los archivos terminados
+    private Path exportDirectory = Path.of(System.getProperty("java.io.tmpdir"), "eco-energy-exports");
+    private int exportConcurrency = 8;
+    private int exportMaxActiveJobs = 4;
+    private Duration exportRetention = Duration.ofHours(24);
+    //Puntos maximos por respuesta del historial reducido (RAW no tiene limite)
+    private int historyMaxPoints = 10_000;
+}
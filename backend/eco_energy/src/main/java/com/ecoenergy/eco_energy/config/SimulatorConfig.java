@@ -0,0 +1,77 @@
+package com.ecoenergy.eco_energy.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties(prefix = "simulator")
+@Data
+public class SimulatorConfig {
+    private boolean enabled = true;
+    //Intervalo entre lecturas de un mismo dispositivo
+    private Duration tickInterval = Duration.ofSeconds(5);
+    //Hilos del simulador; cada dispositivo queda asignado siempre al mismo
+    private int shards = Runtime.getRuntime().availableProcessors();
+    //Cada cuanto se vuelve a consultar la lista de dispositivos activos
+    private Duration refreshInterval = Duration.ofSeconds(30);
+    //Dispositivos sinteticos adicionales (sin registro en la base de datos) para pruebas de carga
+    private int virtualDevices = 0;
+    private String virtualLabelPrefix = "virtual-";
+    private List<String> virtualDeviceTypes = List.of("motor", "pump", "compressor");
+    //Probabilidad de inyectar una anomalia en cada lectura
+    private double anomalyProbability = 0.05;
+    private Sinks sinks = new Sinks();
+    private Benchmark benchmark = new Benchmark();
+
+    //Destinos en uso: en modo benchmark se toman los del benchmark
+    public Sinks activeSinks() {
+        return benchmark.isEnabled() ? benchmark.getSinks() : sinks;
+    }
+
+    //Destinos de cada lectura simulada; en false se reemplaza por un sustituto local que la descarta
+    @Data
+    public static class Sinks {
+        private boolean store = true;
+        private boolean anomalyDetection = true;
+        private boolean ubidots = true;
+        private boolean webSocket = true;
+
+        //Todos reemplazados por sustitutos locales
+        public static Sinks localOnly() {
+            Sinks sinks = new Sinks();
+            sinks.setStore(false);
+            sinks.setAnomalyDetection(false);
+            sinks.setUbidots(false);
+            sinks.setWebSocket(false);
+            return sinks;
+        }
+    }
+
+    //Modo benchmark: reemplaza los ticks normales por una carga a tasa controlada y mide latencias
+    @Data
+    public static class Benchmark {
+        private boolean enabled = false;
+        private int readingsPerSecond = 10_000;
+        //Dispositivos virtuales entre los que se reparten las lecturas
+        private int devices = 1_000;
+        private double anomalyProbability = 0.05;
+        //Hilos generadores; cada uno produce readingsPerSecond / threads
+        private int threads = 4;
+        //Las lecturas del calentamiento no se incluyen en el reporte
+        private Duration warmup = Duration.ofSeconds(10);
+        private Duration duration = Duration.ofSeconds(60);
+        //Rafagas: cada burstPeriod la tasa se multiplica por burstFactor durante burstLength (0 = sin rafagas)
+        private Duration burstPeriod = Duration.ZERO;
+        private Duration burstLength = Duration.ofSeconds(5);
+        private double burstFactor = 3.0;
+        //Archivo donde se escribe el reporte (ademas del log)
+        private Path reportFile = Path.of("benchmark-report.txt");
+        //Destinos durante el benchmark; por defecto ninguno sale del proceso, cada uno se activa a mano
+        private Sinks sinks = Sinks.localOnly();
+    }
+}
@@ -1,10 +1,23 @@
 package com.ecoenergy.eco_energy.config;
 
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.nio.file.Path;
+import java.time.Duration;
 
 @Configuration
 @ConfigurationProperties(prefix = "ubidots")
@@ -12,13 +25,157 @@ import org.springframework.web.reactive.function.client.WebClient;
 public class UbidotsConfig {
     private String apiUrl = "https://industrial.api.ubidots.com/api/v1.6";
     private String token;
+    //Tiempo maximo por cada consulta de variable; en el historial, por cada bloque del rango
+    private Duration readTimeout = Duration.ofSeconds(10);
+    //Diferencia maxima entre timestamps de variables para considerarlas la misma lectura
+    private Duration joinTolerance = Duration.ofSeconds(1);
+    //Tamano de cada ventana al recorrer rangos largos en streaming
+    private Duration streamWindow = Duration.ofHours(1);
+    private Ingestion ingestion = new Ingestion();
+    private HistoryCache historyCache = new HistoryCache();
+    private Http http = new Http();
+    private Resilience resilience = new Resilience();
+    private Spill spill = new Spill();
+    private Outbox outbox = new Outbox();
 
     @Bean
     public WebClient ubidotsWebClient(){
+        // Pool acotado: si Ubidots se degrada las peticiones esperan un tiempo limitado por una conexion
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("ubidots")
+                .maxConnections(http.getMaxConnections())
+                .pendingAcquireMaxCount(http.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(http.getPendingAcquireTimeout())
+                .maxIdleTime(http.getMaxIdleTime())
+                .evictInBackground(http.getMaxIdleTime())
+                .metrics(true)
+                .build();
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) http.getConnectTimeout().toMillis())
+                // Timeout por respuesta (no por conexion), asi no afecta a las conexiones inactivas del pool
+                .responseTimeout(http.getResponseTimeout());
+
         return  WebClient.builder()
                 .baseUrl(apiUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
                 .defaultHeader("X-Auth-Token", token)
-                .defaultHeader("Content-Type", "applicaton/json")
+                .defaultHeader("Content-Type", "application/json")
+                .build();
+    }
+
+    //Peor caso de una peticion con todos sus reintentos: cada intento espera conexion del pool, conexion
+    //y respuesta, y entre intentos la espera exponencial con el jitter maximo
+    public Duration worstCaseRequestTime() {
+        Duration attempt = http.getPendingAcquireTimeout().plus(http.getConnectTimeout()).plus(http.getResponseTimeout());
+        Duration total = attempt.multipliedBy(resilience.getMaxRetries() + 1L);
+        Duration backoff = resilience.getRetryBackoff();
+        for (int retry = 0; retry < resilience.getMaxRetries(); retry++) {
+            Duration wait = backoff.plusMillis((long) (backoff.toMillis() * resilience.getRetryJitter()));
+            total = total.plus(wait.compareTo(resilience.getMaxRetryBackoff()) < 0 ? wait : resilience.getMaxRetryBackoff());
+            backoff = backoff.multipliedBy(2);
+        }
+        return total;
+    }
+
+    //Se abre con una tasa alta de fallos o de llamadas lentas y deja de enviar a Ubidots mientras tanto
+    @Bean
+    public CircuitBreaker ubidotsCircuitBreaker(MeterRegistry meterRegistry) {
+        CircuitBreakerConfig breakerConfig = CircuitBreakerConfig.custom()
+                .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+                .slidingWindowSize(resilience.getSlidingWindowSize())
+                .minimumNumberOfCalls(resilience.getMinimumNumberOfCalls())
+                .failureRateThreshold(resilience.getFailureRateThreshold())
+                .slowCallDurationThreshold(resilience.getSlowCallThreshold())
+                .slowCallRateThreshold(resilience.getSlowCallRateThreshold())
+                .waitDurationInOpenState(resilience.getOpenStateWait())
+                .permittedNumberOfCallsInHalfOpenState(resilience.getHalfOpenCalls())
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                // Los errores 4xx son del cliente (payload, token), no indican que Ubidots este degradado
+                .ignoreException(error -> error instanceof WebClientResponseException response
+                        && response.getStatusCode().is4xxClientError()
+                        && response.getStatusCode().value() != 429)
                 .build();
+
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.of(breakerConfig);
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry);
+        return registry.circuitBreaker("ubidots");
+    }
+
+    //Parametros del pipeline de envio por lotes
+    @Data
+    public static class Ingestion {
+        //Se envia un lote al alcanzar este tamano o al cumplirse el intervalo
+        private int batchSize = 500;
+        private Duration flushInterval = Duration.ofSeconds(2);
+        private int maxConcurrentRequests = 4;
+        //Espera maxima por lote; debe cubrir worstCaseRequestTime (si es menor se usa ese valor).
+        //Lo que no termine a tiempo se cancela y se reintenta en el siguiente ciclo.
+        private Duration flushTimeout = Duration.ofSeconds(90);
+    }
+
+    //Cache de consultas historicas por bloques de tiempo
+    @Data
+    public static class HistoryCache {
+        //Los rangos se dividen en bloques alineados de este tamano
+        private Duration block = Duration.ofHours(1);
+        //Margen para datos que llegan tarde: un bloque se considera cerrado cuando termino hace mas de esto
+        private Duration settleDelay = Duration.ofMinutes(5);
+        //Puntos maximos guardados entre todos los bloques
+        private long maximumValues = 1_000_000;
+        //La cola abierta del rango solo se comparte entre consultas simultaneas
+        private Duration tailTtl = Duration.ofSeconds(2);
+        //Bloques consultados en paralelo dentro de un mismo rango
+        private int concurrency = 4;
+    }
+
+    //Pool de conexiones y timeouts del cliente HTTP
+    @Data
+    public static class Http {
+        private int maxConnections = 50;
+        //Peticiones que pueden esperar una conexion libre antes de rechazarse
+        private int pendingAcquireMaxCount = 500;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        private Duration connectTimeout = Duration.ofSeconds(3);
+        private Duration responseTimeout = Duration.ofSeconds(10);
+    }
+
+    //Reintentos y circuit breaker
+    @Data
+    public static class Resilience {
+        //Reintentos despues del primer intento, con espera exponencial y jitter
+        private int maxRetries = 3;
+        private Duration retryBackoff = Duration.ofMillis(200);
+        private Duration maxRetryBackoff = Duration.ofSeconds(5);
+        private double retryJitter = 0.5;
+        private int slidingWindowSize = 50;
+        private int minimumNumberOfCalls = 20;
+        private float failureRateThreshold = 50;
+        private Duration slowCallThreshold = Duration.ofSeconds(5);
+        private float slowCallRateThreshold = 80;
+        private Duration openStateWait = Duration.ofSeconds(30);
+        private int halfOpenCalls = 5;
+    }
+
+    //Cola local en disco para envios que no se pudieron completar
+    @Data
+    public static class Spill {
+        private Path directory = Path.of(System.getProperty("java.io.tmpdir"), "eco-energy-ubidots-spill");
+        //Cada cuanto se intenta reenviar lo guardado
+        private Duration replayInterval = Duration.ofSeconds(30);
+        //Tamano maximo del archivo activo antes de rotarlo
+        private long maxSegmentBytes = 16 * 1024 * 1024;
+    }
+
+    //Write-ahead log local donde se guarda cada lectura antes de enviarla
+    @Data
+    public static class Outbox {
+        private Path directory = Path.of(System.getProperty("java.io.tmpdir"), "eco-energy-ubidots-outbox");
+        //Tamano de cada segmento mapeado en memoria
+        private int segmentBytes = 64 * 1024 * 1024;
+        //Segmentos maximos en disco; al superarse se descarta el mas antiguo sin enviar
+        private int maxSegments = 32;
+        //Cada cuanto se fuerzan a disco las paginas escritas
+        private Duration syncInterval = Duration.ofSeconds(1);
     }
 }
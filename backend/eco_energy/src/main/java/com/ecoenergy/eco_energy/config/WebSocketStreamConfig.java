@@ -0,0 +1,24 @@
+package com.ecoenergy.eco_energy.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "websocket.stream")
+@Data
+public class WebSocketStreamConfig {
+    //Si un envio a un cliente tarda mas que esto la sesion se cierra (consumidor lento)
+    private Duration sendTimeLimit = Duration.ofSeconds(10);
+    //Bytes maximos pendientes por sesion; al superarse la sesion se cierra
+    private int bufferSizeLimit = 512 * 1024;
+    //Lecturas maximas por trama en el subprotocolo binario
+    private int binaryMaxBatch = 256;
+    //Suscripciones con ventana: cada cuanto se revisan las ventanas cerradas, duracion minima
+    //de una ventana y puntos maximos por ventana
+    private Duration windowTick = Duration.ofSeconds(1);
+    private Duration windowMinimum = Duration.ofSeconds(1);
+    private int windowMaxPoints = 1000;
+}
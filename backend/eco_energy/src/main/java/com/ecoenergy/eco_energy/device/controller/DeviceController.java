@@ -1,9 +1,12 @@
 package com.ecoenergy.eco_energy.device.controller;
 
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.analytics.service.OnlineAnomalyDetector;
 import com.ecoenergy.eco_energy.device.dto.DeviceReadingRequest;
 import com.ecoenergy.eco_energy.device.model.Device;
 import com.ecoenergy.eco_energy.device.repository.DeviceRepository;
 import com.ecoenergy.eco_energy.device.service.DeviceService;
+import com.ecoenergy.eco_energy.timeseries.service.ReadingStore;
 import com.ecoenergy.eco_energy.ubidots.dto.UbidotsDTO;
 import com.ecoenergy.eco_energy.ubidots.service.UbidotsService;
 import jakarta.validation.Valid;
@@ -28,6 +31,8 @@ public class DeviceController {
     private final UbidotsService ubidotsService;
     private final DeviceService deviceService;
     private final DeviceRepository deviceRepository;
+    private final ReadingStore readingStore;
+    private final OnlineAnomalyDetector onlineAnomalyDetector;
     @PostMapping
     public ResponseEntity<Device> createDevice(@RequestBody Device device) {
         Device createdDevice = deviceService.createDevice(device);
@@ -43,8 +48,7 @@ public class DeviceController {
 
     @PutMapping("/{id}")
     public ResponseEntity<Device> updateDevice(@PathVariable UUID id, @RequestBody Device updatedData) {
-        return deviceService.getDevice(id)
-                .map(existingDevice -> {
+        return deviceService.updateDevice(id, existingDevice -> {
                     existingDevice.setName(updatedData.getName());
                     existingDevice.setType(updatedData.getType());
 
@@ -53,12 +57,8 @@ public class DeviceController {
                             ? updatedData.getStatus()
                             : Device.DeviceStatus.ACTIVE;
                     existingDevice.setStatus(status);
-
-                    existingDevice.setUpdatedAt(LocalDateTime.now());
-
-                    Device updatedDevice = deviceService.updateDevice(existingDevice);
-                    return ResponseEntity.ok(updatedDevice);
                 })
+                .map(ResponseEntity::ok)
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
@@ -105,13 +105,17 @@ public class DeviceController {
         }
 
         Device device = optionalDevice.get();
-        ubidotsService.sendDataReading(
+        Reading deviceReading = new Reading(
                 device.getUbidotsLabel(),
                 reading.getVoltage(),
                 reading.getCurrent(),
                 reading.getPower(),
-                reading.getTemperature()
+                reading.getTemperature(),
+                LocalDateTime.now()
         );
+        readingStore.append(deviceReading);
+        onlineAnomalyDetector.evaluate(device, deviceReading);
+        ubidotsService.sendReading(deviceReading);
 
         return ResponseEntity.accepted().build();
     }
@@ -0,0 +1,111 @@
+package com.ecoenergy.eco_energy.device.service;
+
+import com.ecoenergy.eco_energy.config.DeviceCacheConfig;
+import com.ecoenergy.eco_energy.device.model.Device;
+import com.ecoenergy.eco_energy.device.repository.DeviceRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+//Cache de lectura de dispositivos (Caffeine, W-TinyLFU con tamaño maximo y TTL).
+//Se indexa por id y por etiqueta de Ubidots; DeviceService la invalida en cada escritura.
+//Las etiquetas sin dispositivo tambien se guardan, por menos tiempo (missTtl).
+//Las instancias en cache se comparten entre hilos: no se modifican, las escrituras parten de la base de datos.
+//Las estadisticas de aciertos, fallos y desalojos se publican en /actuator/metrics (cache.*).
+@Slf4j
+@Component
+public class DeviceCache {
+    private static final String ACTIVE_KEY = "active";
+
+    private final DeviceRepository deviceRepository;
+    private final Cache<UUID, Device> byId;
+    private final Cache<String, Optional<Device>> byLabel;
+    private final Cache<String, List<Device>> activeDevices;
+
+    public DeviceCache(DeviceRepository deviceRepository, DeviceCacheConfig config, MeterRegistry meterRegistry) {
+        this.deviceRepository = deviceRepository;
+        this.byId = Caffeine.newBuilder()
+                .maximumSize(config.getMaximumSize())
+                .expireAfterWrite(config.getTtl())
+                .recordStats()
+                .build();
+        long ttl = config.getTtl().toNanos();
+        long missTtl = config.getMissTtl().toNanos();
+        this.byLabel = Caffeine.newBuilder()
+                .maximumSize(config.getMaximumSize())
+                .expireAfter(new Expiry<String, Optional<Device>>() {
+                    @Override
+                    public long expireAfterCreate(String label, Optional<Device> device, long currentTime) {
+                        return device.isPresent() ? ttl : missTtl;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String label, Optional<Device> device, long currentTime,
+                                                  long currentDuration) {
+                        return expireAfterCreate(label, device, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String label, Optional<Device> device, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        this.activeDevices = Caffeine.newBuilder()
+                .maximumSize(1)
+                .expireAfterWrite(config.getActiveSnapshotTtl())
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, byId, "devices.byId");
+        CaffeineCacheMetrics.monitor(meterRegistry, byLabel, "devices.byLabel");
+        CaffeineCacheMetrics.monitor(meterRegistry, activeDevices, "devices.active");
+    }
+
+    //Los ids inexistentes no se guardan, para que un dispositivo recien creado se vea de inmediato
+    public Optional<Device> findById(UUID id) {
+        return Optional.ofNullable(byId.get(id, key -> deviceRepository.findById(key).orElse(null)));
+    }
+
+    public Optional<Device> findByUbidotsLabel(String label) {
+        return byLabel.get(label, deviceRepository::findByUbidotsLabel);
+    }
+
+    //Lista inmutable; se comparte entre todos los llamadores hasta que expira o se invalida
+    public List<Device> findAllActive() {
+        return activeDevices.get(ACTIVE_KEY, key -> List.copyOf(deviceRepository.findAllActive()));
+    }
+
+    //Despues de guardar: la version guardada reemplaza a la anterior en lugar de esperar otra consulta
+    public void put(Device device) {
+        invalidate(device);
+        byId.put(device.getId(), device);
+    }
+
+    //Despues de crear o actualizar: ademas del id se olvida la etiqueta guardada, que pudo estar
+    //registrada como inexistente
+    public void invalidate(Device device) {
+        if (device.getUbidotsLabel() != null) {
+            byLabel.invalidate(device.getUbidotsLabel());
+        }
+        invalidate(device.getId());
+    }
+
+    public void invalidate(UUID id) {
+        byId.invalidate(id);
+        // La etiqueta pudo cambiar: se eliminan las entradas que apuntan al mismo dispositivo
+        byLabel.asMap().values().removeIf(device -> device.isPresent() && id.equals(device.get().getId()));
+        activeDevices.invalidateAll();
+        log.debug("Device cache invalidated for {}", id);
+    }
+}
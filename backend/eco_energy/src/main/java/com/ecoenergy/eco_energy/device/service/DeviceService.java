@@ -1,7 +1,10 @@
 package com.ecoenergy.eco_energy.device.service;
 
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.analytics.service.OnlineAnomalyDetector;
 import com.ecoenergy.eco_energy.device.model.Device;
 import com.ecoenergy.eco_energy.device.repository.DeviceRepository;
+import com.ecoenergy.eco_energy.timeseries.service.ReadingStore;
 import com.ecoenergy.eco_energy.ubidots.service.UbidotsService;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
@@ -12,6 +15,7 @@ import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
@@ -20,15 +24,24 @@ public class DeviceService {
 
     private final DeviceRepository deviceRepository;
     private final UbidotsService ubidotsService;
+    private final ReadingStore readingStore;
+    private final OnlineAnomalyDetector onlineAnomalyDetector;
+    private final DeviceCache deviceCache;
 
     // Operaciones CRUD
     public Device createDevice(Device device) {
         device.setCreatedAt(LocalDateTime.now());
-        return deviceRepository.save(device);
+        Device saved = deviceRepository.save(device);
+        deviceCache.invalidate(saved);
+        return saved;
     }
 
     public Optional<Device> getDevice(UUID id) {
-        return deviceRepository.findById(id);
+        return deviceCache.findById(id);
+    }
+
+    public Optional<Device> getDeviceByUbidotsLabel(String ubidotsLabel) {
+        return deviceCache.findByUbidotsLabel(ubidotsLabel);
     }
 
     public Device updateDevice(Device device) {
@@ -36,16 +49,31 @@ public class DeviceService {
             throw new EntityNotFoundException("Device not found with id" + device.getId());
         }
         device.setUpdatedAt(LocalDateTime.now());
-        return deviceRepository.save(device);
+        Device saved = deviceRepository.save(device);
+        deviceCache.invalidate(saved);
+        return saved;
+    }
+
+    //Los cambios se aplican sobre una entidad recien cargada, no sobre la instancia compartida de la cache
+    public Optional<Device> updateDevice(UUID id, Consumer<Device> changes) {
+        return deviceRepository.findById(id)
+                .map(device -> {
+                    changes.accept(device);
+                    device.setUpdatedAt(LocalDateTime.now());
+                    Device saved = deviceRepository.save(device);
+                    deviceCache.put(saved);
+                    return saved;
+                });
     }
 
     public void deleteDevice(UUID id) {
         deviceRepository.deleteById(id);
+        deviceCache.invalidate(id);
     }
 
     // Para Simulator
     public List<Device> getAllActiveDevices() {
-        return deviceRepository.findAllActive();
+        return deviceCache.findAllActive();
     }
 
     // Para Dashboard
@@ -56,9 +84,16 @@ public class DeviceService {
     // Integración Ubidots
     public void sendReadingToUbidots(UUID deviceId, double voltage, double current,
                                      double power, double temperature) {
-        deviceRepository.findById(deviceId)
+        deviceCache.findById(deviceId)
                 .ifPresentOrElse(
-                        device -> ubidotsService.sendDataReading(device.getUbidotsLabel(), voltage, current, power, temperature),
+                        device -> {
+                            Reading reading = new Reading(device.getUbidotsLabel(), voltage, current,
+                                    power, temperature, LocalDateTime.now());
+                            readingStore.append(reading);
+                            // Misma evaluacion en tiempo real que las lecturas simuladas
+                            onlineAnomalyDetector.evaluate(device, reading);
+                            ubidotsService.sendReading(reading);
+                        },
                         () -> log.warn("Device not found with ID: {}", deviceId)
                 );
     }
@@ -0,0 +1,121 @@
+package com.ecoenergy.eco_energy.notification.websocket;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.timeseries.service.Timestamps;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Codificacion del subprotocolo binario (eco-energy.bin.v1). Especificacion para clientes:
+//  - El cliente lo pide en el handshake (Sec-WebSocket-Protocol: eco-energy.bin.v1). Los mensajes de
+//    control (connection, subscribed, error, energy_data_window) siguen llegando como texto JSON;
+//    las lecturas llegan en mensajes binarios.
+//  - Enteros: varint sin signo (LEB128, 7 bits por byte, primero los menos significativos) y, para
+//    diferencias, zigzag: v = (d << 1) ^ (d >> 63), d = (v >>> 1) ^ -(v & 1).
+//  - Trama: [u8 tipo][varint n] seguido de n entradas.
+//    tipo 1 = lecturas: las diferencias parten del estado que el cliente ya tiene.
+//    tipo 2 = keyframe: antes de decodificar el cliente descarta todas las etiquetas y valores
+//             previos; la primera trama de la sesion y la siguiente a un envio fallido son keyframes.
+//  - Entrada: [varint ref] con ref = id << 1, o (id << 1) | 1 si el dispositivo aparece por primera
+//    vez desde el ultimo keyframe, en cuyo caso sigue [varint len][label utf8] y el id queda asociado
+//    a esa etiqueta (los ids se asignan en orden 0, 1, 2...). Luego cinco zigzag varint con la
+//    diferencia respecto de la ultima lectura del mismo dispositivo (0 si es la primera):
+//    timestamp (ms epoch UTC; 0 = sin timestamp), voltage, current, power y temperature (en milesimas).
+//Hay un encoder por sesion y solo lo usa el hilo que esta vaciando su cola.
+class BinaryFrameEncoder {
+    static final String SUBPROTOCOL = "eco-energy.bin.v1";
+    static final byte READINGS_FRAME = 1;
+    static final byte KEYFRAME = 2;
+    static final int VALUE_SCALE = 1000;
+    //Peor caso aproximado de una entrada sin label, para contar bytes pendientes
+    static final int ESTIMATED_ENTRY_BYTES = 5 * 10 + 5;
+
+    private final Map<String, DeviceState> devices = new HashMap<>();
+    private byte[] buffer = new byte[1024];
+    private int position;
+
+    ByteBuffer encode(List<Reading> readings) {
+        position = 0;
+        writeByte(devices.isEmpty() ? KEYFRAME : READINGS_FRAME);
+        writeVarint(readings.size());
+        for (Reading reading : readings) {
+            DeviceState state = devices.get(reading.getDeviceId());
+            if (state == null) {
+                state = new DeviceState(devices.size());
+                devices.put(reading.getDeviceId(), state);
+                writeVarint(((long) state.id << 1) | 1);
+                byte[] label = reading.getDeviceId().getBytes(StandardCharsets.UTF_8);
+                writeVarint(label.length);
+                writeBytes(label);
+            } else {
+                writeVarint((long) state.id << 1);
+            }
+
+            long timestamp = reading.getTimestamp() != null
+                    ? Timestamps.toEpochMillis(reading.getTimestamp()) : 0;
+            writeDelta(state.values, 0, timestamp);
+            writeDelta(state.values, 1, scaled(reading.getVoltage()));
+            writeDelta(state.values, 2, scaled(reading.getCurrent()));
+            writeDelta(state.values, 3, scaled(reading.getPower()));
+            writeDelta(state.values, 4, scaled(reading.getTemperature()));
+        }
+        return ByteBuffer.wrap(Arrays.copyOf(buffer, position));
+    }
+
+    //Olvida etiquetas y valores enviados: la siguiente trama sera un keyframe. Se usa cuando una
+    //trama ya codificada no llego al cliente y su estado quedo desfasado
+    void reset() {
+        devices.clear();
+    }
+
+    // Helper methods
+    //Las diferencias se calculan sobre valores ya cuantizados: el cliente no acumula error
+    private void writeDelta(long[] previous, int index, long value) {
+        long delta = value - previous[index];
+        previous[index] = value;
+        writeVarint((delta << 1) ^ (delta >> 63));
+    }
+
+    private long scaled(double value) {
+        return Math.round(value * VALUE_SCALE);
+    }
+
+    private void writeVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeByte(byte value) {
+        ensureCapacity(1);
+        buffer[position++] = value;
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (position + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
+    }
+
+    private static final class DeviceState {
+        private final int id;
+        private final long[] values = new long[5];
+
+        DeviceState(int id) {
+            this.id = id;
+        }
+    }
+}
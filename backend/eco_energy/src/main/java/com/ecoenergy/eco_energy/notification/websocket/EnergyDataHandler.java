@@ -1,86 +1,298 @@
 package com.ecoenergy.eco_energy.notification.websocket;
 
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.analytics.dto.ReadingChannel;
+import com.ecoenergy.eco_energy.config.WebSocketStreamConfig;
+import com.ecoenergy.eco_energy.simulator.service.LatencyRecorder;
+import com.ecoenergy.eco_energy.timeseries.service.Downsampler;
+import com.ecoenergy.eco_energy.timeseries.service.Timestamps;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
-import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.logging.ErrorManager;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+//Difusion de lecturas por WebSocket. Se mantiene un indice inverso dispositivo -> sesiones
+//suscritas, el mensaje se serializa una sola vez por lectura y cada sesion tiene su propia
+//cola de envio asincrona (SessionSender), por lo que quien publica nunca espera a un cliente.
+//Los clientes que piden el subprotocolo eco-energy.bin.v1 reciben las lecturas en tramas binarias
+//agrupadas y con codificacion delta; los mensajes de control siguen siendo JSON.
+//Una suscripcion con windowMs recibe, en lugar de cada lectura, la serie de cada ventana reducida
+//en el servidor (buckets min/max/promedio o LTTB) como mensaje energy_data_window.
 @Slf4j
 @Component
-public class EnergyDataHandler extends TextWebSocketHandler {
+public class EnergyDataHandler extends TextWebSocketHandler implements SubProtocolCapable {
+    //Orden de preferencia en la negociacion del handshake
+    private static final List<String> SUBPROTOCOLS = List.of(BinaryFrameEncoder.SUBPROTOCOL, "eco-energy.json");
 
-    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
-    private final Map<String, List<String>> deviceSubscriptions = new ConcurrentHashMap<>();
-    private final ObjectMapper objectMapper = new ObjectMapper(); // Para parsear JSON
+    private final LatencyRecorder latencyRecorder;
+    private final ObjectMapper objectMapper;
+    private final WebSocketStreamConfig streamConfig;
+    private final SessionSender.Metrics senderMetrics;
+    //Los envios bloquean mientras el socket escribe: un hilo virtual por sesion en envio
+    private final ExecutorService sendExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("ws-send-", 0).factory());
+
+    private final Map<String, SessionSender> sessions = new ConcurrentHashMap<>();
+    // deviceId -> ids de sesion suscritas
+    private final Map<String, Set<String>> subscribersByDevice = new ConcurrentHashMap<>();
+    // id de sesion -> deviceIds, para limpiar el indice al desconectarse
+    private final Map<String, Set<String>> subscriptionsBySession = new ConcurrentHashMap<>();
+    // deviceId -> ventanas activas; las sesiones con la misma especificacion comparten la ventana
+    private final Map<String, Map<WindowedStream.Spec, WindowedStream>> windowedByDevice = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService windowFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ws-window");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public EnergyDataHandler(LatencyRecorder latencyRecorder, ObjectMapper objectMapper,
+                             WebSocketStreamConfig streamConfig, MeterRegistry meterRegistry) {
+        this.latencyRecorder = latencyRecorder;
+        this.objectMapper = objectMapper;
+        this.streamConfig = streamConfig;
+        this.senderMetrics = new SessionSender.Metrics(
+                Counter.builder("websocket.frames.conflated")
+                        .description("Readings replaced by a newer one for the same device before being sent")
+                        .register(meterRegistry),
+                Counter.builder("websocket.frames.dropped")
+                        .description("Frames discarded because the session was closed or evicted")
+                        .register(meterRegistry),
+                Counter.builder("websocket.sessions.evicted")
+                        .description("Sessions closed for being too slow")
+                        .register(meterRegistry));
+        Gauge.builder("websocket.sessions", sessions, Map::size)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<String> getSubProtocols() {
+        return SUBPROTOCOLS;
+    }
+
+    @PostConstruct
+    void start() {
+        long tick = streamConfig.getWindowTick().toMillis();
+        windowFlusher.scheduleAtFixedRate(this::flushWindows, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        windowFlusher.shutdownNow();
+        sendExecutor.shutdownNow();
+    }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        sessions.put(session.getId(), session);
-        log.info("Client connected: {}", session.getId());
+        SessionSender sender = new SessionSender(session, sendExecutor, latencyRecorder, streamConfig, senderMetrics);
+        sessions.put(session.getId(), sender);
+        log.info("Client connected: {} (protocol: {})", session.getId(),
+                sender.isBinary() ? session.getAcceptedProtocol() : "json");
 
         Map<String, String> welcome = Map.of("type", "connection", "status", "connected");
-        session.sendMessage(toTextMessage(welcome));
+        sender.send(toTextMessage(welcome));
     }
 
     @Override
     public void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-        JsonNode data = objectMapper.readTree(message.getPayload());
+        SessionSender sender = sessions.get(session.getId());
+        if (sender == null) {
+            return;
+        }
+        JsonNode data;
+        try {
+            data = objectMapper.readTree(message.getPayload());
+        } catch (JsonProcessingException e) {
+            // Se responde con un error en lugar de propagar la excepcion, que cerraria la sesion
+            log.debug("Invalid message from {}: {}", session.getId(), e.getOriginalMessage());
+            sender.send(toTextMessage(Map.of("type", "error", "message", "Invalid JSON message")));
+            return;
+        }
+        if (!data.hasNonNull("type") || !data.hasNonNull("deviceId")) {
+            return;
+        }
 
         String type = data.get("type").asText();
         String deviceId = data.get("deviceId").asText();
 
         if ("subscribe".equals(type)) {
-            deviceSubscriptions
-                    .computeIfAbsent(session.getId(), k -> new ArrayList<>())
+            WindowedStream.Spec spec;
+            try {
+                spec = data.hasNonNull("windowMs") ? windowSpec(data) : null;
+            } catch (IllegalArgumentException e) {
+                sender.send(toTextMessage(Map.of("type", "error", "deviceId", deviceId,
+                        "message", "Invalid window subscription: " + e.getMessage())));
+                return;
+            }
+
+            subscriptionsBySession
+                    .computeIfAbsent(session.getId(), k -> ConcurrentHashMap.newKeySet())
                     .add(deviceId);
+            if (spec == null) {
+                // compute es atomico por llave: no compite con removeSubscriber vaciando el mismo set
+                subscribersByDevice.compute(deviceId, (key, sessionIds) -> {
+                    Set<String> subscribers = sessionIds != null ? sessionIds : ConcurrentHashMap.newKeySet();
+                    subscribers.add(session.getId());
+                    return subscribers;
+                });
+            } else {
+                windowedByDevice.compute(deviceId, (key, streams) -> {
+                    Map<WindowedStream.Spec, WindowedStream> bySpec = streams != null ? streams : new ConcurrentHashMap<>();
+                    bySpec.computeIfAbsent(spec, k -> new WindowedStream(k, Timestamps.nowEpochMillis()))
+                            .sessionIds().add(session.getId());
+                    return bySpec;
+                });
+            }
 
             Map<String, String> confirm = Map.of("type", "subscribed", "deviceId", deviceId);
-            session.sendMessage(toTextMessage(confirm));
+            sender.send(toTextMessage(confirm));
         }
 
         if ("unsubscribe".equals(type)) {
-            deviceSubscriptions.getOrDefault(session.getId(), new ArrayList<>()).remove(deviceId);
+            Set<String> devices = subscriptionsBySession.get(session.getId());
+            if (devices != null) {
+                devices.remove(deviceId);
+            }
+            removeSubscriber(deviceId, session.getId());
         }
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
         sessions.remove(session.getId());
-        deviceSubscriptions.remove(session.getId());
+        Set<String> devices = subscriptionsBySession.remove(session.getId());
+        if (devices != null) {
+            devices.forEach(deviceId -> removeSubscriber(deviceId, session.getId()));
+        }
         log.info("Client disconnected: {}", session.getId());
     }
 
     // Método llamado desde DeviceSimulator o servicio externo
     public void sendEnergyData(String deviceId, Object reading) {
-        sessions.forEach((sessionId, session) -> {
-            List<String> subscribedDevices = deviceSubscriptions.get(sessionId);
-            if (subscribedDevices != null && subscribedDevices.contains(deviceId)) {
-                try {
-                    Map<String, Object> message = Map.of(
-                            "type", "energy_data",
-                            "deviceId", deviceId,
-                            "data", reading
-                    );
-                    session.sendMessage(toTextMessage(message));
-                } catch (IOException e) {
-                    log.error("Error sending data to session {}: {}", sessionId, e.getMessage());
+        Reading energyReading = reading instanceof Reading value ? value : null;
+        Map<WindowedStream.Spec, WindowedStream> windows = windowedByDevice.get(deviceId);
+        if (windows != null && energyReading != null) {
+            windows.values().forEach(window -> window.add(energyReading));
+        }
+
+        Set<String> subscribers = subscribersByDevice.get(deviceId);
+        if (subscribers == null || subscribers.isEmpty()) {
+            return;
+        }
+
+        // El mismo TextMessage (inmutable) se encola en todas las sesiones JSON suscritas y solo
+        // se serializa si hay alguna; si una sesion aun no envio la lectura anterior del
+        // dispositivo, se reemplaza
+        TextMessage message = null;
+        for (String sessionId : subscribers) {
+            SessionSender sender = sessions.get(sessionId);
+            if (sender == null) {
+                continue;
+            }
+            if (sender.isBinary() && energyReading != null) {
+                sender.sendLatest(deviceId, null, energyReading);
+                continue;
+            }
+            if (message == null) {
+                message = toEnergyDataMessage(deviceId, reading);
+                if (message == null) {
+                    return;
+                }
+            }
+            sender.sendLatest(deviceId, message, energyReading);
+        }
+    }
+
+    //Solo corre en el hilo ws-window: cada ventana cerrada se reduce y serializa una vez
+    private void flushWindows() {
+        long now = Timestamps.nowEpochMillis();
+        windowedByDevice.forEach((deviceId, streams) -> streams.values().forEach(stream -> {
+            try {
+                WindowedStream.Window window = stream.closeIfDue(now);
+                if (window == null || window.points().isEmpty()) {
+                    return;
+                }
+                TextMessage message = toTextMessage(Map.of(
+                        "type", "energy_data_window",
+                        "deviceId", deviceId,
+                        "channel", stream.spec().channel(),
+                        "aggregate", stream.spec().method(),
+                        "from", Timestamps.fromEpochMillis(window.from()),
+                        "to", Timestamps.fromEpochMillis(window.to()),
+                        "points", window.points()
+                ));
+                for (String sessionId : stream.sessionIds()) {
+                    SessionSender sender = sessions.get(sessionId);
+                    if (sender != null) {
+                        sender.send(message);
+                    }
                 }
+            } catch (Exception e) {
+                log.error("Error sending window for device {}: {}", deviceId, e.getMessage());
             }
+        }));
+    }
+
+    //windowMs (minimo windowMinimum), channel (POWER), aggregate MINMAX|LTTB|RAW (MINMAX), points (1)
+    private WindowedStream.Spec windowSpec(JsonNode data) {
+        long window = Math.max(data.get("windowMs").asLong(), streamConfig.getWindowMinimum().toMillis());
+        ReadingChannel channel = ReadingChannel.valueOf(data.path("channel").asText("POWER").toUpperCase());
+        Downsampler.Method method = Downsampler.Method.valueOf(data.path("aggregate").asText("MINMAX").toUpperCase());
+        int points = Math.clamp(data.path("points").asInt(1), 1, streamConfig.getWindowMaxPoints());
+        return new WindowedStream.Spec(window, channel, method, points);
+    }
+
+    //Si el dispositivo sigue en el indice (alguna sesion suscrita, con o sin ventana)
+    boolean hasSubscribers(String deviceId) {
+        return subscribersByDevice.containsKey(deviceId) || windowedByDevice.containsKey(deviceId);
+    }
+
+    private void removeSubscriber(String deviceId, String sessionId) {
+        subscribersByDevice.computeIfPresent(deviceId, (key, sessionIds) -> {
+            sessionIds.remove(sessionId);
+            return sessionIds.isEmpty() ? null : sessionIds;
+        });
+        windowedByDevice.computeIfPresent(deviceId, (key, streams) -> {
+            streams.values().removeIf(stream -> {
+                stream.sessionIds().remove(sessionId);
+                return stream.sessionIds().isEmpty();
+            });
+            return streams.isEmpty() ? null : streams;
         });
     }
 
+    private TextMessage toEnergyDataMessage(String deviceId, Object reading) {
+        try {
+            return toTextMessage(Map.of(
+                    "type", "energy_data",
+                    "deviceId", deviceId,
+                    "data", reading
+            ));
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing data for device {}: {}", deviceId, e.getMessage());
+            return null;
+        }
+    }
+
     private TextMessage toTextMessage(Object obj) throws JsonProcessingException {
         return new TextMessage(objectMapper.writeValueAsString(obj));
     }
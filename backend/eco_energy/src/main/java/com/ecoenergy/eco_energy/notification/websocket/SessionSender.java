@@ -0,0 +1,227 @@
+package com.ecoenergy.eco_energy.notification.websocket;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.config.WebSocketStreamConfig;
+import com.ecoenergy.eco_energy.simulator.service.LatencyRecorder;
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Cola de salida acotada de una sesion. Quien publica solo encola y retorna; un unico hilo a la vez
+//vacia la cola y escribe en el socket (WebSocketSession no admite envios concurrentes).
+//Las lecturas se agrupan por dispositivo: si el cliente se atrasa, una lectura nueva reemplaza a la
+//pendiente del mismo dispositivo (conflacion) y el cliente solo recibe la mas reciente.
+//Si un envio excede sendTimeLimit o los bytes pendientes superan bufferSizeLimit la sesion se cierra.
+//En sesiones binarias las lecturas pendientes se envian juntas en una sola trama (BinaryFrameEncoder).
+@Slf4j
+class SessionSender {
+    //En sesiones binarias message es null: la lectura se codifica al enviarla
+    private record Outbound(WebSocketMessage<?> message, Reading reading) {
+        int size() {
+            return message != null ? message.getPayloadLength() : BinaryFrameEncoder.ESTIMATED_ENTRY_BYTES;
+        }
+    }
+
+    //Contadores compartidos por todas las sesiones
+    record Metrics(Counter conflated, Counter dropped, Counter evicted) {
+    }
+
+    private final WebSocketSession session;
+    private final Executor executor;
+    private final LatencyRecorder latencyRecorder;
+    private final WebSocketStreamConfig config;
+    private final Metrics metrics;
+    // null en sesiones JSON
+    private final BinaryFrameEncoder encoder;
+
+    // Mensajes de control (confirmaciones): nunca se agrupan
+    private final Queue<Outbound> control = new ConcurrentLinkedQueue<>();
+    // Ultima lectura pendiente por dispositivo y orden en que se deben enviar
+    private final Map<String, Outbound> latestByDevice = new ConcurrentHashMap<>();
+    private final Queue<String> pendingDevices = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean evicted = new AtomicBoolean();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private volatile long sendStartNanos;
+
+    SessionSender(WebSocketSession session, Executor executor, LatencyRecorder latencyRecorder,
+                  WebSocketStreamConfig config, Metrics metrics) {
+        this.session = session;
+        this.executor = executor;
+        this.latencyRecorder = latencyRecorder;
+        this.config = config;
+        this.metrics = metrics;
+        this.encoder = BinaryFrameEncoder.SUBPROTOCOL.equals(session.getAcceptedProtocol())
+                ? new BinaryFrameEncoder() : null;
+    }
+
+    boolean isBinary() {
+        return encoder != null;
+    }
+
+    void send(WebSocketMessage<?> message) {
+        if (evicted.get()) {
+            metrics.dropped().increment();
+            return;
+        }
+        control.add(new Outbound(message, null));
+        bufferedBytes.addAndGet(message.getPayloadLength());
+        afterEnqueue();
+    }
+
+    //reading (opcional en JSON) permite registrar la latencia de entrega en modo benchmark;
+    //en sesiones binarias message se ignora y reading es obligatoria
+    void sendLatest(String deviceId, WebSocketMessage<?> message, Reading reading) {
+        if (evicted.get()) {
+            metrics.dropped().increment();
+            return;
+        }
+        Outbound outbound = new Outbound(isBinary() ? null : message, reading);
+        Outbound previous = latestByDevice.put(deviceId, outbound);
+        if (previous == null) {
+            pendingDevices.add(deviceId);
+            bufferedBytes.addAndGet(outbound.size());
+        } else {
+            metrics.conflated().increment();
+            bufferedBytes.addAndGet(outbound.size() - previous.size());
+        }
+        afterEnqueue();
+    }
+
+    private void afterEnqueue() {
+        if (isSlowConsumer()) {
+            evict();
+            return;
+        }
+        scheduleDrain();
+    }
+
+    private boolean isSlowConsumer() {
+        long started = sendStartNanos;
+        boolean sendTooLong = draining.get() && started != 0
+                && System.nanoTime() - started > config.getSendTimeLimit().toNanos();
+        return sendTooLong || bufferedBytes.get() > config.getBufferSizeLimit();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            List<Outbound> batch;
+            while (!evicted.get() && !(batch = nextBatch()).isEmpty()) {
+                if (!session.isOpen()) {
+                    discardPending();
+                    return;
+                }
+                WebSocketMessage<?> message = batch.getFirst().message() != null
+                        ? batch.getFirst().message()
+                        : new BinaryMessage(encoder.encode(batch.stream().map(Outbound::reading).toList()));
+                long size = batch.stream().mapToLong(Outbound::size).sum();
+                sendStartNanos = System.nanoTime();
+                try {
+                    session.sendMessage(message);
+                } catch (IOException | RuntimeException e) {
+                    // La trama no llego pero el encoder ya avanzo sus diferencias: se reinicia
+                    if (encoder != null) {
+                        encoder.reset();
+                    }
+                    throw e;
+                } finally {
+                    sendStartNanos = 0;
+                    bufferedBytes.addAndGet(-size);
+                }
+                for (Outbound sent : batch) {
+                    if (sent.reading() != null) {
+                        latencyRecorder.record(LatencyRecorder.Stage.WEBSOCKET_DELIVERY, sent.reading());
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Error sending data to session {}: {}", session.getId(), e.getMessage());
+        } finally {
+            draining.set(false);
+            // Un mensaje pudo llegar entre el ultimo poll y la liberacion
+            if (!evicted.get() && hasPending()) {
+                scheduleDrain();
+            }
+        }
+    }
+
+    //Primero los mensajes de control, luego las lecturas en orden de llegada del dispositivo.
+    //En JSON cada lectura es un mensaje; en binario se agrupan hasta binaryMaxBatch lecturas.
+    private List<Outbound> nextBatch() {
+        Outbound next = control.poll();
+        if (next != null) {
+            return List.of(next);
+        }
+        if (!isBinary()) {
+            next = pollReading();
+            return next != null ? List.of(next) : List.of();
+        }
+        List<Outbound> batch = new ArrayList<>();
+        while (batch.size() < config.getBinaryMaxBatch() && (next = pollReading()) != null) {
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private Outbound pollReading() {
+        String deviceId;
+        while ((deviceId = pendingDevices.poll()) != null) {
+            Outbound next = latestByDevice.remove(deviceId);
+            if (next != null) {
+                return next;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasPending() {
+        return !control.isEmpty() || !pendingDevices.isEmpty();
+    }
+
+    //Se cierra en otro hilo: el cierre puede bloquear mientras el socket esta saturado
+    private void evict() {
+        if (!evicted.compareAndSet(false, true)) {
+            return;
+        }
+        metrics.evicted().increment();
+        log.warn("Closing slow WebSocket session {} ({} bytes pending)", session.getId(), bufferedBytes.get());
+        discardPending();
+        executor.execute(() -> {
+            try {
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException e) {
+                log.debug("Error closing session {}: {}", session.getId(), e.getMessage());
+            }
+        });
+    }
+
+    private void discardPending() {
+        long discarded = control.size() + latestByDevice.size();
+        control.clear();
+        latestByDevice.clear();
+        pendingDevices.clear();
+        bufferedBytes.set(0);
+        metrics.dropped().increment(discarded);
+    }
+}
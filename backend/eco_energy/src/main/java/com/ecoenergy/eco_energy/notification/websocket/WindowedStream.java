@@ -0,0 +1,79 @@
+package com.ecoenergy.eco_energy.notification.websocket;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.analytics.dto.ReadingChannel;
+import com.ecoenergy.eco_energy.timeseries.dto.SeriesPoint;
+import com.ecoenergy.eco_energy.timeseries.service.Downsampler;
+import com.ecoenergy.eco_energy.timeseries.service.Timestamps;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Lecturas de un dispositivo acumuladas durante una ventana para todas las sesiones suscritas con
+//la misma especificacion: al cerrar la ventana la serie se reduce una sola vez y se envia a todas.
+//Las ventanas estan alineadas a multiplos de su duracion en hora local, asi todos los clientes ven los
+//mismos cortes. El reloj de las ventanas y los timestamps de las lecturas pasan por la misma conversion
+//(Timestamps), por lo que una lectura siempre cae en la ventana de su hora local.
+class WindowedStream {
+    record Spec(long windowMillis, ReadingChannel channel, Downsampler.Method method, int points) {
+    }
+
+    record Window(long from, long to, List<SeriesPoint> points) {
+    }
+
+    private final Spec spec;
+    private final Set<String> sessionIds = ConcurrentHashMap.newKeySet();
+
+    // MINMAX acumula directo en los buckets; RAW y LTTB necesitan la serie de la ventana
+    private Downsampler.Buckets buckets;
+    private Downsampler.Series series;
+    private long windowStart;
+
+    WindowedStream(Spec spec, long now) {
+        this.spec = spec;
+        reset(Timestamps.floorLocal(now, spec.windowMillis()));
+    }
+
+    Spec spec() {
+        return spec;
+    }
+
+    Set<String> sessionIds() {
+        return sessionIds;
+    }
+
+    synchronized void add(Reading reading) {
+        long timestamp = reading.getTimestamp() != null
+                ? Timestamps.toEpochMillis(reading.getTimestamp()) : Timestamps.nowEpochMillis();
+        double value = spec.channel().valueOf(reading);
+        if (buckets != null) {
+            buckets.add(timestamp, value);
+        } else {
+            series.add(timestamp, value);
+        }
+    }
+
+    //Cierra la ventana si ya termino y abre la siguiente; null si aun esta abierta
+    synchronized Window closeIfDue(long now) {
+        long windowEnd = windowStart + spec.windowMillis();
+        if (now < windowEnd) {
+            return null;
+        }
+        List<SeriesPoint> points = buckets != null
+                ? buckets.toPoints()
+                : series.downsample(spec.method(), windowStart, windowEnd, spec.points());
+        Window closed = new Window(windowStart, windowEnd, points);
+        reset(Timestamps.floorLocal(now, spec.windowMillis()));
+        return closed;
+    }
+
+    private void reset(long start) {
+        windowStart = start;
+        if (spec.method() == Downsampler.Method.MINMAX) {
+            buckets = new Downsampler.Buckets(start, start + spec.windowMillis(), spec.points());
+        } else {
+            series = new Downsampler.Series();
+        }
+    }
+}
@@ -1,33 +1,58 @@
 package com.ecoenergy.eco_energy.report.controller;
 
 import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.analytics.dto.ReadingChannel;
 import com.ecoenergy.eco_energy.report.dto.AnomalyReport;
 import com.ecoenergy.eco_energy.report.dto.CsvExportData;
 import com.ecoenergy.eco_energy.report.dto.DailyReport;
 import com.ecoenergy.eco_energy.report.dto.DeviceKpis;
+import com.ecoenergy.eco_energy.report.dto.ExportJobRequest;
+import com.ecoenergy.eco_energy.report.dto.ExportJobStatus;
+import com.ecoenergy.eco_energy.report.service.ColumnarExportService;
+import com.ecoenergy.eco_energy.report.service.ExportJobService;
 import com.ecoenergy.eco_energy.report.service.ReportService;
-import com.ecoenergy.eco_energy.ubidots.service.UbidotsService;
+import com.ecoenergy.eco_energy.timeseries.dto.SeriesPoint;
+import com.ecoenergy.eco_energy.timeseries.service.Downsampler;
+import com.ecoenergy.eco_energy.timeseries.service.ReadingStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/reports")
 @RequiredArgsConstructor
 @Slf4j
 public class ReportController {
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+
     private final ReportService reportService;
-    private  final UbidotsService ubidotsService;
+    private final ReadingStore readingStore;
+    private final ColumnarExportService columnarExportService;
+    private final ExportJobService exportJobService;
     @GetMapping("/daily/{deviceId}")
     public ResponseEntity<DailyReport> getDailyReport(@PathVariable String deviceId,
                                                       @RequestParam LocalDate date) {
@@ -82,35 +107,160 @@ public class ReportController {
         }
     }
 
+    @GetMapping("/kpis")
+    public ResponseEntity<List<DeviceKpis>> getSystemKpis() {
+        try {
+            return ResponseEntity.ok(reportService.getSystemKpis());
+        } catch (Exception e) {
+            log.error("Error getting system KPIs", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    //Los KPIs de cada dispositivo se envian al cliente (Server-Sent Events) en cuanto estan listos
+    @GetMapping(value = "/kpis/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<DeviceKpis> streamSystemKpis() {
+        return reportService.streamSystemKpis();
+    }
+
+    //Historial de un canal para graficas; method=MINMAX o LTTB reduce la serie a points puntos
+    @GetMapping("/readings")
+    public ResponseEntity<List<SeriesPoint>> getReadingHistory(
+            @RequestParam String deviceId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "POWER") ReadingChannel channel,
+            @RequestParam(defaultValue = "RAW") Downsampler.Method method,
+            @RequestParam(defaultValue = "800") int points) {
+
+        if (to.isBefore(from)) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(reportService.getReadingHistory(deviceId, from, to, channel, method, points));
+        } catch (Exception e) {
+            log.error("Error getting reading history for device: {} from {} to {}", deviceId, from, to, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    //El archivo se escribe directamente en la respuesta (transferencia por partes), con gzip opcional.
+    //La memoria usada no depende del rango exportado.
     @GetMapping("/export/csv")
-    public ResponseEntity<Resource> exportToCsv(
+    public ResponseEntity<StreamingResponseBody> exportToCsv(
+            @RequestParam String deviceId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+
+        String filename = String.format("energy_data_%s_%s_to_%s.csv%s",
+                deviceId, from.toString(), to.toString(), gzip ? ".gz" : "");
+
+        StreamingResponseBody body = outputStream -> {
+            OutputStream target = gzip ? new GZIPOutputStream(outputStream, EXPORT_BUFFER_SIZE) : outputStream;
+            Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), EXPORT_BUFFER_SIZE);
+            try {
+                //Dias completos de from a to: ReadingStore incluye el limite superior, por eso termina
+                //un nanosegundo antes del dia siguiente
+                reportService.writeCsv(
+                        readingStore.streamRange(deviceId, from.atStartOfDay(),
+                                        to.plusDays(1).atStartOfDay().minusNanos(1))
+                                .toIterable(),
+                        writer);
+                if (target instanceof GZIPOutputStream gzipStream) {
+                    gzipStream.finish();
+                }
+            } catch (Exception e) {
+                log.error("Error exporting CSV for device: {} from {} to {}", deviceId, from, to, e);
+                throw e;
+            }
+        };
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
+                .header(HttpHeaders.CONTENT_TYPE, gzip ? "application/gzip" : "text/csv")
+                .body(body);
+    }
+
+    //Formato columnar (Arrow IPC) para cargas masivas; solo se lee el rango pedido
+    @GetMapping("/export/arrow")
+    public ResponseEntity<StreamingResponseBody> exportReadingsToArrow(
             @RequestParam String deviceId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
 
-        try {
-            List<Reading> readings = ubidotsService.getReading(
-                    deviceId, from.atStartOfDay(), to.plusDays(1).atStartOfDay()
-            );
+        String filename = String.format("energy_data_%s_%s_to_%s.arrow", deviceId, from, to);
 
-            String csvContent = reportService.exportToCsv(readings); // ✔ Arreglado
+        StreamingResponseBody body = outputStream -> {
+            try {
+                columnarExportService.writeReadings(deviceId, from.atStartOfDay(), to.plusDays(1).atStartOfDay(),
+                        new BufferedOutputStream(outputStream, EXPORT_BUFFER_SIZE));
+            } catch (Exception e) {
+                log.error("Error exporting Arrow readings for device: {} from {} to {}", deviceId, from, to, e);
+                throw e;
+            }
+        };
 
-            ByteArrayResource resource = new ByteArrayResource(csvContent.getBytes());
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
+                .header(HttpHeaders.CONTENT_TYPE, ColumnarExportService.ARROW_MEDIA_TYPE)
+                .body(body);
+    }
 
-            String filename = String.format("energy_data_%s_%s_to_%s.csv",
-                    deviceId, from.toString(), to.toString());
+    @GetMapping("/export/anomalies/arrow")
+    public ResponseEntity<StreamingResponseBody> exportAnomaliesToArrow(
+            @RequestParam(required = false) String deviceId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
 
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
-                    .header(HttpHeaders.CONTENT_TYPE, "text/csv")
-                    .body(resource);
+        UUID device = deviceId != null ? UUID.fromString(deviceId) : null;
+        String filename = String.format("anomalies_%s_%s_to_%s.arrow",
+                deviceId != null ? deviceId : "all", from, to);
 
-        } catch (Exception e) {
-            log.error("Error exporting CSV for device: {} from {} to {}", deviceId, from, to, e);
+        StreamingResponseBody body = outputStream -> {
+            try {
+                columnarExportService.writeAnomalies(device, from.atStartOfDay(), to.plusDays(1).atStartOfDay(),
+                        new BufferedOutputStream(outputStream, EXPORT_BUFFER_SIZE));
+            } catch (Exception e) {
+                log.error("Error exporting Arrow anomalies from {} to {}", from, to, e);
+                throw e;
+            }
+        };
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
+                .header(HttpHeaders.CONTENT_TYPE, ColumnarExportService.ARROW_MEDIA_TYPE)
+                .body(body);
+    }
+
+    //Exportacion de varios dispositivos en segundo plano: se responde de inmediato con el id del trabajo
+    @PostMapping("/export/jobs")
+    public ResponseEntity<ExportJobStatus> submitExportJob(@RequestBody ExportJobRequest request) {
+        try {
+            return ResponseEntity.accepted().body(exportJobService.submit(request));
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected export job: {}", e.getMessage());
             return ResponseEntity.badRequest().build();
+        } catch (RejectedExecutionException e) {
+            log.warn("Rejected export job: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
         }
     }
 
+    @GetMapping("/export/jobs/{jobId}")
+    public ResponseEntity<ExportJobStatus> getExportJob(@PathVariable UUID jobId) {
+        return exportJobService.getStatus(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
 
-
+    @GetMapping("/export/jobs/{jobId}/download")
+    public ResponseEntity<Resource> downloadExportJob(@PathVariable UUID jobId) {
+        return exportJobService.getArchive(jobId)
+                .<ResponseEntity<Resource>>map(archive -> ResponseEntity.ok()
+                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=energy_data_" + jobId + ".zip")
+                        .header(HttpHeaders.CONTENT_TYPE, "application/zip")
+                        .body(new FileSystemResource(archive)))
+                .orElse(ResponseEntity.notFound().build());
+    }
 }
@@ -0,0 +1,21 @@
+package com.ecoenergy.eco_energy.report.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ExportJobRequest {
+    //Ids de los dispositivos, como en el resto de la API; vacio = todos los dispositivos activos
+    private List<UUID> deviceIds;
+    private LocalDate from;
+    private LocalDate to;
+}
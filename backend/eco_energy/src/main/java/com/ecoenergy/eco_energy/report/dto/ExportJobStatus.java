@@ -0,0 +1,33 @@
+package com.ecoenergy.eco_energy.report.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ExportJobStatus {
+    public enum State { PENDING, RUNNING, COMPLETED, FAILED }
+
+    private UUID jobId;
+    private State state;
+    private LocalDate from;
+    private LocalDate to;
+    private int totalDevices;
+    private int completedDevices;
+    private List<String> failedDevices;
+    private long exportedRows;
+    private double progress;
+    private LocalDateTime submittedAt;
+    private LocalDateTime finishedAt;
+    private String error;
+    private String downloadUrl;
+}
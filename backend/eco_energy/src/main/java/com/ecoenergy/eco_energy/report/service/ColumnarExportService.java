@@ -0,0 +1,253 @@
+package com.ecoenergy.eco_energy.report.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.analytics.model.Anomaly;
+import com.ecoenergy.eco_energy.analytics.repository.AnomalyRepository;
+import com.ecoenergy.eco_energy.config.ReportConfig;
+import com.ecoenergy.eco_energy.timeseries.service.ReadingStore;
+import com.ecoenergy.eco_energy.timeseries.service.Timestamps;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.TimeStampMilliTZVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.ipc.message.IpcOption;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.support.WindowIterator;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+//Exportacion en formato Arrow IPC (archivo): columnas comprimidas con ZSTD y
+//estadisticas por record batch en los metadatos del footer.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ColumnarExportService {
+    public static final String ARROW_MEDIA_TYPE = "application/vnd.apache.arrow.file";
+
+    private static final Schema READING_SCHEMA = new Schema(List.of(
+            Field.notNullable("device_id", ArrowType.Utf8.INSTANCE),
+            Field.notNullable("timestamp", new ArrowType.Timestamp(TimeUnit.MILLISECOND, "UTC")),
+            Field.notNullable("voltage", new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)),
+            Field.notNullable("current", new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)),
+            Field.notNullable("power", new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)),
+            Field.notNullable("temperature", new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE))
+    ));
+
+    private static final Schema ANOMALY_SCHEMA = new Schema(List.of(
+            Field.notNullable("id", ArrowType.Utf8.INSTANCE),
+            Field.notNullable("device_id", ArrowType.Utf8.INSTANCE),
+            new Field("anomaly_type", FieldType.nullable(ArrowType.Utf8.INSTANCE), null),
+            Field.notNullable("value", new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)),
+            Field.notNullable("detected_at", new ArrowType.Timestamp(TimeUnit.MILLISECOND, "UTC"))
+    ));
+
+    private final ReadingStore readingStore;
+    private final AnomalyRepository anomalyRepository;
+    private final ReportConfig reportConfig;
+
+    private final BufferAllocator allocator = new RootAllocator();
+
+    //Solo se leen las lecturas del rango pedido; el rango es semiabierto [from, to)
+    //(ReadingStore trata el limite superior como inclusivo, por eso se le resta un nanosegundo)
+    public long writeReadings(String deviceLabel, LocalDateTime from, LocalDateTime to, OutputStream out)
+            throws IOException {
+        Map<String, String> metadata = exportMetadata("readings", from, to);
+        metadata.put("device_id", deviceLabel);
+        metadata.put("statistics_column", "power");
+
+        try (BufferAllocator exportAllocator = allocator.newChildAllocator("readings-export", 0, Long.MAX_VALUE);
+             VectorSchemaRoot root = VectorSchemaRoot.create(READING_SCHEMA, exportAllocator);
+             ArrowFileWriter writer = newWriter(root, metadata, out)) {
+
+            VarCharVector deviceIds = (VarCharVector) root.getVector("device_id");
+            TimeStampMilliTZVector timestamps = (TimeStampMilliTZVector) root.getVector("timestamp");
+            Float8Vector voltage = (Float8Vector) root.getVector("voltage");
+            Float8Vector current = (Float8Vector) root.getVector("current");
+            Float8Vector power = (Float8Vector) root.getVector("power");
+            Float8Vector temperature = (Float8Vector) root.getVector("temperature");
+
+            writer.start();
+            BatchStatistics stats = new BatchStatistics();
+            int batchRows = reportConfig.getColumnarBatchRows();
+            int row = 0;
+            long total = 0;
+
+            for (Reading reading : readingStore.streamRange(deviceLabel, from, to.minusNanos(1)).toIterable()) {
+                long epochMillis = toEpochMillis(reading.getTimestamp());
+                deviceIds.setSafe(row, reading.getDeviceId().getBytes(StandardCharsets.UTF_8));
+                timestamps.setSafe(row, epochMillis);
+                voltage.setSafe(row, reading.getVoltage());
+                current.setSafe(row, reading.getCurrent());
+                power.setSafe(row, reading.getPower());
+                temperature.setSafe(row, reading.getTemperature());
+                stats.add(epochMillis, reading.getPower());
+                row++;
+
+                if (row == batchRows) {
+                    flushBatch(root, writer, row, stats, metadata);
+                    total += row;
+                    row = 0;
+                    stats = new BatchStatistics();
+                }
+            }
+            if (row > 0) {
+                flushBatch(root, writer, row, stats, metadata);
+                total += row;
+            }
+
+            metadata.put("row_count", Long.toString(total));
+            writer.end();
+            log.info("Exported {} readings for device {} as Arrow", total, deviceLabel);
+            return total;
+        }
+    }
+
+    //deviceId opcional: sin el se exportan las anomalias de toda la flota. El rango es semiabierto [from, to)
+    //y se lee por paginas del tamano de un batch, sin cargar todas las anomalias en memoria.
+    public long writeAnomalies(UUID deviceId, LocalDateTime from, LocalDateTime to, OutputStream out)
+            throws IOException {
+        Limit pageSize = Limit.of(reportConfig.getColumnarBatchRows());
+        WindowIterator<Anomaly> anomalies = WindowIterator.of((ScrollPosition position) -> deviceId != null
+                        ? anomalyRepository.findByDeviceIdAndDetectedAtGreaterThanEqualAndDetectedAtLessThanOrderByDetectedAtAscIdAsc(
+                                deviceId, from, to, position, pageSize)
+                        : anomalyRepository.findByDetectedAtGreaterThanEqualAndDetectedAtLessThanOrderByDetectedAtAscIdAsc(
+                                from, to, position, pageSize))
+                .startingAt(ScrollPosition.keyset());
+
+        Map<String, String> metadata = exportMetadata("anomalies", from, to);
+        metadata.put("statistics_column", "value");
+        if (deviceId != null) {
+            metadata.put("device_id", deviceId.toString());
+        }
+
+        try (BufferAllocator exportAllocator = allocator.newChildAllocator("anomalies-export", 0, Long.MAX_VALUE);
+             VectorSchemaRoot root = VectorSchemaRoot.create(ANOMALY_SCHEMA, exportAllocator);
+             ArrowFileWriter writer = newWriter(root, metadata, out)) {
+
+            VarCharVector ids = (VarCharVector) root.getVector("id");
+            VarCharVector deviceIds = (VarCharVector) root.getVector("device_id");
+            VarCharVector types = (VarCharVector) root.getVector("anomaly_type");
+            Float8Vector values = (Float8Vector) root.getVector("value");
+            TimeStampMilliTZVector detectedAt = (TimeStampMilliTZVector) root.getVector("detected_at");
+
+            writer.start();
+            BatchStatistics stats = new BatchStatistics();
+            int batchRows = reportConfig.getColumnarBatchRows();
+            int row = 0;
+            long total = 0;
+
+            while (anomalies.hasNext()) {
+                Anomaly anomaly = anomalies.next();
+                long epochMillis = toEpochMillis(anomaly.getDetectedAt());
+                ids.setSafe(row, anomaly.getId().toString().getBytes(StandardCharsets.UTF_8));
+                deviceIds.setSafe(row, anomaly.getDeviceId().toString().getBytes(StandardCharsets.UTF_8));
+                if (anomaly.getAnomalyType() != null) {
+                    types.setSafe(row, anomaly.getAnomalyType().getBytes(StandardCharsets.UTF_8));
+                } else {
+                    types.setNull(row);
+                }
+                values.setSafe(row, anomaly.getValue());
+                detectedAt.setSafe(row, epochMillis);
+                stats.add(epochMillis, anomaly.getValue());
+                row++;
+
+                if (row == batchRows) {
+                    flushBatch(root, writer, row, stats, metadata);
+                    total += row;
+                    row = 0;
+                    stats = new BatchStatistics();
+                }
+            }
+            if (row > 0) {
+                flushBatch(root, writer, row, stats, metadata);
+                total += row;
+            }
+
+            metadata.put("row_count", Long.toString(total));
+            writer.end();
+            log.info("Exported {} anomalies as Arrow", total);
+            return total;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        allocator.close();
+    }
+
+    // Helper methods
+    private ArrowFileWriter newWriter(VectorSchemaRoot root, Map<String, String> metadata, OutputStream out) {
+        //El footer se escribe en end(), por eso el mapa puede seguir llenandose mientras se exporta
+        return new ArrowFileWriter(root, null, Channels.newChannel(out), metadata, IpcOption.DEFAULT,
+                CommonsCompressionFactory.INSTANCE, CompressionUtil.CodecType.ZSTD);
+    }
+
+    private void flushBatch(VectorSchemaRoot root, ArrowFileWriter writer, int rows,
+                            BatchStatistics stats, Map<String, String> metadata) throws IOException {
+        int batchIndex = writer.getRecordBlocks().size();
+        root.setRowCount(rows);
+        writer.writeBatch();
+        stats.writeTo(metadata, "batch." + batchIndex + ".", rows);
+        root.clear();
+    }
+
+    private Map<String, String> exportMetadata(String dataset, LocalDateTime from, LocalDateTime to) {
+        Map<String, String> metadata = new LinkedHashMap<>();
+        metadata.put("dataset", dataset);
+        metadata.put("from", from.toString());
+        metadata.put("to", to.toString());
+        metadata.put("timezone", "UTC");
+        return metadata;
+    }
+
+    private long toEpochMillis(LocalDateTime timestamp) {
+        return Timestamps.toEpochMillis(timestamp);
+    }
+
+    //Min/max por batch para que los lectores descarten batches fuera de su rango sin descomprimirlos
+    private static final class BatchStatistics {
+        private long minTimestamp = Long.MAX_VALUE;
+        private long maxTimestamp = Long.MIN_VALUE;
+        private double minValue = Double.POSITIVE_INFINITY;
+        private double maxValue = Double.NEGATIVE_INFINITY;
+
+        void add(long timestamp, double value) {
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+            minValue = Math.min(minValue, value);
+            maxValue = Math.max(maxValue, value);
+        }
+
+        void writeTo(Map<String, String> metadata, String prefix, int rows) {
+            metadata.put(prefix + "rows", Integer.toString(rows));
+            metadata.put(prefix + "min_timestamp", Long.toString(minTimestamp));
+            metadata.put(prefix + "max_timestamp", Long.toString(maxTimestamp));
+            metadata.put(prefix + "min_value", Double.toString(minValue));
+            metadata.put(prefix + "max_value", Double.toString(maxValue));
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.ecoenergy.eco_energy.report.service;
+
+import com.ecoenergy.eco_energy.config.ReportConfig;
+import com.ecoenergy.eco_energy.device.model.Device;
+import com.ecoenergy.eco_energy.device.service.DeviceService;
+import com.ecoenergy.eco_energy.report.dto.ExportJobRequest;
+import com.ecoenergy.eco_energy.report.dto.ExportJobStatus;
+import com.ecoenergy.eco_energy.timeseries.service.ReadingStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+//Exportacion CSV de varios dispositivos en segundo plano. Cada dispositivo se escribe en su
+//propio archivo temporal (hasta exportConcurrency a la vez) y al final se empaquetan en un zip.
+//Solo hay exportMaxActiveJobs trabajos en curso; los que llegan de mas se rechazan.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ExportJobService {
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+
+    private final ReportService reportService;
+    private final ReadingStore readingStore;
+    private final DeviceService deviceService;
+    private final ReportConfig reportConfig;
+
+    private final Map<UUID, ExportJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger activeJobs = new AtomicInteger();
+
+    public ExportJobStatus submit(ExportJobRequest request) {
+        if (request.getFrom() == null || request.getTo() == null || request.getTo().isBefore(request.getFrom())) {
+            throw new IllegalArgumentException("A valid date range is required");
+        }
+
+        List<String> deviceLabels = request.getDeviceIds() == null || request.getDeviceIds().isEmpty()
+                ? deviceService.getAllActiveDevices().stream().map(Device::getUbidotsLabel).toList()
+                : request.getDeviceIds().stream().distinct().map(this::deviceLabel).distinct().toList();
+
+        if (activeJobs.incrementAndGet() > reportConfig.getExportMaxActiveJobs()) {
+            activeJobs.decrementAndGet();
+            throw new RejectedExecutionException("Too many export jobs in progress");
+        }
+
+        ExportJob job = new ExportJob(UUID.randomUUID(), request, deviceLabels, fileNames(deviceLabels, request));
+        jobs.put(job.id, job);
+        log.info("Export job {} submitted for {} devices from {} to {}",
+                job.id, deviceLabels.size(), request.getFrom(), request.getTo());
+
+        run(job).subscribe();
+        return job.toStatus();
+    }
+
+    public Optional<ExportJobStatus> getStatus(UUID jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(ExportJob::toStatus);
+    }
+
+    //Solo disponible cuando el trabajo termino
+    public Optional<Path> getArchive(UUID jobId) {
+        return Optional.ofNullable(jobs.get(jobId))
+                .filter(job -> job.state == ExportJobStatus.State.COMPLETED)
+                .map(job -> job.archive);
+    }
+
+    @Scheduled(fixedDelay = 3_600_000)
+    public void removeExpiredJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(reportConfig.getExportRetention());
+        jobs.values().removeIf(job -> {
+            if (job.finishedAt == null || job.finishedAt.isAfter(cutoff)) {
+                return false;
+            }
+            deleteQuietly(job.archive);
+            return true;
+        });
+    }
+
+    private Mono<Void> run(ExportJob job) {
+        Path workDir = reportConfig.getExportDirectory().resolve(job.id.toString());
+
+        return Mono.fromCallable(() -> {
+                    Files.createDirectories(workDir);
+                    job.state = ExportJobStatus.State.RUNNING;
+                    return workDir;
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(dir -> Flux.fromIterable(job.deviceLabels))
+                .flatMap(label -> Mono.fromCallable(() -> exportDevice(job, label, workDir))
+                                .subscribeOn(Schedulers.boundedElastic())
+                                .onErrorResume(error -> {
+                                    log.warn("Export job {}: device {} failed: {}", job.id, label, error.toString());
+                                    job.failedDevices.add(label);
+                                    return Mono.empty();
+                                })
+                                .doFinally(signal -> job.completedDevices.incrementAndGet()),
+                        reportConfig.getExportConcurrency())
+                .collectList()
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(files -> {
+                    buildArchive(job, files);
+                    job.finish(ExportJobStatus.State.COMPLETED, null);
+                    log.info("Export job {} completed: {} rows, {} failed devices",
+                            job.id, job.exportedRows.get(), job.failedDevices.size());
+                })
+                .doOnError(error -> {
+                    log.error("Export job {} failed", job.id, error);
+                    job.finish(ExportJobStatus.State.FAILED, error.getMessage());
+                })
+                .onErrorResume(error -> Mono.empty())
+                .doFinally(signal -> {
+                    deleteQuietly(workDir);
+                    activeJobs.decrementAndGet();
+                })
+                .then();
+    }
+
+    //Mismo formato y rango que /export/csv (ReportService.writeCsv): dias completos de from a to,
+    //ReadingStore incluye el limite superior y por eso termina un nanosegundo antes del dia siguiente
+    private Path exportDevice(ExportJob job, String label, Path workDir) throws IOException {
+        Path file = workDir.resolve(job.fileNames.get(label));
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), EXPORT_BUFFER_SIZE)) {
+            long rows = reportService.writeCsv(
+                    readingStore.streamRange(label,
+                                    job.request.getFrom().atStartOfDay(),
+                                    job.request.getTo().plusDays(1).atStartOfDay().minusNanos(1))
+                            .toIterable(),
+                    writer);
+            job.exportedRows.addAndGet(rows);
+        }
+        return file;
+    }
+
+    //El zip se arma en un solo hilo (ZipOutputStream no es concurrente) copiando los archivos ya escritos
+    private void buildArchive(ExportJob job, List<Path> files) {
+        Path archive = reportConfig.getExportDirectory().resolve(job.id + ".zip");
+        try (OutputStream out = Files.newOutputStream(archive);
+             ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out, EXPORT_BUFFER_SIZE))) {
+            for (Path file : files) {
+                zip.putNextEntry(new ZipEntry(file.getFileName().toString()));
+                Files.copy(file, zip);
+                zip.closeEntry();
+            }
+        } catch (IOException e) {
+            deleteQuietly(archive);
+            throw new UncheckedIOException(e);
+        }
+        job.archive = archive;
+    }
+
+    private String deviceLabel(UUID deviceId) {
+        return deviceService.getDevice(deviceId)
+                .map(Device::getUbidotsLabel)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown device: " + deviceId));
+    }
+
+    //Etiquetas distintas pueden quedar iguales al limpiar los caracteres; se agrega un indice para
+    //que cada dispositivo tenga su propia entrada en el zip
+    private Map<String, String> fileNames(List<String> labels, ExportJobRequest request) {
+        Map<String, String> fileNames = new HashMap<>();
+        Set<String> used = new HashSet<>();
+        for (String label : labels) {
+            String base = String.format("energy_data_%s_%s_to_%s",
+                    label.replaceAll("[^A-Za-z0-9_-]", "_"), request.getFrom(), request.getTo());
+            String name = base + ".csv";
+            for (int index = 2; !used.add(name); index++) {
+                name = base + "_" + index + ".csv";
+            }
+            fileNames.put(label, name);
+        }
+        return fileNames;
+    }
+
+    private void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            if (Files.isDirectory(path)) {
+                try (var children = Files.list(path)) {
+                    for (Path child : children.toList()) {
+                        Files.deleteIfExists(child);
+                    }
+                }
+            }
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete export file {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static final class ExportJob {
+        private final UUID id;
+        private final ExportJobRequest request;
+        private final List<String> deviceLabels;
+        private final Map<String, String> fileNames;
+        private final LocalDateTime submittedAt = LocalDateTime.now();
+        private final AtomicInteger completedDevices = new AtomicInteger();
+        private final AtomicLong exportedRows = new AtomicLong();
+        private final ConcurrentLinkedQueue<String> failedDevices = new ConcurrentLinkedQueue<>();
+        private volatile ExportJobStatus.State state = ExportJobStatus.State.PENDING;
+        private volatile LocalDateTime finishedAt;
+        private volatile String error;
+        private volatile Path archive;
+
+        ExportJob(UUID id, ExportJobRequest request, List<String> deviceLabels, Map<String, String> fileNames) {
+            this.id = id;
+            this.request = request;
+            this.deviceLabels = deviceLabels;
+            this.fileNames = fileNames;
+        }
+
+        void finish(ExportJobStatus.State finalState, String message) {
+            this.error = message;
+            this.finishedAt = LocalDateTime.now();
+            this.state = finalState;
+        }
+
+        ExportJobStatus toStatus() {
+            int total = deviceLabels.size();
+            int completed = completedDevices.get();
+            return ExportJobStatus.builder()
+                    .jobId(id)
+                    .state(state)
+                    .from(request.getFrom())
+                    .to(request.getTo())
+                    .totalDevices(total)
+                    .completedDevices(completed)
+                    .failedDevices(new ArrayList<>(failedDevices))
+                    .exportedRows(exportedRows.get())
+                    .progress(total == 0 ? 1.0 : (double) completed / total)
+                    .submittedAt(submittedAt)
+                    .finishedAt(finishedAt)
+                    .error(error)
+                    .downloadUrl(state == ExportJobStatus.State.COMPLETED
+                            ? "/api/reports/export/jobs/" + id + "/download" : null)
+                    .build();
+        }
+    }
+}
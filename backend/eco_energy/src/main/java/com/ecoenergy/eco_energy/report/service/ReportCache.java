@@ -0,0 +1,118 @@
+package com.ecoenergy.eco_energy.report.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.AnomaliesPersistedEvent;
+import com.ecoenergy.eco_energy.analytics.model.Anomaly;
+import com.ecoenergy.eco_energy.config.ReportConfig;
+import com.ecoenergy.eco_energy.device.service.DeviceService;
+import com.ecoenergy.eco_energy.timeseries.dto.RollupsSavedEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+//Cache de resultados de reportes por (dispositivo, tipo, rango).
+//Un periodo que termino antes de hoy expira tras cacheClosedPeriodTtl; si incluye el dia actual,
+//tras cacheOpenPeriodTtl. Las anomalias nuevas y los agregados diarios guardados (lecturas tardias
+//o reenviadas desde el outbox) invalidan los reportes del dispositivo cuyo rango contiene su fecha.
+//Solo se guardan reportes completos: si el calculo falla (p. ej. Ubidots no responde) no se guarda nada.
+//Cada llamador recibe su propia copia, nunca la instancia guardada.
+@Slf4j
+@Component
+public class ReportCache {
+    public enum Type { DAILY, ANOMALIES, KPIS }
+
+    private record Key(Type type, UUID deviceId, LocalDate from, LocalDate to) {
+        boolean covers(LocalDate date) {
+            return !date.isBefore(from) && !date.isAfter(to);
+        }
+    }
+
+    private final Cache<Key, Object> cache;
+    private final DeviceService deviceService;
+
+    public ReportCache(ReportConfig reportConfig, DeviceService deviceService, MeterRegistry meterRegistry) {
+        this.deviceService = deviceService;
+        long openPeriodTtl = reportConfig.getCacheOpenPeriodTtl().toNanos();
+        long closedPeriodTtl = reportConfig.getCacheClosedPeriodTtl().toNanos();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(reportConfig.getCacheMaximumSize())
+                .expireAfter(new Expiry<Key, Object>() {
+                    @Override
+                    public long expireAfterCreate(Key key, Object value, long currentTime) {
+                        return key.to().isBefore(LocalDate.now()) ? closedPeriodTtl : openPeriodTtl;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Key key, Object value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Key key, Object value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "reports");
+    }
+
+    //Los errores no se guardan: el siguiente llamado vuelve a calcular.
+    //copy se aplica a cada valor entregado para que el llamador no modifique el guardado
+    @SuppressWarnings("unchecked")
+    public <T> T get(Type type, UUID deviceId, LocalDate from, LocalDate to, Supplier<T> loader, UnaryOperator<T> copy) {
+        return copy.apply((T) cache.get(new Key(type, deviceId, from, to), key -> loader.get()));
+    }
+
+    @EventListener
+    public void onAnomaliesPersisted(AnomaliesPersistedEvent event) {
+        // Fechas con anomalias nuevas por dispositivo; normalmente una sola (hoy)
+        Map<UUID, Set<LocalDate>> datesByDevice = new HashMap<>();
+        for (Anomaly anomaly : event.anomalies()) {
+            if (anomaly.getDetectedAt() != null) {
+                datesByDevice.computeIfAbsent(anomaly.getDeviceId(), id -> new HashSet<>())
+                        .add(anomaly.getDetectedAt().toLocalDate());
+            }
+        }
+        invalidate(datesByDevice, event.anomalies().size() + " new anomalies");
+    }
+
+    @EventListener
+    public void onRollupsSaved(RollupsSavedEvent event) {
+        // Los agregados usan la etiqueta de Ubidots; los reportes, el id del dispositivo. La busqueda sale
+        // de DeviceCache en cada lote, tambien para etiquetas sin dispositivo (se guardan como inexistentes)
+        Map<UUID, Set<LocalDate>> datesByDevice = new HashMap<>();
+        event.datesByDevice().forEach((label, dates) -> deviceService.getDeviceByUbidotsLabel(label)
+                .ifPresent(device -> datesByDevice.put(device.getId(), dates)));
+        invalidate(datesByDevice, "saved rollups");
+    }
+
+    private void invalidate(Map<UUID, Set<LocalDate>> datesByDevice, String reason) {
+        List<Key> affected = new ArrayList<>();
+        for (Key key : cache.asMap().keySet()) {
+            Set<LocalDate> dates = datesByDevice.get(key.deviceId());
+            if (dates != null && dates.stream().anyMatch(key::covers)) {
+                affected.add(key);
+            }
+        }
+        if (!affected.isEmpty()) {
+            cache.invalidateAll(affected);
+            log.debug("Invalidated {} cached reports after {}", affected.size(), reason);
+        }
+    }
+}
@@ -1,23 +1,37 @@
 package  com.ecoenergy.eco_energy.report.service;
 
 import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.analytics.dto.ReadingChannel;
 import com.ecoenergy.eco_energy.analytics.model.Anomaly;
 import com.ecoenergy.eco_energy.analytics.repository.AnomalyRepository;
+import com.ecoenergy.eco_energy.config.ReportConfig;
 import com.ecoenergy.eco_energy.device.model.Device;
 import com.ecoenergy.eco_energy.device.service.DeviceService;
 import com.ecoenergy.eco_energy.report.dto.AnomalyReport;
 import com.ecoenergy.eco_energy.report.dto.DailyReport;
 import com.ecoenergy.eco_energy.report.dto.DeviceKpis;
-import com.ecoenergy.eco_energy.ubidots.service.UbidotsService;
+import com.ecoenergy.eco_energy.timeseries.dto.SeriesPoint;
+import com.ecoenergy.eco_energy.timeseries.model.ReadingRollup;
+import com.ecoenergy.eco_energy.timeseries.service.Downsampler;
+import com.ecoenergy.eco_energy.timeseries.service.Timestamps;
+import com.ecoenergy.eco_energy.timeseries.service.ReadingStore;
+import com.ecoenergy.eco_energy.timeseries.service.RollupService;
+import jakarta.annotation.PreDestroy;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
-import java.util.DoubleSummaryStatistics;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -27,12 +41,34 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 @Slf4j
 public class ReportService {
+    public static final String CSV_HEADER = "Device ID,Timestamp,Voltage,Current,Power,Temperature\n";
 
-    private final UbidotsService ubidotsService;
+    private final ReadingStore readingStore;
     private final AnomalyRepository anomalyRepository;
     private final DeviceService deviceService;
+    private final RollupService rollupService;
+    private final ReportConfig reportConfig;
+    private final ReportCache reportCache;
+
+    //Hilos para los KPIs de la flota, limitados a kpiConcurrency entre todas las peticiones
+    private Scheduler kpiScheduler;
 
     public DailyReport generateDailyReport(UUID deviceId, LocalDate date) {
+        return reportCache.get(ReportCache.Type.DAILY, deviceId, date, date,
+                () -> buildDailyReport(deviceId, date), report -> report.toBuilder().build());
+    }
+
+    public AnomalyReport generateAnomalyReport(UUID deviceId, LocalDate from, LocalDate to) {
+        return reportCache.get(ReportCache.Type.ANOMALIES, deviceId, from, to,
+                () -> buildAnomalyReport(deviceId, from, to), ReportService::copyOf);
+    }
+
+    public DeviceKpis getDeviceStatistics(UUID deviceId, LocalDate from, LocalDate to) {
+        return reportCache.get(ReportCache.Type.KPIS, deviceId, from, to,
+                () -> buildDeviceStatistics(deviceId, from, to), kpis -> kpis.toBuilder().build());
+    }
+
+    private DailyReport buildDailyReport(UUID deviceId, LocalDate date) {
         try {
             Device device = deviceService.getDevice(deviceId)
                     .orElseThrow(() -> new EntityNotFoundException("Device not found with ID: " + deviceId));
@@ -40,11 +76,9 @@ public class ReportService {
             LocalDateTime startOfDay = date.atStartOfDay();
             LocalDateTime endOfDay = date.atTime(23, 59, 59);
 
-            List<Reading> readings = ubidotsService.getReading(
-                    device.getUbidotsLabel(), startOfDay, endOfDay
-            );
+            ReadingRollup day = summarize(device.getUbidotsLabel(), date, date);
 
-            if (readings.isEmpty()) {
+            if (day.getCount() == 0) {
                 return DailyReport.builder()
                         .deviceId(deviceId.toString())
                         .date(date)
@@ -55,35 +89,15 @@ public class ReportService {
                         .build();
             }
 
-            double totalConsumption = readings.stream()
-                    .mapToDouble(Reading::getPower)
-                    .sum();
-
-            double averageConsumption = readings.stream()
-                    .mapToDouble(Reading::getPower)
-                    .average()
-                    .orElse(0.0);
-
-            double peakConsumption = readings.stream()
-                    .mapToDouble(Reading::getPower)
-                    .max()
-                    .orElse(0.0);
-
             long anomaliesCount = anomalyRepository
                     .countByDeviceIdAndDetectedAtBetween(deviceId, startOfDay, endOfDay);
 
             return DailyReport.builder()
                     .deviceId(deviceId.toString())
                     .date(date)
-                    .totalConsumption(totalConsumption)
-                    .avgCurrent(readings.stream()
-                            .mapToDouble(Reading::getCurrent)
-                            .average()
-                            .orElse(0.0))
-                    .avgVoltage(readings.stream()
-                            .mapToDouble(Reading::getVoltage)
-                            .average()
-                            .orElse(0.0))
+                    .totalConsumption(day.getPowerSum())
+                    .avgCurrent(day.averageCurrent())
+                    .avgVoltage(day.averageVoltage())
                     .anomalyCount((int) anomaliesCount)
                     .build();
 
@@ -93,7 +107,7 @@ public class ReportService {
         }
     }
 
-    public AnomalyReport generateAnomalyReport(UUID deviceId, LocalDate from, LocalDate to) {
+    private AnomalyReport buildAnomalyReport(UUID deviceId, LocalDate from, LocalDate to) {
         try {
             Device device = deviceService.getDevice(deviceId)
                     .orElseThrow(() -> new EntityNotFoundException("Device not found with ID: " + deviceId));
@@ -130,7 +144,7 @@ public class ReportService {
         }
     }
 
-    public DeviceKpis getDeviceStatistics(UUID deviceId, LocalDate from, LocalDate to) {
+    private DeviceKpis buildDeviceStatistics(UUID deviceId, LocalDate from, LocalDate to) {
         try {
             Device device = deviceService.getDevice(deviceId)
                     .orElseThrow(() -> new EntityNotFoundException("Device not found with ID: " + deviceId));
@@ -138,11 +152,9 @@ public class ReportService {
             LocalDateTime startDateTime = from.atStartOfDay();
             LocalDateTime endDateTime = to.atTime(23, 59, 59);
 
-            List<Reading> readings = ubidotsService.getReading(
-                    device.getUbidotsLabel(), startDateTime, endDateTime
-            );
+            ReadingRollup stats = summarize(device.getUbidotsLabel(), from, to);
 
-            if (readings.isEmpty()) {
+            if (stats.getCount() == 0) {
                 return DeviceKpis.builder()
                         .deviceId(deviceId.toString())
                         .avgPower(0.0)
@@ -153,29 +165,15 @@ public class ReportService {
                         .build();
             }
 
-            DoubleSummaryStatistics powerStats = readings.stream()
-                    .mapToDouble(Reading::getPower)
-                    .summaryStatistics();
-
-            DoubleSummaryStatistics voltageStats = readings.stream()
-                    .mapToDouble(Reading::getVoltage)
-                    .summaryStatistics();
-
-            DoubleSummaryStatistics currentStats = readings.stream()
-                    .mapToDouble(Reading::getCurrent)
-                    .summaryStatistics();
-
             long anomaliesCount = anomalyRepository
                     .countByDeviceIdAndDetectedAtBetween(deviceId, startDateTime, endDateTime);
 
             return DeviceKpis.builder()
                     .deviceId(deviceId.toString())
-                    .avgPower(powerStats.getAverage())
-                    .currentPower(powerStats.getMax())
-                    .efficiency(calculateEfficiencyScore(powerStats.getAverage(), powerStats.getMax()))
-                    .uptimeHours((int) readings.stream()
-                            .filter(r -> r.getPower() > 0)
-                            .count())
+                    .avgPower(stats.averagePower())
+                    .currentPower(stats.getPowerMax())
+                    .efficiency(calculateEfficiencyScore(stats.averagePower(), stats.getPowerMax()))
+                    .uptimeHours((int) stats.getActiveCount())
                     .status(anomaliesCount > 0 ? "Anomalies Detected" : "Normal")
 
                     .build();
@@ -191,16 +189,11 @@ public class ReportService {
             StringBuilder csv = new StringBuilder();
 
             // Header
-            csv.append("Device ID,Timestamp,Voltage,Current,Power,Temperature\n");
+            csv.append(CSV_HEADER);
 
             // Data rows
             for (Reading reading : readings) {
-                csv.append(reading.getDeviceId()).append(",")
-                        .append(reading.getTimestamp()).append(",")
-                        .append(reading.getVoltage()).append(",")
-                        .append(reading.getCurrent()).append(",")
-                        .append(reading.getPower()).append(",")
-                        .append(reading.getTemperature()).append("\n");
+                appendCsvRow(csv, reading);
             }
 
             return csv.toString();
@@ -211,15 +204,56 @@ public class ReportService {
         }
     }
 
+    //Escribe el CSV fila por fila a medida que llegan las lecturas, sin acumular el archivo en memoria.
+    //La fila se arma en un StringBuilder reutilizado (append(double) no crea objetos) y se copia
+    //al writer como arreglo de caracteres.
+    public long writeCsv(Iterable<Reading> readings, Writer writer) throws IOException {
+        StringBuilder row = new StringBuilder(128);
+        char[] buffer = new char[128];
+        long rows = 0;
+
+        writer.write(CSV_HEADER);
+        for (Reading reading : readings) {
+            row.setLength(0);
+            appendCsvRow(row, reading);
+            if (buffer.length < row.length()) {
+                buffer = new char[row.length()];
+            }
+            row.getChars(0, row.length(), buffer, 0);
+            writer.write(buffer, 0, row.length());
+            rows++;
+        }
+        writer.flush();
+        return rows;
+    }
+
+    //Historial de un canal reducido para graficas: se recorre el rango una sola vez.
+    //MINMAX acumula directo en los buckets; RAW y LTTB guardan solo timestamp y valor en arreglos.
+    public List<SeriesPoint> getReadingHistory(String deviceLabel, LocalDateTime from, LocalDateTime to,
+                                               ReadingChannel channel, Downsampler.Method method, int points) {
+        int limit = Math.clamp(points, 1, reportConfig.getHistoryMaxPoints());
+        long fromMillis = Timestamps.toEpochMillis(from);
+        long toMillis = Timestamps.toEpochMillis(to);
+        Iterable<Reading> readings = readingStore.streamRange(deviceLabel, from, to).toIterable();
+
+        if (method == Downsampler.Method.MINMAX) {
+            Downsampler.Buckets buckets = new Downsampler.Buckets(fromMillis, toMillis, limit);
+            for (Reading reading : readings) {
+                buckets.add(Timestamps.toEpochMillis(reading.getTimestamp()), channel.valueOf(reading));
+            }
+            return buckets.toPoints();
+        }
+
+        Downsampler.Series series = new Downsampler.Series();
+        for (Reading reading : readings) {
+            series.add(Timestamps.toEpochMillis(reading.getTimestamp()), channel.valueOf(reading));
+        }
+        return series.downsample(method, fromMillis, toMillis, limit);
+    }
+
     public List<DeviceKpis> getSystemKpis() {
         try {
-            List<Device> activeDevices = deviceService.getAllActiveDevices();
-            LocalDate today = LocalDate.now();
-            LocalDate weekAgo = today.minusDays(7);
-
-            return activeDevices.stream()
-                    .map(device -> getDeviceStatistics(device.getId(), weekAgo, today))
-                    .collect(Collectors.toList());
+            return streamSystemKpis().collectList().block();
 
         } catch (Exception e) {
             log.error("Error getting system KPIs", e);
@@ -227,7 +261,101 @@ public class ReportService {
         }
     }
 
+    //KPIs de la semana para cada dispositivo activo, emitidos a medida que se completan.
+    //Se procesan hasta kpiConcurrency dispositivos a la vez; si uno falla o excede el tiempo
+    //se emite con estado "Unavailable" y el resto continua (resultado parcial). El calculo es
+    //bloqueante: al vencer el tiempo se interrumpe su hilo, y como los hilos son limitados un
+    //dispositivo que no responde a la interrupcion ocupa uno de ellos en vez de crear mas.
+    public Flux<DeviceKpis> streamSystemKpis() {
+        LocalDate today = LocalDate.now();
+        LocalDate weekAgo = today.minusDays(7);
+
+        return Mono.fromCallable(deviceService::getAllActiveDevices)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(Flux::fromIterable)
+                .flatMap(device -> Mono.fromCallable(() -> getDeviceStatistics(device.getId(), weekAgo, today))
+                                .subscribeOn(kpiScheduler())
+                                .timeout(reportConfig.getKpiTimeout())
+                                .onErrorResume(error -> {
+                                    log.warn("KPIs unavailable for device {}: {}", device.getId(), error.toString());
+                                    return Mono.just(unavailableKpis(device));
+                                }),
+                        reportConfig.getKpiConcurrency());
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (kpiScheduler != null) {
+            kpiScheduler.dispose();
+        }
+    }
+
+    public StringBuilder appendCsvRow(StringBuilder csv, Reading reading) {
+        return csv.append(reading.getDeviceId()).append(",")
+                .append(reading.getTimestamp()).append(",")
+                .append(reading.getVoltage()).append(",")
+                .append(reading.getCurrent()).append(",")
+                .append(reading.getPower()).append(",")
+                .append(reading.getTemperature()).append("\n");
+    }
+
     // Helper methods
+
+    private synchronized Scheduler kpiScheduler() {
+        if (kpiScheduler == null) {
+            kpiScheduler = Schedulers.newBoundedElastic(reportConfig.getKpiConcurrency(),
+                    Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "kpi");
+        }
+        return kpiScheduler;
+    }
+
+    //Agregado de los dias entre from y to (inclusive). Los dias cubiertos por los agregados diarios salen
+    //de ellos; los anteriores (historial previo al almacen y el dia en que empezaron los agregados) se
+    //recorren lectura por lectura. Los dias cubiertos siempre son los ultimos del rango.
+    private ReadingRollup summarize(String deviceLabel, LocalDate from, LocalDate to) {
+        LocalDate firstCovered = rollupService.firstCoveredDay(deviceLabel).orElse(LocalDate.MAX);
+        ReadingRollup total = new ReadingRollup(deviceLabel, ReadingRollup.Granularity.DAY, from.atStartOfDay());
+        if (from.isBefore(firstCovered)) {
+            LocalDate lastUncovered = to.isBefore(firstCovered) ? to : firstCovered.minusDays(1);
+            total.merge(aggregate(deviceLabel, from.atStartOfDay(), lastUncovered.plusDays(1).atStartOfDay().minusNanos(1)));
+        }
+        if (!to.isBefore(firstCovered)) {
+            rollupService.summarizeDays(deviceLabel, from.isAfter(firstCovered) ? from : firstCovered, to)
+                    .ifPresent(total::merge);
+        }
+        return total;
+    }
+
+    //Agregado de un rango sin rollups (historial previo), en una sola pasada con memoria constante
+    private ReadingRollup aggregate(String deviceLabel, LocalDateTime from, LocalDateTime to) {
+        ReadingRollup rollup = readingStore.streamRange(deviceLabel, from, to)
+                .reduceWith(() -> new ReadingRollup(deviceLabel, ReadingRollup.Granularity.DAY, from),
+                        (acc, reading) -> {
+                            acc.add(reading);
+                            return acc;
+                        })
+                .block();
+        return rollup != null ? rollup : new ReadingRollup(deviceLabel, ReadingRollup.Granularity.DAY, from);
+    }
+
+    //Las anomalias son entidades mutables: la copia del reporte tambien copia cada una
+    private static AnomalyReport copyOf(AnomalyReport report) {
+        return report.toBuilder()
+                .anomalies(report.getAnomalies().stream()
+                        .map(anomaly -> new Anomaly(anomaly.getId(), anomaly.getDeviceId(), anomaly.getAnomalyType(),
+                                anomaly.getValue(), anomaly.getDetectedAt()))
+                        .collect(Collectors.toList()))
+                .anomaliesByType(new HashMap<>(report.getAnomaliesByType()))
+                .build();
+    }
+
+    private DeviceKpis unavailableKpis(Device device) {
+        return DeviceKpis.builder()
+                .deviceId(device.getId().toString())
+                .status("Unavailable")
+                .build();
+    }
+
     private double calculateEfficiencyScore(double average, double peak) {
         if (peak == 0) return 0.0;
         return Math.max(0, 100 - ((peak - average) / peak * 100));
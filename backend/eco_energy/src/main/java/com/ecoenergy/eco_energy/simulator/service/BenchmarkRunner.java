@@ -0,0 +1,182 @@
+package com.ecoenergy.eco_energy.simulator.service;
+
+import com.ecoenergy.eco_energy.config.SimulatorConfig;
+import com.ecoenergy.eco_energy.config.UbidotsConfig;
+import com.ecoenergy.eco_energy.device.model.Device;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+//Modo benchmark (simulator.benchmark.enabled): genera lecturas a una tasa controlada sobre
+//dispositivos virtuales y mide la latencia de cada etapa con LatencyRecorder.
+//Cada lectura se marca con su hora de envio programada, no con la real: si el sistema se
+//atrasa, la espera cuenta como latencia (se evita la omision coordinada).
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BenchmarkRunner {
+    private final DeviceSimulator deviceSimulator;
+    private final LatencyRecorder latencyRecorder;
+    private final SimulatorConfig simulatorConfig;
+    private final UbidotsConfig ubidotsConfig;
+
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile boolean running;
+    private ExecutorService generators;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        SimulatorConfig.Benchmark config = simulatorConfig.getBenchmark();
+        if (!config.isEnabled()) {
+            return;
+        }
+        if (targetsProductionUbidots(config.getSinks(), ubidotsConfig)) {
+            log.error("Benchmark not started: the ubidots sink is enabled and ubidots.api-url points to {}; " +
+                    "point it to a mock server or disable simulator.benchmark.sinks.ubidots", ubidotsConfig.getApiUrl());
+            return;
+        }
+
+        List<Device> devices = new ArrayList<>(config.getDevices());
+        List<String> types = simulatorConfig.getVirtualDeviceTypes();
+        for (int i = 0; i < config.getDevices(); i++) {
+            devices.add(ReadingGenerator.virtualDevice("bench-", types.get(i % types.size()), i));
+        }
+
+        int threads = Math.max(1, config.getThreads());
+        running = true;
+        generators = Executors.newFixedThreadPool(threads + 1, runnable -> {
+            Thread thread = new Thread(runnable, "benchmark");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long startNanos = System.nanoTime();
+        SplittableRandom seed = new SplittableRandom();
+        for (int i = 0; i < threads; i++) {
+            // Cada generador atiende un subconjunto fijo de dispositivos
+            List<Device> assigned = new ArrayList<>();
+            for (int d = i; d < devices.size(); d += threads) {
+                assigned.add(devices.get(d));
+            }
+            SplittableRandom random = seed.split();
+            generators.execute(() -> generate(assigned, random, startNanos, (double) config.getReadingsPerSecond() / threads));
+        }
+        generators.execute(() -> supervise(startNanos));
+
+        log.info("Benchmark started: {} readings/s over {} devices with {} threads for {} (warmup {})",
+                config.getReadingsPerSecond(), devices.size(), threads, config.getDuration(), config.getWarmup());
+    }
+
+    //La carga del benchmark solo puede ir a Ubidots si la URL apunta a otro servidor (un mock)
+    static boolean targetsProductionUbidots(SimulatorConfig.Sinks sinks, UbidotsConfig ubidotsConfig) {
+        if (!sinks.isUbidots()) {
+            return false;
+        }
+        String host = URI.create(ubidotsConfig.getApiUrl()).getHost();
+        return host == null || host.equals("ubidots.com") || host.endsWith(".ubidots.com");
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (generators != null) {
+            generators.shutdownNow();
+        }
+    }
+
+    //Bucle de carga abierto: la hora de cada envio se calcula a partir de la tasa, no del envio anterior
+    private void generate(List<Device> devices, SplittableRandom random, long startNanos, double ratePerThread) {
+        if (devices.isEmpty() || ratePerThread <= 0) {
+            return;
+        }
+        SimulatorConfig.Benchmark config = simulatorConfig.getBenchmark();
+        long scheduled = startNanos;
+        int next = 0;
+
+        while (running) {
+            long now = System.nanoTime();
+            if (scheduled > now) {
+                LockSupport.parkNanos(scheduled - now);
+                continue;
+            }
+
+            Device device = devices.get(next);
+            next = (next + 1) % devices.size();
+            try {
+                var reading = ReadingGenerator.generate(device, random, config.getAnomalyProbability());
+                reading.setGeneratedAtNanos(scheduled);
+                deviceSimulator.publish(device, reading);
+                generated.incrementAndGet();
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                log.debug("Benchmark reading failed for {}: {}", device.getUbidotsLabel(), e.toString());
+            }
+
+            scheduled += (long) (1_000_000_000L / (ratePerThread * rateFactor(scheduled - startNanos, config)));
+        }
+    }
+
+    //Perfil de rafagas: al inicio de cada periodo la tasa se multiplica durante burstLength
+    private double rateFactor(long elapsedNanos, SimulatorConfig.Benchmark config) {
+        long period = config.getBurstPeriod().toNanos();
+        if (period <= 0) {
+            return 1.0;
+        }
+        return elapsedNanos % period < config.getBurstLength().toNanos() ? config.getBurstFactor() : 1.0;
+    }
+
+    private void supervise(long startNanos) {
+        SimulatorConfig.Benchmark config = simulatorConfig.getBenchmark();
+        try {
+            TimeUnit.NANOSECONDS.sleep(config.getWarmup().toNanos());
+            latencyRecorder.reset();
+            long measuredFrom = System.nanoTime();
+            long generatedAtWarmup = generated.get();
+            log.info("Benchmark warmup finished after {} readings", generatedAtWarmup);
+
+            TimeUnit.NANOSECONDS.sleep(config.getDuration().toNanos());
+            running = false;
+            double elapsed = (System.nanoTime() - measuredFrom) / 1e9;
+            // Damos tiempo a que terminen las entregas en curso
+            TimeUnit.SECONDS.sleep(1);
+
+            String report = String.format(Locale.ROOT,
+                    "EcoEnergy benchmark %s%n" +
+                    "target rate: %d readings/s, devices: %d, threads: %d, anomaly probability: %.3f%n" +
+                    "burst: period %s, length %s, factor %.1f%n" +
+                    "sinks: %s%n" +
+                    "measured: %.1f s, generated: %d (%.1f/s), failed: %d%n%n%s",
+                    LocalDateTime.now(), config.getReadingsPerSecond(), config.getDevices(), config.getThreads(),
+                    config.getAnomalyProbability(), config.getBurstPeriod(), config.getBurstLength(),
+                    config.getBurstFactor(), config.getSinks(),
+                    elapsed, generated.get() - generatedAtWarmup, (generated.get() - generatedAtWarmup) / elapsed,
+                    failed.get(), latencyRecorder.report(elapsed));
+
+            log.info("Benchmark finished{}{}", System.lineSeparator(), report);
+            Files.writeString(config.getReportFile(), report);
+            log.info("Benchmark report written to {}", config.getReportFile().toAbsolutePath());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("Could not write benchmark report", e);
+        }
+    }
+}
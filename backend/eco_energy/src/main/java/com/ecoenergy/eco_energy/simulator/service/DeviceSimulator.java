@@ -1,130 +1,212 @@
 package com.ecoenergy.eco_energy.simulator.service;
 
 import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.analytics.service.OnlineAnomalyDetector;
+import com.ecoenergy.eco_energy.config.SimulatorConfig;
 import com.ecoenergy.eco_energy.device.model.Device;
 import com.ecoenergy.eco_energy.device.service.DeviceService;
 import com.ecoenergy.eco_energy.notification.websocket.EnergyDataHandler;
+import com.ecoenergy.eco_energy.timeseries.service.ReadingStore;
 import com.ecoenergy.eco_energy.ubidots.service.UbidotsService;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.EnableScheduling;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.web.bind.annotation.RequestBody;
-
-import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.util.Random;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+//Simulador de la flota. Los dispositivos se reparten entre varios hilos (shards) y cada uno
+//tiene su propia tarea a tasa fija. El desfase inicial se deriva del id del dispositivo, asi las
+//lecturas se reparten dentro del intervalo y cada dispositivo conserva su fase entre reinicios.
+//Cada shard usa su propio SplittableRandom (sin contencion).
+//Ademas de los dispositivos activos de la base de datos puede generar dispositivos virtuales.
 @Component
-@RequiredArgsConstructor
 @Slf4j
 @EnableScheduling
 public class DeviceSimulator{
     private final DeviceService deviceService;
     private final UbidotsService ubidotsService;
     private final EnergyDataHandler energyDataHandler;
-    private  final Random random = new Random();
+    private final ReadingStore readingStore;
+    private final OnlineAnomalyDetector onlineAnomalyDetector;
+    private final SimulatorConfig config;
+    private final SimulatorConfig.Sinks sinks;
+    private final LatencyRecorder latencyRecorder;
+    private final Timer tickLatency;
+
+    private final List<Shard> shards = new ArrayList<>();
+    private final Map<UUID, SimulatedDevice> simulated = new ConcurrentHashMap<>();
+    private final List<Device> virtualDevices = new ArrayList<>();
+    private ScheduledExecutorService refresher;
+
+    public DeviceSimulator(DeviceService deviceService, UbidotsService ubidotsService,
+                           EnergyDataHandler energyDataHandler, ReadingStore readingStore,
+                           OnlineAnomalyDetector onlineAnomalyDetector, SimulatorConfig config,
+                           LatencyRecorder latencyRecorder, MeterRegistry meterRegistry) {
+        this.deviceService = deviceService;
+        this.ubidotsService = ubidotsService;
+        this.energyDataHandler = energyDataHandler;
+        this.readingStore = readingStore;
+        this.onlineAnomalyDetector = onlineAnomalyDetector;
+        this.config = config;
+        this.sinks = config.activeSinks();
+        this.latencyRecorder = latencyRecorder;
+        this.tickLatency = Timer.builder("simulator.tick")
+                .description("Time to generate and publish one simulated reading")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!config.isEnabled() || config.getBenchmark().isEnabled()) {
+            log.info("Device simulator ticks disabled");
+            return;
+        }
+
+        SplittableRandom seed = new SplittableRandom();
+        for (int i = 0; i < Math.max(1, config.getShards()); i++) {
+            shards.add(new Shard(i, seed.split()));
+        }
+        for (int i = 0; i < config.getVirtualDevices(); i++) {
+            virtualDevices.add(ReadingGenerator.virtualDevice(config.getVirtualLabelPrefix(),
+                    config.getVirtualDeviceTypes().get(i % config.getVirtualDeviceTypes().size()), i));
+        }
+
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "simulator-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refreshDevices, 0,
+                config.getRefreshInterval().toMillis(), TimeUnit.MILLISECONDS);
+        log.info("Device simulator started with {} shards and {} virtual devices",
+                shards.size(), virtualDevices.size());
+    }
 
-    @Scheduled(fixedRate = 5000)//Cada 5 segundos
-    public void generateSensorData(){
-        var devices = deviceService.getAllActiveDevices();
-        devices.forEach(this::simulateReading);
+    @PreDestroy
+    public void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+        shards.forEach(shard -> shard.executor.shutdownNow());
     }
 
-    private void simulateReading(Device device) {
+    //Sincroniza las tareas con la lista de dispositivos: agrega las nuevas, quita las de
+    //dispositivos que ya no estan activos y actualiza los datos de los que cambiaron
+    void refreshDevices() {
         try {
-            // Generamos datos realistas basados en tipo de dispositivo
-            var voltage = generateVoltage(device);
-            var current = generateCurrent(device);
-            var power = voltage * current; // P = V * I
-            var temperature = generateTemperature(device);
-
-            // Inyectar anomalías ocasionalmente (5% probabilidad)
-            if (random.nextDouble() < 0.05) {
-                injectAnomaly(device, voltage, current, power, temperature);
-            }
-
-            // Enviar a Ubidots
-            ubidotsService.sendDataReading(
-                    device.getUbidotsLabel(),
-                    voltage, current, power, temperature
-            );
-
-            // Enviar por WebSocket a clientes suscritos
-            Reading reading = new Reading();
-            reading.setDeviceId(device.getUbidotsLabel());
-            reading.setVoltage(voltage);
-            reading.setCurrent(current);
-            reading.setPower(power);
-            reading.setTemperature(temperature);
-            reading.setTimestamp(LocalDateTime.now());
+            Map<UUID, Device> current = new HashMap<>();
+            deviceService.getAllActiveDevices().forEach(device -> current.put(device.getId(), device));
+            virtualDevices.forEach(device -> current.put(device.getId(), device));
+
+            simulated.entrySet().removeIf(entry -> {
+                if (current.containsKey(entry.getKey())) {
+                    return false;
+                }
+                entry.getValue().task.cancel(false);
+                return true;
+            });
+
+            long interval = config.getTickInterval().toMillis();
+            current.forEach((id, device) -> {
+                SimulatedDevice existing = simulated.get(id);
+                if (existing != null) {
+                    existing.device = device;
+                    return;
+                }
+                Shard shard = shards.get(Math.floorMod(id.hashCode(), shards.size()));
+                SimulatedDevice entry = new SimulatedDevice(device);
+                long phase = Math.floorMod(id.getLeastSignificantBits(), interval);
+                entry.task = shard.executor.scheduleAtFixedRate(
+                        () -> simulateReading(entry.device, shard.random), phase, interval, TimeUnit.MILLISECONDS);
+                simulated.put(id, entry);
+            });
+        } catch (Exception e) {
+            log.error("Error refreshing simulated devices", e);
+        }
+    }
 
-            energyDataHandler.sendEnergyData(device.getUbidotsLabel(), reading);
+    //Ids de los dispositivos con tarea programada
+    Set<UUID> simulatedDeviceIds() {
+        return Set.copyOf(simulated.keySet());
+    }
 
+    //Se ejecuta siempre en el hilo del shard del dispositivo, dueño exclusivo de random
+    private void simulateReading(Device device, SplittableRandom random) {
+        Timer.Sample sample = Timer.start();
+        try {
+            publish(device, ReadingGenerator.generate(device, random, config.getAnomalyProbability()));
         } catch (Exception e) {
+            // No se propaga: una excepcion cancelaria las siguientes lecturas del dispositivo
             log.error("Error simulating reading for device: {}", device.getName(), e);
+        } finally {
+            sample.stop(tickLatency);
         }
     }
 
-    private double generateVoltage(Device device) {
-        // Voltaje base según tipo de dispositivo
-        double baseVoltage = switch (device.getType().toLowerCase()) {
-            case "motor" -> 220.0;
-            case "pump" -> 380.0;
-            case "compressor" -> 440.0;
-            default -> 220.0;
-        };
-
-        // Variación normal ±5%
-        double variation = (random.nextGaussian() * 0.05) + 1.0;
-        return baseVoltage * variation;
-    }
-
-    private double generateCurrent(Device device) {
-        // Corriente base según tipo
-        double baseCurrent = switch (device.getType().toLowerCase()) {
-            case "motor" -> 15.0;
-            case "pump" -> 25.0;
-            case "compressor" -> 35.0;
-            default -> 10.0;
-        };
+    //Recorrido completo de una lectura. Cada destino desactivado en los sinks activos se omite
+    //(sustituto local); las latencias solo se registran si la lectura tiene marca de generacion.
+    void publish(Device device, Reading reading) {
+        // Guardar en el almacen local (fuente de los reportes)
+        if (sinks.isStore()) {
+            readingStore.append(reading);
+        }
+        latencyRecorder.record(LatencyRecorder.Stage.STORE, reading);
 
-        // Patrón diario (más consumo en horas laborales)
-        double hourFactor = getDailyPattern();
-        double variation = (random.nextGaussian() * 0.1) + 1.0;
+        // Evaluar anomalias en tiempo real con las estadisticas acumuladas del dispositivo
+        if (sinks.isAnomalyDetection()) {
+            onlineAnomalyDetector.evaluate(device, reading);
+        }
+        latencyRecorder.record(LatencyRecorder.Stage.ANOMALY_DETECTION, reading);
 
-        return baseCurrent * hourFactor * variation;
-    }
+        // Enviar a Ubidots (queda en el outbox)
+        if (sinks.isUbidots()) {
+            ubidotsService.sendReading(reading);
+        }
+        latencyRecorder.record(LatencyRecorder.Stage.INGESTION, reading);
 
-    private double generateTemperature(Device device) {
-        double baseTemp = 45.0; // Temperatura base operacional
-        double variation = random.nextGaussian() * 5.0; // ±5°C
-        return Math.max(20.0, baseTemp + variation); // Mínimo 20°C
+        // Enviar por WebSocket a clientes suscritos
+        if (sinks.isWebSocket()) {
+            energyDataHandler.sendEnergyData(device.getUbidotsLabel(), reading);
+        }
+        latencyRecorder.record(LatencyRecorder.Stage.END_TO_END, reading);
     }
 
-    private double getDailyPattern(){
-        LocalTime now = LocalTime.now();
-        //Hora : &:00 am
-        if(now.isBefore(LocalTime.of(6,0))){
-            return 0.6;
-        }else if(now.isBefore(LocalTime.of(19,0))) {
-            //Simular pequeñas varias durante el día
-            return 1.0 + random.nextDouble() * 0.2;
-        }else{
-            return 0.8;
+    private static final class Shard {
+        private final ScheduledExecutorService executor;
+        private final SplittableRandom random;
+
+        Shard(int index, SplittableRandom random) {
+            this.random = random;
+            this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "simulator-shard-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
         }
     }
 
-    private void injectAnomaly(Device device, double voltage, double current, double power, double temperature) {
-        int anomalyType = random.nextInt(4); // 0-3
+    private static final class SimulatedDevice {
+        private volatile Device device;
+        private ScheduledFuture<?> task;
 
-        switch(anomalyType) {
-            case 0: current *= 1.5; break;     // Pico consumo
-            case 1: voltage *= 0.8; break;     // Caída de voltaje
-            case 2: temperature += 20; break;  // Sobrecalentamiento del dispositivo
-            case 3: current = 0; break;        // Corte
+        SimulatedDevice(Device device) {
+            this.device = device;
         }
-        log.warn("Anomaly injected for device: {}", device.getName());
     }
 }
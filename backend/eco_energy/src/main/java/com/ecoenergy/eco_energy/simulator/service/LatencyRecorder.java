@@ -0,0 +1,77 @@
+package com.ecoenergy.eco_energy.simulator.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//Histogramas de latencia (HdrHistogram) por etapa, medidos desde el momento de generacion
+//de la lectura (Reading.generatedAtNanos). Solo se registran lecturas marcadas por el benchmark.
+@Component
+public class LatencyRecorder {
+    public enum Stage {
+        STORE,
+        ANOMALY_DETECTION,
+        INGESTION,
+        WEBSOCKET_DELIVERY,
+        END_TO_END
+    }
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private final Map<Stage, Recorder> recorders = new EnumMap<>(Stage.class);
+    private final Map<Stage, Histogram> totals = new EnumMap<>(Stage.class);
+
+    public LatencyRecorder() {
+        for (Stage stage : Stage.values()) {
+            recorders.put(stage, new Recorder(HIGHEST_TRACKABLE_NANOS, 3));
+            totals.put(stage, new Histogram(HIGHEST_TRACKABLE_NANOS, 3));
+        }
+    }
+
+    //Seguro para llamar desde cualquier hilo (Recorder no usa bloqueos al registrar)
+    public void record(Stage stage, Reading reading) {
+        long generatedAt = reading.getGeneratedAtNanos();
+        if (generatedAt != 0) {
+            long latency = System.nanoTime() - generatedAt;
+            recorders.get(stage).recordValue(Math.min(Math.max(latency, 0), HIGHEST_TRACKABLE_NANOS));
+        }
+    }
+
+    //Descarta lo registrado hasta ahora (fin del calentamiento)
+    public synchronized void reset() {
+        recorders.values().forEach(Recorder::reset);
+        totals.values().forEach(Histogram::reset);
+    }
+
+    //Acumula lo registrado desde la ultima llamada y devuelve el reporte de todo el periodo
+    public synchronized String report(double elapsedSeconds) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "%-20s %10s %10s %10s %10s %10s %10s %10s %12s%n",
+                "stage", "count", "p50(us)", "p90(us)", "p99(us)", "p99.9(us)", "max(us)", "mean(us)", "rate(/s)"));
+        for (Stage stage : Stage.values()) {
+            Histogram total = totals.get(stage);
+            total.add(recorders.get(stage).getIntervalHistogram());
+            report.append(String.format(Locale.ROOT, "%-20s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f %12.1f%n",
+                    stage,
+                    total.getTotalCount(),
+                    micros(total.getValueAtPercentile(50)),
+                    micros(total.getValueAtPercentile(90)),
+                    micros(total.getValueAtPercentile(99)),
+                    micros(total.getValueAtPercentile(99.9)),
+                    micros(total.getMaxValue()),
+                    total.getMean() / 1_000.0,
+                    elapsedSeconds > 0 ? total.getTotalCount() / elapsedSeconds : 0));
+        }
+        return report.toString();
+    }
+
+    private double micros(long nanos) {
+        return nanos / 1_000.0;
+    }
+}
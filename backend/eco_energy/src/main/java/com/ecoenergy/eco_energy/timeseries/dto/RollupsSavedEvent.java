@@ -0,0 +1,10 @@
+package com.ecoenergy.eco_energy.timeseries.dto;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Set;
+
+//Se publica despues de guardar agregados diarios (RollupService.flush): dias modificados por etiqueta
+//de Ubidots, incluidos los dias cerrados que recibieron lecturas tardias
+public record RollupsSavedEvent(Map<String, Set<LocalDate>> datesByDevice) {
+}
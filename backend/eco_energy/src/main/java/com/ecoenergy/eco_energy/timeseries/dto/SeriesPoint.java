@@ -0,0 +1,24 @@
+package com.ecoenergy.eco_energy.timeseries.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+//Punto de una serie reducida. En buckets value es el promedio y timestamp el inicio del bucket;
+//en LTTB y en la serie sin reducir es un punto original (sin min/max/count).
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SeriesPoint {
+    private LocalDateTime timestamp;
+    private double value;
+    private Double min;
+    private Double max;
+    private Integer count;
+}
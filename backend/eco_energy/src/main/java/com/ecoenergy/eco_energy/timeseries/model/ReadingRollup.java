@@ -0,0 +1,137 @@
+package com.ecoenergy.eco_energy.timeseries.model;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+//Agregado de las lecturas de un dispositivo en un intervalo (minuto, hora o dia).
+//Con count, suma, minimo, maximo y suma de cuadrados se obtienen promedio, picos y desviacion.
+@Entity
+@Table(name = "reading_rollups", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_rollups_device_bucket", columnNames = {"device_id", "granularity", "bucket_start"})
+})
+@Data
+@NoArgsConstructor
+public class ReadingRollup {
+    public enum Granularity {
+        MINUTE,
+        HOUR,
+        DAY
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "reading_rollups_seq")
+    @SequenceGenerator(name = "reading_rollups_seq", sequenceName = "reading_rollups_seq", allocationSize = 50)
+    private Long id;
+    @Column(name = "device_id", nullable = false)
+    private String deviceId;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "granularity", nullable = false)
+    private Granularity granularity;
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+
+    private long count;
+    //Lecturas con potencia > 0 (dispositivo encendido)
+    private long activeCount;
+
+    private double voltageSum, voltageMin, voltageMax, voltageSumSquares;
+    private double currentSum, currentMin, currentMax, currentSumSquares;
+    private double powerSum, powerMin, powerMax, powerSumSquares;
+    private double temperatureSum, temperatureMin, temperatureMax, temperatureSumSquares;
+
+    public ReadingRollup(String deviceId, Granularity granularity, LocalDateTime bucketStart) {
+        this.deviceId = deviceId;
+        this.granularity = granularity;
+        this.bucketStart = bucketStart;
+    }
+
+    public void add(Reading reading) {
+        double voltage = reading.getVoltage();
+        double current = reading.getCurrent();
+        double power = reading.getPower();
+        double temperature = reading.getTemperature();
+
+        if (count == 0) {
+            voltageMin = voltageMax = voltage;
+            currentMin = currentMax = current;
+            powerMin = powerMax = power;
+            temperatureMin = temperatureMax = temperature;
+        }
+        count++;
+        if (power > 0) activeCount++;
+
+        voltageSum += voltage;
+        voltageMin = Math.min(voltageMin, voltage);
+        voltageMax = Math.max(voltageMax, voltage);
+        voltageSumSquares += voltage * voltage;
+
+        currentSum += current;
+        currentMin = Math.min(currentMin, current);
+        currentMax = Math.max(currentMax, current);
+        currentSumSquares += current * current;
+
+        powerSum += power;
+        powerMin = Math.min(powerMin, power);
+        powerMax = Math.max(powerMax, power);
+        powerSumSquares += power * power;
+
+        temperatureSum += temperature;
+        temperatureMin = Math.min(temperatureMin, temperature);
+        temperatureMax = Math.max(temperatureMax, temperature);
+        temperatureSumSquares += temperature * temperature;
+    }
+
+    //Combina otro agregado (por ejemplo varios dias en un rango)
+    public ReadingRollup merge(ReadingRollup other) {
+        if (other.count == 0) return this;
+        if (count == 0) {
+            voltageMin = other.voltageMin;
+            voltageMax = other.voltageMax;
+            currentMin = other.currentMin;
+            currentMax = other.currentMax;
+            powerMin = other.powerMin;
+            powerMax = other.powerMax;
+            temperatureMin = other.temperatureMin;
+            temperatureMax = other.temperatureMax;
+        }
+        count += other.count;
+        activeCount += other.activeCount;
+
+        voltageSum += other.voltageSum;
+        voltageMin = Math.min(voltageMin, other.voltageMin);
+        voltageMax = Math.max(voltageMax, other.voltageMax);
+        voltageSumSquares += other.voltageSumSquares;
+
+        currentSum += other.currentSum;
+        currentMin = Math.min(currentMin, other.currentMin);
+        currentMax = Math.max(currentMax, other.currentMax);
+        currentSumSquares += other.currentSumSquares;
+
+        powerSum += other.powerSum;
+        powerMin = Math.min(powerMin, other.powerMin);
+        powerMax = Math.max(powerMax, other.powerMax);
+        powerSumSquares += other.powerSumSquares;
+
+        temperatureSum += other.temperatureSum;
+        temperatureMin = Math.min(temperatureMin, other.temperatureMin);
+        temperatureMax = Math.max(temperatureMax, other.temperatureMax);
+        temperatureSumSquares += other.temperatureSumSquares;
+        return this;
+    }
+
+    public double averageVoltage() {
+        return count > 0 ? voltageSum / count : 0.0;
+    }
+
+    public double averageCurrent() {
+        return count > 0 ? currentSum / count : 0.0;
+    }
+
+    public double averagePower() {
+        return count > 0 ? powerSum / count : 0.0;
+    }
+}
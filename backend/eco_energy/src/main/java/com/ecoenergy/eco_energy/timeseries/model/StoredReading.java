@@ -0,0 +1,33 @@
+package com.ecoenergy.eco_energy.timeseries.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "readings", indexes = {
+        // Ruta principal de lectura: rango de tiempo por dispositivo
+        @Index(name = "idx_readings_device_time", columnList = "device_id, recorded_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredReading {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "readings_seq")
+    @SequenceGenerator(name = "readings_seq", sequenceName = "readings_seq", allocationSize = 50)
+    private Long id;
+    //Label de Ubidots del dispositivo
+    @Column(name = "device_id", nullable = false)
+    private String deviceId;
+    @Column(name = "recorded_at", nullable = false)
+    private LocalDateTime recordedAt;
+    private double voltage;
+    @Column(name = "current_value")
+    private double current;
+    private double power;
+    private double temperature;
+}
@@ -0,0 +1,22 @@
+package com.ecoenergy.eco_energy.timeseries.repository;
+
+import com.ecoenergy.eco_energy.timeseries.model.ReadingRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface ReadingRollupRepository extends JpaRepository<ReadingRollup, Long> {
+    Optional<ReadingRollup> findByDeviceIdAndGranularityAndBucketStart(
+            String deviceId, ReadingRollup.Granularity granularity, LocalDateTime bucketStart
+    );
+
+    Optional<ReadingRollup> findFirstByDeviceIdAndGranularityOrderByBucketStartAsc(
+            String deviceId, ReadingRollup.Granularity granularity
+    );
+
+    List<ReadingRollup> findByDeviceIdAndGranularityAndBucketStartBetween(
+            String deviceId, ReadingRollup.Granularity granularity, LocalDateTime start, LocalDateTime end
+    );
+}
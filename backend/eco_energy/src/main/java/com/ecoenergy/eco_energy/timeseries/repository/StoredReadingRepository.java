@@ -0,0 +1,26 @@
+package com.ecoenergy.eco_energy.timeseries.repository;
+
+import com.ecoenergy.eco_energy.timeseries.model.StoredReading;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface StoredReadingRepository extends JpaRepository<StoredReading, Long> {
+    List<StoredReading> findByDeviceIdAndRecordedAtBetweenOrderByRecordedAtAsc(
+            String deviceId, LocalDateTime start, LocalDateTime end
+    );
+
+    //Ventana semiabierta [start, end) para recorrer rangos largos sin duplicar bordes
+    @Query("SELECT r FROM StoredReading r WHERE r.deviceId = :deviceId " +
+            "AND r.recordedAt >= :start AND r.recordedAt < :end ORDER BY r.recordedAt")
+    List<StoredReading> findWindow(@Param("deviceId") String deviceId,
+                                   @Param("start") LocalDateTime start,
+                                   @Param("end") LocalDateTime end);
+
+    //Primera lectura guardada del dispositivo: marca el inicio del historial local
+    Optional<StoredReading> findFirstByDeviceIdOrderByRecordedAtAsc(String deviceId);
+}
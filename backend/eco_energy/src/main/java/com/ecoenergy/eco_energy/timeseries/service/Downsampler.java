@@ -0,0 +1,173 @@
+package com.ecoenergy.eco_energy.timeseries.service;
+
+import com.ecoenergy.eco_energy.timeseries.dto.SeriesPoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//Reduccion de series para graficas sobre arreglos primitivos (timestamps en ms epoch, ver Timestamps).
+//  MINMAX: buckets de ancho fijo con min/max/promedio, una sola pasada y memoria por bucket
+//  LTTB: Largest-Triangle-Three-Buckets, conserva la forma visual eligiendo puntos originales
+public final class Downsampler {
+    public enum Method {
+        RAW,
+        MINMAX,
+        LTTB
+    }
+
+    private Downsampler() {
+    }
+
+    //Acumula puntos en buckets de [from, to) sin guardar los puntos; los buckets vacios se omiten
+    public static final class Buckets {
+        private final long from;
+        private final long width;
+        private final double[] min;
+        private final double[] max;
+        private final double[] sum;
+        private final int[] count;
+
+        public Buckets(long from, long to, int buckets) {
+            int size = Math.max(1, buckets);
+            this.from = from;
+            // Ancho redondeado hacia arriba para cubrir todo el rango
+            this.width = Math.max(1, (to - from + size - 1) / size);
+            this.min = new double[size];
+            this.max = new double[size];
+            this.sum = new double[size];
+            this.count = new int[size];
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        }
+
+        //Los puntos fuera del rango se asignan al bucket del extremo
+        public void add(long timestamp, double value) {
+            int index = Math.clamp((timestamp - from) / width, 0, count.length - 1);
+            min[index] = Math.min(min[index], value);
+            max[index] = Math.max(max[index], value);
+            sum[index] += value;
+            count[index]++;
+        }
+
+        public List<SeriesPoint> toPoints() {
+            List<SeriesPoint> points = new ArrayList<>();
+            for (int i = 0; i < count.length; i++) {
+                if (count[i] == 0) {
+                    continue;
+                }
+                points.add(SeriesPoint.builder()
+                        .timestamp(Timestamps.fromEpochMillis(from + i * width))
+                        .value(sum[i] / count[i])
+                        .min(min[i])
+                        .max(max[i])
+                        .count(count[i])
+                        .build());
+            }
+            return points;
+        }
+    }
+
+    //Serie en arreglos que crecen segun se agregan puntos (en orden de timestamp)
+    public static final class Series {
+        private long[] timestamps = new long[256];
+        private double[] values = new double[256];
+        private int size;
+
+        public void add(long timestamp, double value) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            timestamps[size] = timestamp;
+            values[size] = value;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public List<SeriesPoint> downsample(Method method, long from, long to, int points) {
+            return switch (method) {
+                case RAW -> raw(timestamps, values, size);
+                case MINMAX -> buckets(timestamps, values, size, from, to, points);
+                case LTTB -> lttb(timestamps, values, size, points);
+            };
+        }
+    }
+
+    public static List<SeriesPoint> raw(long[] timestamps, double[] values, int size) {
+        List<SeriesPoint> points = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            points.add(point(timestamps[i], values[i]));
+        }
+        return points;
+    }
+
+    public static List<SeriesPoint> buckets(long[] timestamps, double[] values, int size,
+                                            long from, long to, int buckets) {
+        Buckets accumulator = new Buckets(from, to, buckets);
+        for (int i = 0; i < size; i++) {
+            accumulator.add(timestamps[i], values[i]);
+        }
+        return accumulator.toPoints();
+    }
+
+    //threshold incluye el primer y el ultimo punto (minimo 3); si la serie ya es mas corta se devuelve completa
+    public static List<SeriesPoint> lttb(long[] timestamps, double[] values, int size, int threshold) {
+        int target = Math.max(3, threshold);
+        if (size <= target) {
+            return raw(timestamps, values, size);
+        }
+
+        List<SeriesPoint> points = new ArrayList<>(target);
+        // x relativo al primer punto: los ms epoch pierden precision al multiplicarse como double
+        long origin = timestamps[0];
+        double every = (double) (size - 2) / (target - 2);
+        int selected = 0;
+        points.add(point(timestamps[0], values[0]));
+
+        for (int bucket = 0; bucket < target - 2; bucket++) {
+            // Promedio del siguiente bucket: tercer vertice del triangulo
+            int nextStart = (int) ((bucket + 1) * every) + 1;
+            int nextEnd = Math.min((int) ((bucket + 2) * every) + 1, size);
+            double avgX = 0;
+            double avgY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgX += timestamps[i] - origin;
+                avgY += values[i];
+            }
+            int nextCount = nextEnd - nextStart;
+            avgX /= nextCount;
+            avgY /= nextCount;
+
+            // Punto del bucket actual con el triangulo de mayor area
+            int start = (int) (bucket * every) + 1;
+            int end = (int) ((bucket + 1) * every) + 1;
+            double ax = timestamps[selected] - origin;
+            double ay = values[selected];
+            double maxArea = -1;
+            int best = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((ax - avgX) * (values[i] - ay) - (ax - (timestamps[i] - origin)) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    best = i;
+                }
+            }
+            points.add(point(timestamps[best], values[best]));
+            selected = best;
+        }
+
+        points.add(point(timestamps[size - 1], values[size - 1]));
+        return points;
+    }
+
+    private static SeriesPoint point(long timestamp, double value) {
+        return SeriesPoint.builder()
+                .timestamp(Timestamps.fromEpochMillis(timestamp))
+                .value(value)
+                .build();
+    }
+}
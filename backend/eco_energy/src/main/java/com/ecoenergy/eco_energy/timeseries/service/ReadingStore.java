@@ -0,0 +1,153 @@
+package com.ecoenergy.eco_energy.timeseries.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.timeseries.model.StoredReading;
+import com.ecoenergy.eco_energy.timeseries.repository.StoredReadingRepository;
+import com.ecoenergy.eco_energy.ubidots.service.UbidotsService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+//Almacen local de series de tiempo. Las lecturas se guardan aqui primero
+//y los reportes consultan este almacen en lugar de Ubidots.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReadingStore {
+    //Cada ventana es una consulta indexada; una hora a 5s son ~720 filas por dispositivo
+    private static final Duration STREAM_WINDOW = Duration.ofHours(1);
+
+    private final StoredReadingRepository storedReadingRepository;
+    private final UbidotsService ubidotsService;
+    private final RollupService rollupService;
+
+    public void append(Reading reading) {
+        if (reading.getTimestamp() == null) {
+            reading.setTimestamp(LocalDateTime.now());
+        }
+        StoredReading stored = new StoredReading();
+        stored.setDeviceId(reading.getDeviceId());
+        stored.setRecordedAt(reading.getTimestamp());
+        stored.setVoltage(reading.getVoltage());
+        stored.setCurrent(reading.getCurrent());
+        stored.setPower(reading.getPower());
+        stored.setTemperature(reading.getTemperature());
+
+        storedReadingRepository.save(stored);
+        rollupService.record(reading);
+    }
+
+    //Lecturas de un dispositivo en un rango de tiempo, ordenadas por timestamp.
+    //La parte del rango anterior al historial local (lecturas previas al almacen) se consulta en
+    //Ubidots; si Ubidots no responde se lanza UbidotsUnavailableException en vez de truncar el rango.
+    public List<Reading> findRange(String deviceLabel, LocalDateTime from, LocalDateTime to) {
+        return findRangeAsync(deviceLabel, from, to)
+                .blockOptional()
+                .orElse(Collections.emptyList());
+    }
+
+    public Mono<List<Reading>> findRangeAsync(String deviceLabel, LocalDateTime from, LocalDateTime to) {
+        return Mono.fromCallable(() -> localStart(deviceLabel))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(localStart -> {
+                    if (localStart.isEmpty() || localStart.get().isAfter(to)) {
+                        return ubidotsService.getReadingAsync(deviceLabel, from, to);
+                    }
+                    Mono<List<Reading>> local = Mono.fromCallable(() -> findLocal(deviceLabel, max(from, localStart.get()), to))
+                            .subscribeOn(Schedulers.boundedElastic());
+                    if (!from.isBefore(localStart.get())) {
+                        return local;
+                    }
+                    return Mono.zip(ubidotsService.getReadingAsync(deviceLabel, from, localStart.get().minusNanos(1)), local)
+                            .map(parts -> concat(parts.getT1(), parts.getT2()));
+                });
+    }
+
+    //Recorre el rango por ventanas de tiempo con memoria constante.
+    //Se usa en exportaciones y agregaciones sobre rangos largos. Igual que findRange, lo anterior
+    //al historial local se lee de Ubidots y lo demas del almacen.
+    public Flux<Reading> streamRange(String deviceLabel, LocalDateTime from, LocalDateTime to) {
+        return Mono.fromCallable(() -> localStart(deviceLabel))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(localStart -> {
+                    if (localStart.isEmpty() || localStart.get().isAfter(to)) {
+                        return ubidotsService.streamReadings(deviceLabel, from, to);
+                    }
+                    if (!from.isBefore(localStart.get())) {
+                        return streamLocal(deviceLabel, from, to);
+                    }
+                    return Flux.concat(
+                            ubidotsService.streamReadings(deviceLabel, from, localStart.get().minusNanos(1)),
+                            streamLocal(deviceLabel, localStart.get(), to));
+                });
+    }
+
+    private Optional<LocalDateTime> localStart(String deviceLabel) {
+        return storedReadingRepository.findFirstByDeviceIdOrderByRecordedAtAsc(deviceLabel)
+                .map(StoredReading::getRecordedAt);
+    }
+
+    private static List<Reading> concat(List<Reading> first, List<Reading> second) {
+        List<Reading> readings = new ArrayList<>(first.size() + second.size());
+        readings.addAll(first);
+        readings.addAll(second);
+        return readings;
+    }
+
+    private Flux<Reading> streamLocal(String deviceLabel, LocalDateTime from, LocalDateTime to) {
+        Duration window = STREAM_WINDOW;
+        // El limite superior del rango es inclusivo
+        LocalDateTime end = to.plusNanos(1);
+
+        return Flux.<LocalDateTime, LocalDateTime>generate(() -> from, (windowStart, sink) -> {
+                    if (windowStart.isBefore(end)) {
+                        sink.next(windowStart);
+                    } else {
+                        sink.complete();
+                    }
+                    return windowStart.plus(window);
+                })
+                .concatMap(windowStart -> Mono.fromCallable(() -> storedReadingRepository.findWindow(
+                                        deviceLabel, windowStart, min(windowStart.plus(window), end)))
+                                .subscribeOn(Schedulers.boundedElastic()), 0)
+                .concatMapIterable(rows -> rows)
+                .map(this::toReading);
+    }
+
+    private static LocalDateTime min(LocalDateTime a, LocalDateTime b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static LocalDateTime max(LocalDateTime a, LocalDateTime b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private List<Reading> findLocal(String deviceLabel, LocalDateTime from, LocalDateTime to) {
+        return storedReadingRepository
+                .findByDeviceIdAndRecordedAtBetweenOrderByRecordedAtAsc(deviceLabel, from, to)
+                .stream()
+                .map(this::toReading)
+                .toList();
+    }
+
+    private Reading toReading(StoredReading stored) {
+        return new Reading(
+                stored.getDeviceId(),
+                stored.getVoltage(),
+                stored.getCurrent(),
+                stored.getPower(),
+                stored.getTemperature(),
+                stored.getRecordedAt()
+        );
+    }
+}
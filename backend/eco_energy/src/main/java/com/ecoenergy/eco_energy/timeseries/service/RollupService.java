@@ -0,0 +1,199 @@
+package com.ecoenergy.eco_energy.timeseries.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.timeseries.dto.RollupsSavedEvent;
+import com.ecoenergy.eco_energy.timeseries.model.ReadingRollup;
+import com.ecoenergy.eco_energy.timeseries.model.ReadingRollup.Granularity;
+import com.ecoenergy.eco_energy.timeseries.repository.ReadingRollupRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Agregados incrementales por minuto, hora y dia. Cada lectura actualiza en memoria los intervalos
+//abiertos de su dispositivo; estos se guardan periodicamente y se liberan cuando el intervalo cierra.
+//Un dia cerrado ya no cambia, por lo que un reporte historico es una sola consulta indexada.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RollupService {
+    //Margen para lecturas que llegan un poco despues de cerrar el intervalo
+    private static final Duration CLOSE_GRACE = Duration.ofMinutes(2);
+
+    private final ReadingRollupRepository readingRollupRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Map<RollupKey, ReadingRollup> openBuckets = new ConcurrentHashMap<>();
+    private final Set<RollupKey> dirtyBuckets = ConcurrentHashMap.newKeySet();
+    //Una vez que un dispositivo tiene agregados su primer dia cubierto ya no cambia
+    private final Map<String, LocalDate> firstCoveredDays = new ConcurrentHashMap<>();
+
+    private record RollupKey(String deviceId, Granularity granularity, LocalDateTime bucketStart) {
+    }
+
+    public void record(Reading reading) {
+        for (Granularity granularity : Granularity.values()) {
+            RollupKey key = new RollupKey(reading.getDeviceId(), granularity,
+                    bucketStart(granularity, reading.getTimestamp()));
+            // La suma y la marca se hacen dentro de computeIfPresent para que la liberacion
+            // del intervalo en flush no pueda quitarlo entre ambas
+            while (openBuckets.computeIfPresent(key, (k, rollup) -> {
+                synchronized (rollup) {
+                    rollup.add(reading);
+                }
+                dirtyBuckets.add(k);
+                return rollup;
+            }) == null) {
+                // Si el intervalo ya tenia datos guardados (reinicio) se continua desde ellos;
+                // la consulta se hace fuera del mapa para no bloquear a otros dispositivos
+                openBuckets.putIfAbsent(key, load(key));
+            }
+        }
+    }
+
+    public Optional<ReadingRollup> findDay(String deviceLabel, LocalDate date) {
+        RollupKey key = new RollupKey(deviceLabel, Granularity.DAY, date.atStartOfDay());
+        ReadingRollup open = openBuckets.get(key);
+        if (open != null) {
+            return Optional.of(snapshot(open));
+        }
+        return readingRollupRepository.findByDeviceIdAndGranularityAndBucketStart(
+                deviceLabel, Granularity.DAY, date.atStartOfDay());
+    }
+
+    //Primer dia cuyo agregado diario incluye todas las lecturas del dispositivo. Los agregados empiezan
+    //con la primera lectura que paso por el almacen, asi que ese dia (con lecturas anteriores leidas de
+    //Ubidots) y los previos no estan cubiertos. Vacio si el dispositivo aun no tiene agregados.
+    public Optional<LocalDate> firstCoveredDay(String deviceLabel) {
+        LocalDate cached = firstCoveredDays.get(deviceLabel);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        LocalDateTime earliest = readingRollupRepository
+                .findFirstByDeviceIdAndGranularityOrderByBucketStartAsc(deviceLabel, Granularity.MINUTE)
+                .map(ReadingRollup::getBucketStart)
+                .orElse(null);
+        // Antes del primer flush los agregados solo estan en memoria
+        for (RollupKey key : openBuckets.keySet()) {
+            if (key.granularity() == Granularity.MINUTE && key.deviceId().equals(deviceLabel)
+                    && (earliest == null || key.bucketStart().isBefore(earliest))) {
+                earliest = key.bucketStart();
+            }
+        }
+        if (earliest == null) {
+            return Optional.empty();
+        }
+        LocalDate firstCovered = earliest.toLocalDate().plusDays(1);
+        firstCoveredDays.put(deviceLabel, firstCovered);
+        return Optional.of(firstCovered);
+    }
+
+    //Suma de los agregados diarios entre dos fechas (inclusive); solo es completa para dias cubiertos
+    //(ver firstCoveredDay)
+    public Optional<ReadingRollup> summarizeDays(String deviceLabel, LocalDate from, LocalDate to) {
+        Map<LocalDateTime, ReadingRollup> days = new HashMap<>();
+        readingRollupRepository.findByDeviceIdAndGranularityAndBucketStartBetween(
+                        deviceLabel, Granularity.DAY, from.atStartOfDay(), to.atStartOfDay())
+                .forEach(day -> days.put(day.getBucketStart(), day));
+
+        // Los dias abiertos en memoria son mas recientes que lo guardado
+        openBuckets.forEach((key, rollup) -> {
+            LocalDate day = key.bucketStart().toLocalDate();
+            if (key.granularity() == Granularity.DAY && key.deviceId().equals(deviceLabel)
+                    && !day.isBefore(from) && !day.isAfter(to)) {
+                days.put(key.bucketStart(), snapshot(rollup));
+            }
+        });
+
+        ReadingRollup total = new ReadingRollup(deviceLabel, Granularity.DAY, from.atStartOfDay());
+        days.values().forEach(total::merge);
+        return total.getCount() > 0 ? Optional.of(total) : Optional.empty();
+    }
+
+    @Scheduled(fixedDelay = 30_000)
+    public synchronized void flush() {
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, Set<LocalDate>> savedDays = new HashMap<>();
+        try {
+            for (RollupKey key : new ArrayList<>(dirtyBuckets)) {
+                ReadingRollup rollup = openBuckets.get(key);
+                if (rollup == null) continue;
+                synchronized (rollup) {
+                    dirtyBuckets.remove(key);
+                    try {
+                        ReadingRollup saved = readingRollupRepository.save(rollup);
+                        rollup.setId(saved.getId());
+                        if (key.granularity() == Granularity.DAY) {
+                            savedDays.computeIfAbsent(key.deviceId(), id -> new HashSet<>())
+                                    .add(key.bucketStart().toLocalDate());
+                        }
+                    } catch (RuntimeException e) {
+                        // Sigue pendiente para el proximo flush y no se libera de memoria
+                        dirtyBuckets.add(key);
+                        throw e;
+                    }
+                }
+            }
+
+            // Solo se liberan intervalos cerrados y guardados; la comprobacion ocurre dentro de
+            // computeIfPresent, igual que la suma en record
+            for (RollupKey key : openBuckets.keySet()) {
+                if (bucketEnd(key.granularity(), key.bucketStart()).plus(CLOSE_GRACE).isBefore(now)) {
+                    openBuckets.computeIfPresent(key, (k, rollup) -> dirtyBuckets.contains(k) ? rollup : null);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error flushing reading rollups", e);
+        } finally {
+            // Los reportes en cache de esos dias dejan de estar al dia
+            if (!savedDays.isEmpty()) {
+                eventPublisher.publishEvent(new RollupsSavedEvent(savedDays));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        flush();
+        if (!dirtyBuckets.isEmpty()) {
+            log.warn("{} reading rollups could not be saved on shutdown", dirtyBuckets.size());
+        }
+    }
+
+    private ReadingRollup load(RollupKey key) {
+        return readingRollupRepository
+                .findByDeviceIdAndGranularityAndBucketStart(key.deviceId(), key.granularity(), key.bucketStart())
+                .orElseGet(() -> new ReadingRollup(key.deviceId(), key.granularity(), key.bucketStart()));
+    }
+
+    private ReadingRollup snapshot(ReadingRollup rollup) {
+        synchronized (rollup) {
+            return new ReadingRollup(rollup.getDeviceId(), rollup.getGranularity(), rollup.getBucketStart())
+                    .merge(rollup);
+        }
+    }
+
+    private static LocalDateTime bucketStart(Granularity granularity, LocalDateTime timestamp) {
+        return switch (granularity) {
+            case MINUTE -> timestamp.truncatedTo(ChronoUnit.MINUTES);
+            case HOUR -> timestamp.truncatedTo(ChronoUnit.HOURS);
+            case DAY -> timestamp.toLocalDate().atStartOfDay();
+        };
+    }
+
+    private static LocalDateTime bucketEnd(Granularity granularity, LocalDateTime bucketStart) {
+        return switch (granularity) {
+            case MINUTE -> bucketStart.plusMinutes(1);
+            case HOUR -> bucketStart.plusHours(1);
+            case DAY -> bucketStart.plusDays(1);
+        };
+    }
+}
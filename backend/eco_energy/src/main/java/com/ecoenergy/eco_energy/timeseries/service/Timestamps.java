@@ -0,0 +1,37 @@
+package com.ecoenergy.eco_energy.timeseries.service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+//Convencion de tiempo de las series: las lecturas llevan un LocalDateTime en la zona del sistema
+//(LocalDateTime.now()). Toda conversion a o desde epoch (Ubidots, outbox, exportaciones, WebSocket)
+//usa esa misma zona, asi lo que se escribe y lo que se lee coinciden y el epoch es un instante real.
+public final class Timestamps {
+    private Timestamps() {
+    }
+
+    public static long toEpochMillis(LocalDateTime timestamp) {
+        return timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    //Reloj en la misma convencion que las lecturas (LocalDateTime.now() convertido), para comparar
+    //contra sus timestamps; difiere de System.currentTimeMillis() en la hora repetida del cambio de horario
+    public static long nowEpochMillis() {
+        return toEpochMillis(LocalDateTime.now());
+    }
+
+    //Inicio del intervalo de largo length (ms) que contiene a epochMillis, con los cortes alineados a
+    //la hora local: ventanas de una hora empiezan en la hora en punto local aunque la zona sea +05:30
+    public static long floorLocal(long epochMillis, long length) {
+        LocalDateTime local = fromEpochMillis(epochMillis);
+        long localMillis = local.toInstant(ZoneOffset.UTC).toEpochMilli();
+        return toEpochMillis(local.minus(Math.floorMod(localMillis, length), ChronoUnit.MILLIS));
+    }
+
+    public static LocalDateTime fromEpochMillis(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+}
@@ -1,27 +1,50 @@
 package com.ecoenergy.eco_energy.ubidots.client;
 
+import com.ecoenergy.eco_energy.config.UbidotsConfig;
 import com.ecoenergy.eco_energy.ubidots.dto.UbidotsDTO;
+import com.ecoenergy.eco_energy.ubidots.dto.UbidotsValue;
+import com.ecoenergy.eco_energy.ubidots.dto.UbidotsValuesPage;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
+import java.net.URI;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeoutException;
 
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class UbidotsClient {
+    private static final int PAGE_SIZE = 1000;
+
     private final WebClient ubidotsWebClient;
+    private final CircuitBreaker ubidotsCircuitBreaker;
+    private final UbidotsConfig ubidotsConfig;
+
+    //Falso mientras el circuit breaker esta abierto: las llamadas se rechazarian sin llegar a Ubidots
+    public boolean isAvailable() {
+        return ubidotsCircuitBreaker.getState() != CircuitBreaker.State.OPEN
+                && ubidotsCircuitBreaker.getState() != CircuitBreaker.State.FORCED_OPEN;
+    }
 
     public Mono<String> sendDataDevice(String deviceLabel, Map<String, Object> data){
         return  ubidotsWebClient
                 .post()
-                .uri("/devices/{deviceLabek}", deviceLabel)
+                .uri("/devices/{deviceLabel}", deviceLabel)
+                .bodyValue(data)
                 .retrieve()
                 .bodyToMono(String.class)
+                .transform(this::resilient)
                 .doOnSuccess(response -> log.info("Data sent to Ubidots: {}", deviceLabel))
                 .doOnError(error -> log.error("Error sending to Ubidots: {}", error.getMessage()));
     }
@@ -30,20 +53,68 @@ public class UbidotsClient {
                 .get()
                 .uri("/devices/{deviceLabel}", deviceLabel)
                 .retrieve()
-                .bodyToMono(UbidotsDTO.class);
+                .bodyToMono(UbidotsDTO.class)
+                .transform(this::resilient);
     }
 
-    public Mono<List<Map<String, Object>>> getDeviceReadings(String deviceLabel, String variableLabel,
+    public Mono<List<UbidotsValue>> getDeviceReadings(String deviceLabel, String variableLabel,
     long startTime, long endTime) {
-        return ubidotsWebClient
+        return getDeviceReadingPages(deviceLabel, variableLabel, startTime, endTime)
+                .concatMapIterable(UbidotsValuesPage::getResults)
+                .collectList();
+    }
+
+    //Recorre todas las paginas del rango siguiendo el cursor "next" de Ubidots.
+    //Cada pagina se pide solo cuando el consumidor la demanda.
+    public Flux<UbidotsValuesPage> getDeviceReadingPages(String deviceLabel, String variableLabel,
+                                                         long startTime, long endTime) {
+        Mono<UbidotsValuesPage> firstPage = ubidotsWebClient
                 .get()
                 .uri(uriBuilder -> uriBuilder
                         .path("/devices/{deviceLabel}/{variableLabel}/values")
                         .queryParam("start", startTime)
                         .queryParam("end", endTime)
+                        .queryParam("page_size", PAGE_SIZE)
                         .build(deviceLabel, variableLabel))
                 .retrieve()
-                .bodyToMono(Map.class)
-                .map(response -> (List<Map<String, Object>>) response.get("results"));
+                .bodyToMono(UbidotsValuesPage.class)
+                .transform(this::resilient);
+
+        return firstPage
+                .expand(page -> page.getNext() == null
+                        ? Mono.empty()
+                        : ubidotsWebClient.get()
+                                .uri(URI.create(page.getNext()))
+                                .retrieve()
+                                .bodyToMono(UbidotsValuesPage.class)
+                                .transform(this::resilient))
+                .filter(page -> page.getResults() != null);
+    }
+
+    //Cada intento pasa por el circuit breaker; los fallos transitorios se reintentan con espera
+    //exponencial y jitter. Con el circuito abierto (CallNotPermittedException) no se reintenta.
+    private <T> Mono<T> resilient(Mono<T> call) {
+        UbidotsConfig.Resilience resilience = ubidotsConfig.getResilience();
+        return call
+                .transformDeferred(CircuitBreakerOperator.of(ubidotsCircuitBreaker))
+                .retryWhen(Retry.backoff(resilience.getMaxRetries(), resilience.getRetryBackoff())
+                        .maxBackoff(resilience.getMaxRetryBackoff())
+                        .jitter(resilience.getRetryJitter())
+                        .filter(this::isRetryable)
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    //Rechazo definitivo de Ubidots (4xx salvo 429): repetir la misma peticion volveria a fallar
+    public static boolean isRejected(Throwable error) {
+        return error instanceof WebClientResponseException response
+                && response.getStatusCode().is4xxClientError()
+                && response.getStatusCode().value() != 429;
+    }
+
+    private boolean isRetryable(Throwable error) {
+        if (error instanceof WebClientResponseException response) {
+            return response.getStatusCode().is5xxServerError() || response.getStatusCode().value() == 429;
+        }
+        return error instanceof WebClientRequestException || error instanceof TimeoutException;
     }
 }
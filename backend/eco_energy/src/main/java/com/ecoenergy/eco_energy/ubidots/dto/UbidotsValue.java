@@ -0,0 +1,16 @@
+package com.ecoenergy.eco_energy.ubidots.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Un punto de una variable en Ubidots (timestamp en milisegundos)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class UbidotsValue {
+    private long timestamp;
+    private double value;
+}
@@ -0,0 +1,14 @@
+package com.ecoenergy.eco_energy.ubidots.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class UbidotsValuesPage {
+    private List<UbidotsValue> results;
+    //URL de la siguiente pagina, null en la ultima
+    private String next;
+}
@@ -0,0 +1,438 @@
+package com.ecoenergy.eco_energy.ubidots.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.config.UbidotsConfig;
+import com.ecoenergy.eco_energy.timeseries.service.Timestamps;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+//Write-ahead log de las lecturas que van a Ubidots. Cada lectura se escribe primero aqui
+//(segmentos mapeados en memoria, un registro binario con CRC32C por lectura) y el pipeline
+//de envio lee desde el log. La posicion confirmada (checkpoint) solo avanza despues de un
+//envio exitoso, por lo que ante una caida o una falla de Ubidots las lecturas se reenvian
+//(al menos una vez). Los segmentos ya confirmados se eliminan (compactacion).
+//
+//Registro: [int largo][int crc][long timestamp][double x4][short largo etiqueta][etiqueta UTF-8]
+@Slf4j
+@Component
+public class ReadingOutbox {
+    private static final int HEADER_BYTES = 8;
+    private static final int FIXED_PAYLOAD_BYTES = Long.BYTES + 4 * Double.BYTES + Short.BYTES;
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    //Lote leido del log: posicion donde empezo y posicion que se confirma cuando se envia completo
+    public record Batch(List<Reading> readings, long startSegment, int startOffset, long segment, int offset) {
+    }
+
+    private final UbidotsConfig.Outbox config;
+    private final Path directory;
+    private final ConcurrentSkipListMap<Long, MappedByteBuffer> segments = new ConcurrentSkipListMap<>();
+    private final ByteBuffer scratch = ByteBuffer.allocate(HEADER_BYTES + FIXED_PAYLOAD_BYTES + Short.MAX_VALUE);
+    private final CRC32C writeCrc = new CRC32C();
+    private final CRC32C readCrc = new CRC32C();
+    private final AtomicLong pending = new AtomicLong();
+    private final ScheduledExecutorService syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ubidots-outbox-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Counter appended;
+    private final Counter droppedSegments;
+    private final Counter corruptRecords;
+
+    // Escritura (protegida por el monitor de la instancia)
+    private long writeSegment;
+    private MappedByteBuffer writeBuffer;
+    private int writeOffset;
+
+    // Checkpoint: todo lo anterior ya fue entregado a Ubidots
+    private long committedSegment;
+    private int committedOffset;
+
+    public ReadingOutbox(UbidotsConfig ubidotsConfig, MeterRegistry meterRegistry) {
+        this.config = ubidotsConfig.getOutbox();
+        this.directory = config.getDirectory();
+
+        Gauge.builder("ubidots.outbox.pending", pending, AtomicLong::get)
+                .description("Readings written to the outbox and not yet delivered to Ubidots")
+                .register(meterRegistry);
+        Gauge.builder("ubidots.outbox.segments", segments, Map::size)
+                .register(meterRegistry);
+        this.appended = Counter.builder("ubidots.outbox.appended")
+                .register(meterRegistry);
+        this.droppedSegments = Counter.builder("ubidots.outbox.dropped.segments")
+                .description("Undelivered segments discarded because the outbox was full")
+                .register(meterRegistry);
+        this.corruptRecords = Counter.builder("ubidots.outbox.corrupt")
+                .description("Records skipped because their checksum did not match")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+        recover();
+        long interval = config.getSyncInterval().toMillis();
+        syncer.scheduleWithFixedDelay(this::sync, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Reading outbox opened at {} with {} pending readings in {} segments",
+                directory, pending.get(), segments.size());
+    }
+
+    @PreDestroy
+    void close() throws InterruptedException {
+        syncer.shutdown();
+        syncer.awaitTermination(5, TimeUnit.SECONDS);
+        sync();
+    }
+
+    public synchronized void append(Reading reading) {
+        byte[] label = reading.getDeviceId().getBytes(StandardCharsets.UTF_8);
+        int payloadLength = FIXED_PAYLOAD_BYTES + label.length;
+        int recordLength = HEADER_BYTES + payloadLength;
+
+        scratch.clear();
+        scratch.position(HEADER_BYTES);
+        scratch.putLong(toEpochMillis(reading.getTimestamp()))
+                .putDouble(reading.getVoltage())
+                .putDouble(reading.getCurrent())
+                .putDouble(reading.getPower())
+                .putDouble(reading.getTemperature())
+                .putShort((short) label.length)
+                .put(label);
+        writeCrc.reset();
+        writeCrc.update(scratch.array(), HEADER_BYTES, payloadLength);
+        scratch.putInt(0, payloadLength).putInt(4, (int) writeCrc.getValue());
+
+        if (writeOffset + recordLength > writeBuffer.capacity()) {
+            roll();
+        }
+        writeBuffer.put(writeOffset, scratch.array(), 0, recordLength);
+        writeOffset += recordLength;
+        pending.incrementAndGet();
+        appended.increment();
+    }
+
+    //Lee hasta maxReadings lecturas desde el checkpoint sin avanzarlo
+    public Batch read(int maxReadings) {
+        long endSegment;
+        int endOffset;
+        long segment;
+        int offset;
+        synchronized (this) {
+            endSegment = writeSegment;
+            endOffset = writeOffset;
+            segment = committedSegment;
+            offset = committedOffset;
+        }
+        long startSegment = segment;
+        int startOffset = offset;
+
+        List<Reading> readings = new ArrayList<>(Math.min(maxReadings, 1024));
+        while (readings.size() < maxReadings) {
+            if (segment == endSegment && offset >= endOffset) {
+                break;
+            }
+            MappedByteBuffer buffer = segments.get(segment);
+            int length = buffer == null ? -1 : recordLength(buffer, offset, true);
+            if (length <= 0) {
+                // Fin del segmento (o segmento eliminado): se continua en el siguiente
+                Long next = segments.higherKey(segment);
+                if (next == null || segment == endSegment) {
+                    break;
+                }
+                segment = next;
+                offset = 0;
+                continue;
+            }
+            readings.add(decode(buffer, offset));
+            offset += length;
+        }
+        return new Batch(readings, startSegment, startOffset, segment, offset);
+    }
+
+    //Confirma un lote entregado y elimina los segmentos que quedaron atras
+    public void commit(Batch batch) {
+        synchronized (this) {
+            if (batch.segment() < committedSegment
+                    || (batch.segment() == committedSegment && batch.offset() <= committedOffset)) {
+                return;
+            }
+            // Si mientras tanto roll() descarto el inicio del lote, esas lecturas ya se descontaron
+            // de pending: solo se descuentan las que quedan entre el checkpoint y el final del lote
+            long delivered = batch.startSegment() == committedSegment && batch.startOffset() == committedOffset
+                    ? batch.readings().size()
+                    : countBetween(committedSegment, committedOffset, batch.segment(), batch.offset());
+            committedSegment = batch.segment();
+            committedOffset = batch.offset();
+            pending.addAndGet(-delivered);
+            writeCheckpoint();
+        }
+        compact();
+    }
+
+    public long pending() {
+        return pending.get();
+    }
+
+    // Helper methods
+    private void roll() {
+        MappedByteBuffer previous = writeBuffer;
+        try {
+            if (previous != null) {
+                previous.force();
+            }
+            writeSegment++;
+            writeBuffer = createSegment(writeSegment);
+            writeOffset = 0;
+            segments.put(writeSegment, writeBuffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create outbox segment " + writeSegment, e);
+        }
+
+        // Limite de espacio: se descarta el segmento mas antiguo aunque no se haya enviado
+        while (segments.size() > config.getMaxSegments()) {
+            long oldest = segments.firstKey();
+            int lost = countRecords(segments.get(oldest), oldest == committedSegment ? committedOffset : 0);
+            deleteSegment(oldest);
+            if (committedSegment <= oldest) {
+                committedSegment = segments.firstKey();
+                committedOffset = 0;
+                writeCheckpoint();
+            }
+            pending.addAndGet(-lost);
+            droppedSegments.increment();
+            log.warn("Outbox full: discarded segment {} with {} undelivered readings", oldest, lost);
+        }
+    }
+
+    private void compact() {
+        for (Long segment : segments.headMap(committedSegmentSnapshot()).keySet()) {
+            deleteSegment(segment);
+        }
+    }
+
+    private synchronized long committedSegmentSnapshot() {
+        return committedSegment;
+    }
+
+    private void sync() {
+        MappedByteBuffer buffer;
+        synchronized (this) {
+            buffer = writeBuffer;
+        }
+        try {
+            if (buffer != null) {
+                buffer.force();
+            }
+        } catch (Exception e) {
+            log.error("Error syncing reading outbox", e);
+        }
+    }
+
+    //Reconstruye el estado a partir de los segmentos y el checkpoint en disco
+    private void recover() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).toList()) {
+                String name = file.getFileName().toString();
+                long id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    segments.put(id, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+                }
+            }
+        }
+        readCheckpoint();
+
+        if (segments.isEmpty()) {
+            // Segmento nuevo y vacio: el offset del checkpoint no aplica a el
+            writeSegment = Math.max(committedSegment, 1);
+            writeBuffer = createSegment(writeSegment);
+            segments.put(writeSegment, writeBuffer);
+            writeOffset = 0;
+            committedSegment = writeSegment;
+            committedOffset = 0;
+            writeCheckpoint();
+        } else {
+            // La posicion de escritura es el final del ultimo registro valido del ultimo segmento
+            writeSegment = segments.lastKey();
+            writeBuffer = segments.get(writeSegment);
+            writeOffset = endOfRecords(writeBuffer);
+        }
+
+        if (!segments.containsKey(committedSegment)) {
+            committedSegment = segments.firstKey();
+            committedOffset = 0;
+        } else if (committedSegment == writeSegment && committedOffset > writeOffset) {
+            // El final del segmento se perdio en la caida: no hay registros validos despues de writeOffset
+            committedOffset = writeOffset;
+        }
+        compact();
+
+        long count = 0;
+        for (Map.Entry<Long, MappedByteBuffer> entry : segments.tailMap(committedSegment).entrySet()) {
+            count += countRecords(entry.getValue(), entry.getKey() == committedSegment ? committedOffset : 0);
+        }
+        pending.set(count);
+    }
+
+    private MappedByteBuffer createSegment(long id) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(id),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, config.getSegmentBytes());
+        }
+    }
+
+    private void deleteSegment(long id) {
+        segments.remove(id);
+        try {
+            Files.deleteIfExists(segmentPath(id));
+        } catch (IOException e) {
+            log.warn("Could not delete outbox segment {}: {}", id, e.getMessage());
+        }
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX));
+    }
+
+    //Largo total del registro en offset, o 0 si no hay un registro valido (fin de datos)
+    private int recordLength(ByteBuffer buffer, int offset, boolean countCorrupt) {
+        if (offset + HEADER_BYTES > buffer.capacity()) {
+            return 0;
+        }
+        int payloadLength = buffer.getInt(offset);
+        if (payloadLength < FIXED_PAYLOAD_BYTES || offset + HEADER_BYTES + payloadLength > buffer.capacity()) {
+            return 0;
+        }
+        CRC32C crc = countCorrupt ? readCrc : new CRC32C();
+        crc.reset();
+        crc.update(buffer.slice(offset + HEADER_BYTES, payloadLength));
+        if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+            // Escritura incompleta antes de una caida
+            if (countCorrupt) {
+                corruptRecords.increment();
+            }
+            return 0;
+        }
+        return HEADER_BYTES + payloadLength;
+    }
+
+    private int endOfRecords(ByteBuffer buffer) {
+        int offset = 0;
+        int length;
+        while ((length = recordLength(buffer, offset, false)) > 0) {
+            offset += length;
+        }
+        return offset;
+    }
+
+    private int countRecords(ByteBuffer buffer, int fromOffset) {
+        return countRecords(buffer, fromOffset, Integer.MAX_VALUE);
+    }
+
+    private int countRecords(ByteBuffer buffer, int fromOffset, int toOffset) {
+        int count = 0;
+        int offset = fromOffset;
+        int length;
+        while (offset < toOffset && (length = recordLength(buffer, offset, false)) > 0) {
+            offset += length;
+            count++;
+        }
+        return count;
+    }
+
+    private long countBetween(long fromSegment, int fromOffset, long toSegment, int toOffset) {
+        long count = 0;
+        for (Map.Entry<Long, MappedByteBuffer> entry : segments.subMap(fromSegment, true, toSegment, true).entrySet()) {
+            count += countRecords(entry.getValue(),
+                    entry.getKey() == fromSegment ? fromOffset : 0,
+                    entry.getKey() == toSegment ? toOffset : Integer.MAX_VALUE);
+        }
+        return count;
+    }
+
+    private Reading decode(ByteBuffer buffer, int offset) {
+        int position = offset + HEADER_BYTES;
+        long timestamp = buffer.getLong(position);
+        double voltage = buffer.getDouble(position + 8);
+        double current = buffer.getDouble(position + 16);
+        double power = buffer.getDouble(position + 24);
+        double temperature = buffer.getDouble(position + 32);
+        short labelLength = buffer.getShort(position + 40);
+        byte[] label = new byte[labelLength];
+        buffer.get(position + 42, label);
+
+        return new Reading(new String(label, StandardCharsets.UTF_8), voltage, current, power, temperature,
+                Timestamps.fromEpochMillis(timestamp));
+    }
+
+    private long toEpochMillis(LocalDateTime timestamp) {
+        return Timestamps.toEpochMillis(timestamp);
+    }
+
+    private void readCheckpoint() throws IOException {
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(checkpoint)) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+        if (buffer.remaining() < 16) {
+            return;
+        }
+        long segment = buffer.getLong();
+        int offset = buffer.getInt();
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 0, 12);
+        if ((int) crc.getValue() == buffer.getInt()) {
+            committedSegment = segment;
+            committedOffset = offset;
+        } else {
+            log.warn("Ignoring corrupt outbox checkpoint; readings will be replayed from the oldest segment");
+        }
+    }
+
+    //Se escribe en un archivo temporal y se reemplaza de forma atomica
+    private void writeCheckpoint() {
+        ByteBuffer buffer = ByteBuffer.allocate(16).putLong(committedSegment).putInt(committedOffset);
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 0, 12);
+        buffer.putInt((int) crc.getValue());
+        try {
+            Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+            Files.write(temp, buffer.array());
+            Files.move(temp, directory.resolve(CHECKPOINT_FILE),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Sin checkpoint las lecturas ya enviadas se reenviarian tras un reinicio (duplicados, no perdidas)
+            log.error("Could not write outbox checkpoint", e);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.ecoenergy.eco_energy.ubidots.service;
+
+import com.ecoenergy.eco_energy.config.UbidotsConfig;
+import com.ecoenergy.eco_energy.ubidots.client.UbidotsClient;
+import com.ecoenergy.eco_energy.ubidots.dto.UbidotsValue;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+//Cache y union de consultas historicas alrededor de UbidotsClient.getDeviceReadings.
+//El rango se divide en bloques alineados: los bloques cerrados (ya no reciben datos) se guardan
+//y se reutilizan entre consultas; la cola abierta se consulta siempre, pero las consultas
+//identicas simultaneas comparten una sola llamada (single-flight). El timeout de lectura se aplica a
+//cada bloque, asi un rango largo no falla solo por tener mas bloques que consultar.
+@Slf4j
+@Component
+public class UbidotsHistoryCache {
+    private record Key(String deviceLabel, String variableLabel, long start, long end) {
+    }
+
+    private final UbidotsClient ubidotsClient;
+    private final UbidotsConfig.HistoryCache config;
+    private final Duration readTimeout;
+    private final AsyncCache<Key, List<UbidotsValue>> closedBlocks;
+    private final AsyncCache<Key, List<UbidotsValue>> openTails;
+
+    public UbidotsHistoryCache(UbidotsClient ubidotsClient, UbidotsConfig ubidotsConfig, MeterRegistry meterRegistry) {
+        this.ubidotsClient = ubidotsClient;
+        this.config = ubidotsConfig.getHistoryCache();
+        this.readTimeout = ubidotsConfig.getReadTimeout();
+        this.closedBlocks = Caffeine.newBuilder()
+                .maximumWeight(config.getMaximumValues())
+                .<Key, List<UbidotsValue>>weigher((key, values) -> values.size() + 1)
+                .recordStats()
+                .buildAsync();
+        this.openTails = Caffeine.newBuilder()
+                .expireAfterWrite(config.getTailTtl())
+                .recordStats()
+                .buildAsync();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, closedBlocks.synchronous(), "ubidots.history.closed");
+        CaffeineCacheMetrics.monitor(meterRegistry, openTails.synchronous(), "ubidots.history.tail");
+    }
+
+    //Mismo contrato que UbidotsClient.getDeviceReadings: puntos con start <= timestamp <= end
+    public Mono<List<UbidotsValue>> getDeviceReadings(String deviceLabel, String variableLabel,
+                                                      long startTime, long endTime) {
+        long block = config.getBlock().toMillis();
+        // Los bloques que terminan antes de este instante ya no cambian
+        long closedUntil = Math.floorDiv(System.currentTimeMillis() - config.getSettleDelay().toMillis(), block) * block;
+
+        List<Mono<List<UbidotsValue>>> segments = new ArrayList<>();
+        long cursor = Math.floorDiv(startTime, block) * block;
+        while (cursor <= endTime && cursor + block <= closedUntil) {
+            segments.add(fetch(closedBlocks, new Key(deviceLabel, variableLabel, cursor, cursor + block - 1)));
+            cursor += block;
+        }
+        long tailStart = Math.max(startTime, cursor);
+        if (tailStart <= endTime) {
+            segments.add(fetch(openTails, new Key(deviceLabel, variableLabel, tailStart, endTime)));
+        }
+
+        return Flux.mergeSequential(segments, config.getConcurrency(), 1)
+                .concatMapIterable(values -> values)
+                .filter(value -> value.getTimestamp() >= startTime && value.getTimestamp() <= endTime)
+                .collectList();
+    }
+
+    //La llamada se inicia una sola vez por llave; los errores no se guardan.
+    //suppressCancel evita que un consumidor que cancela (timeout) cancele la llamada compartida.
+    //El timeout corre desde que mergeSequential se suscribe al bloque, no mientras espera turno.
+    private Mono<List<UbidotsValue>> fetch(AsyncCache<Key, List<UbidotsValue>> cache, Key key) {
+        return Mono.defer(() -> Mono.fromFuture(cache.get(key, (k, executor) ->
+                        ubidotsClient.getDeviceReadings(k.deviceLabel(), k.variableLabel(), k.start(), k.end())
+                                .map(List::copyOf)
+                                .defaultIfEmpty(List.of())
+                                .toFuture()), true))
+                .timeout(readTimeout);
+    }
+}
@@ -0,0 +1,183 @@
+package com.ecoenergy.eco_energy.ubidots.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.config.UbidotsConfig;
+import com.ecoenergy.eco_energy.timeseries.service.Timestamps;
+import com.ecoenergy.eco_energy.ubidots.client.UbidotsClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//Pipeline de envio a Ubidots: cada lectura se escribe primero en el outbox (write-ahead log en disco)
+//y se envia por lotes (un POST por dispositivo con todos sus valores) al llenarse el lote o cumplirse
+//el intervalo. El lote solo se confirma en el outbox cuando todos sus envios terminan bien o fueron
+//rechazados de forma definitiva (4xx salvo 429, p. ej. una etiqueta invalida: se cuentan y se descartan).
+//Si algun envio falla por un error transitorio o el circuito esta abierto, las lecturas quedan en disco
+//y se reenvian en el siguiente ciclo.
+@Slf4j
+@Component
+public class UbidotsIngestionPipeline {
+    private final UbidotsClient ubidotsClient;
+    private final ReadingOutbox outbox;
+    private final UbidotsConfig.Ingestion config;
+    private final Duration flushTimeout;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ubidots-ingestion");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final Counter failedRequests;
+    private final Counter rejectedReadings;
+    private final DistributionSummary flushSize;
+    private final Timer flushLatency;
+
+    public UbidotsIngestionPipeline(UbidotsClient ubidotsClient, ReadingOutbox outbox,
+                                    UbidotsConfig ubidotsConfig, MeterRegistry meterRegistry) {
+        this.ubidotsClient = ubidotsClient;
+        this.outbox = outbox;
+        this.config = ubidotsConfig.getIngestion();
+        this.flushTimeout = flushTimeout(ubidotsConfig);
+
+        this.failedRequests = Counter.builder("ubidots.ingestion.failed.requests")
+                .register(meterRegistry);
+        this.rejectedReadings = Counter.builder("ubidots.ingestion.rejected.readings")
+                .description("Readings discarded because Ubidots rejected their device request with a 4xx")
+                .register(meterRegistry);
+        this.flushSize = DistributionSummary.builder("ubidots.ingestion.flush.size")
+                .baseUnit("readings")
+                .register(meterRegistry);
+        this.flushLatency = Timer.builder("ubidots.ingestion.flush.latency")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        long interval = config.getFlushInterval().toMillis();
+        // El primer ciclo tambien reenvia lo que haya quedado en el outbox antes de un reinicio
+        flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(flushTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        // Intentamos enviar lo pendiente; lo que no se envie sigue en el outbox para el proximo arranque
+        flush();
+    }
+
+    public void submit(Reading reading) {
+        outbox.append(reading);
+        if (outbox.pending() >= config.getBatchSize() && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushRequested.set(false);
+                flush();
+            });
+        }
+    }
+
+    //Solo se ejecuta en el hilo del flusher, por lo que hay un unico lote en vuelo.
+    void flush() {
+        try {
+            while (ubidotsClient.isAvailable()) {
+                ReadingOutbox.Batch batch = outbox.read(config.getBatchSize());
+                if (batch.readings().isEmpty() || !sendBatch(batch.readings())) {
+                    return;
+                }
+                outbox.commit(batch);
+                if (batch.readings().size() < config.getBatchSize()) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error flushing readings to Ubidots", e);
+        }
+    }
+
+    //Un lote que espera menos que una peticion con sus reintentos cancelaria envios que aun pueden terminar bien
+    static Duration flushTimeout(UbidotsConfig ubidotsConfig) {
+        Duration configured = ubidotsConfig.getIngestion().getFlushTimeout();
+        Duration worstCase = ubidotsConfig.worstCaseRequestTime();
+        if (configured.compareTo(worstCase) < 0) {
+            log.warn("Ubidots flush timeout {} is shorter than the worst-case request with retries ({}); using {}",
+                    configured, worstCase, worstCase);
+            return worstCase;
+        }
+        return configured;
+    }
+
+    //true si todos los dispositivos del lote se enviaron o fueron rechazados de forma definitiva. Si se
+    //agota el tiempo, los envios en curso se cancelan y el lote cuenta como no enviado: sigue en el
+    //outbox y se reenvia completo
+    private boolean sendBatch(List<Reading> batch) {
+        Map<String, Map<String, Object>> payloads = coalesceByDevice(batch);
+        Map<String, Integer> readingsByDevice = new HashMap<>();
+        batch.forEach(reading -> readingsByDevice.merge(reading.getDeviceId(), 1, Integer::sum));
+        AtomicBoolean delivered = new AtomicBoolean(true);
+        Timer.Sample sample = Timer.start();
+
+        Flux.fromIterable(payloads.entrySet())
+                .flatMap(entry -> ubidotsClient.sendDataDevice(entry.getKey(), entry.getValue())
+                        .onErrorResume(error -> {
+                            failedRequests.increment();
+                            if (UbidotsClient.isRejected(error)) {
+                                // Reenviarlo no cambiaria la respuesta y detendria el outbox para todos
+                                int readings = readingsByDevice.get(entry.getKey());
+                                rejectedReadings.increment(readings);
+                                log.warn("Ubidots rejected {} readings for device {}; discarding them: {}",
+                                        readings, entry.getKey(), error.getMessage());
+                            } else {
+                                delivered.set(false);
+                            }
+                            return Mono.empty();
+                        }), config.getMaxConcurrentRequests())
+                .then()
+                .timeout(flushTimeout)
+                .onErrorResume(TimeoutException.class, error -> {
+                    log.warn("Ubidots batch of {} readings did not finish within {}; it will be retried",
+                            batch.size(), flushTimeout);
+                    delivered.set(false);
+                    return Mono.empty();
+                })
+                .block();
+
+        sample.stop(flushLatency);
+        flushSize.record(batch.size());
+        return delivered.get();
+    }
+
+    //Agrupa el lote por dispositivo con el formato de multiples valores de Ubidots:
+    //{"voltage": [{"value": 220.1, "timestamp": 1700000000000}, ...], "current": [...], ...}
+    private Map<String, Map<String, Object>> coalesceByDevice(List<Reading> batch) {
+        Map<String, Map<String, Object>> payloads = new LinkedHashMap<>();
+        for (Reading reading : batch) {
+            Map<String, Object> payload = payloads.computeIfAbsent(reading.getDeviceId(), k -> new HashMap<>());
+            long timestamp = Timestamps.toEpochMillis(reading.getTimestamp());
+
+            addValue(payload, "voltage", reading.getVoltage(), timestamp);
+            addValue(payload, "current", reading.getCurrent(), timestamp);
+            addValue(payload, "power", reading.getPower(), timestamp);
+            addValue(payload, "temperature", reading.getTemperature(), timestamp);
+        }
+        return payloads;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addValue(Map<String, Object> payload, String variable, double value, long timestamp) {
+        ((List<Map<String, Object>>) payload.computeIfAbsent(variable, k -> new ArrayList<>()))
+                .add(Map.of("value", value, "timestamp", timestamp));
+    }
+}
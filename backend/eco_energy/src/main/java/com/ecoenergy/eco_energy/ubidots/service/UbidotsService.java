@@ -1,17 +1,18 @@
 package com.ecoenergy.eco_energy.ubidots.service;
 
 import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.config.UbidotsConfig;
+import com.ecoenergy.eco_energy.timeseries.service.Timestamps;
 import com.ecoenergy.eco_energy.ubidots.client.UbidotsClient;
 import com.ecoenergy.eco_energy.ubidots.dto.UbidotsDTO;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.util.function.Tuple4;
 
-import java.time.Instant;
 import java.time.LocalDateTime;
-import java.time.ZoneOffset;
 import java.util.*;
 
 @Slf4j
@@ -19,24 +20,19 @@ import java.util.*;
 @RequiredArgsConstructor
 public class UbidotsService {
     private final UbidotsClient ubidotsClient;
+    private final UbidotsConfig ubidotsConfig;
+    private final UbidotsIngestionPipeline ingestionPipeline;
+    private final UbidotsHistoryCache historyCache;
+    private final UbidotsSpillQueue spillQueue;
 
     public void sendDataReading(String deviceId, double voltage, double current,
                                 double power, double temperature) {
-        //Este mapeo convierte los atributos en objetos clave-valor
-        //los valores pueden tomar el atributo que el contexto los requiera
-        Map<String, Object> payload = Map.of(
-                "voltage", voltage,
-                "current", current,
-                "power", power,
-                "temperature", temperature,
-                "timestamp", System.currentTimeMillis()
-        );
-        //Procedemos a enviar el Id del Device y la carga util con el siguiente metodo
-        ubidotsClient.sendDataDevice(deviceId, payload)
-                .subscribe(
-                        response -> log.info("Retrieved device {}", deviceId),
-                        error -> log.error("Failed to seend reading for devive{}", deviceId)
-                );
+        sendReading(new Reading(deviceId, voltage, current, power, temperature, LocalDateTime.now()));
+    }
+
+    //Las lecturas no se envian una por una: se encolan y el pipeline las envia por lotes
+    public void sendReading(Reading reading) {
+        ingestionPipeline.submit(reading);
     }
 
     //Con este metodo podemos obtener informacion de un dispositivo desde Ubidots.
@@ -54,58 +50,110 @@ public class UbidotsService {
                 "detected_at", System.currentTimeMillis()
         );
 
-
-        ubidotsClient.sendDataDevice(deviceId + "_anomalies", payload)
+        String deviceLabel = deviceId + "_anomalies";
+        if (!ubidotsClient.isAvailable()) {
+            spillQueue.spill(deviceLabel, payload);
+            return;
+        }
+        ubidotsClient.sendDataDevice(deviceLabel, payload)
+                .onErrorResume(error -> spillQueue.spillAsync(deviceLabel, payload).then(Mono.empty()))
                 .subscribe();
     }
 
     //Metodo para obtener lecturas de un dispositivo en un rango de tiempo especificado
-    //Este metodo recibe el Id del dispositivo, la fecha de inicio y la fecha de fin
+    //Este metodo recibe el Id del dispositivo, la fecha de inicio y la fecha de fin.
+    //Lanza UbidotsUnavailableException si Ubidots no responde (lista vacia = sin datos)
     public List<Reading> getReading(String deviceId, LocalDateTime from, LocalDateTime to) {
-        long startTimestamp = from.toEpochSecond(ZoneOffset.UTC) * 1000;
-        long endTimestamp = to.toEpochSecond(ZoneOffset.UTC) * 1000;
-
-        List<String> variables = List.of("voltage", "current", "power", "temperature");
+        return getReadingAsync(deviceId, from, to)
+                .blockOptional()
+                .orElse(Collections.emptyList());
+    }
 
-        List<Reading> readings = new ArrayList<>();
+    //Version no bloqueante: las cuatro variables se consultan en paralelo.
+    //La potencia marca los puntos de lectura: si falla o excede el timeout la consulta completa falla con
+    //UbidotsUnavailableException, porque quien guarda el resultado (caches de reportes) no debe confundirlo
+    //con un periodo sin datos. Si falla otra variable el resultado es parcial: las lecturas la traen como
+    //NaN, que no se confunde con un cero real.
+    public Mono<List<Reading>> getReadingAsync(String deviceId, LocalDateTime from, LocalDateTime to) {
+        return fetchReadings(deviceId, toEpochMillis(from), toEpochMillis(to));
+    }
 
-        try {
-            Map<String, List<Map<String, Object>>> variableData = new HashMap<>();
+    //Lecturas de un rango arbitrariamente largo, recorrido por ventanas de tiempo consecutivas.
+    //Solo una ventana esta en memoria a la vez y la siguiente se pide cuando el consumidor la demanda.
+    public Flux<Reading> streamReadings(String deviceId, LocalDateTime from, LocalDateTime to) {
+        long startTimestamp = toEpochMillis(from);
+        long endTimestamp = toEpochMillis(to);
+        long window = ubidotsConfig.getStreamWindow().toMillis();
+
+        return Flux.<Long, Long>generate(() -> startTimestamp, (windowStart, sink) -> {
+                    if (windowStart > endTimestamp) {
+                        sink.complete();
+                    } else {
+                        sink.next(windowStart);
+                    }
+                    return windowStart + window;
+                })
+                .concatMap(windowStart -> fetchReadings(deviceId, windowStart,
+                        Math.min(windowStart + window - 1, endTimestamp)), 0)
+                .concatMapIterable(readings -> readings);
+    }
 
-            for (String variable : variables) {
-                List<Map<String, Object>> data = ubidotsClient.getDeviceReadings(deviceId, variable, startTimestamp, endTimestamp)
-                        .block();
-                variableData.put(variable, data);
-            }
+    private Mono<List<Reading>> fetchReadings(String deviceId, long startTimestamp, long endTimestamp) {
+        return Mono.zip(
+                        fetchOptionalVariable(deviceId, "voltage", startTimestamp, endTimestamp),
+                        fetchOptionalVariable(deviceId, "current", startTimestamp, endTimestamp),
+                        fetchVariable(deviceId, "power", startTimestamp, endTimestamp),
+                        fetchOptionalVariable(deviceId, "temperature", startTimestamp, endTimestamp))
+                .map(variableData -> joinReadings(deviceId, variableData));
+    }
 
-            List<Map<String, Object>> powerData = variableData.get("power");
+    private Mono<VariableSeries> fetchVariable(String deviceId, String variable,
+                                               long startTimestamp, long endTimestamp) {
+        //El timeout de lectura lo aplica la cache a cada bloque del rango
+        return historyCache.getDeviceReadings(deviceId, variable, startTimestamp, endTimestamp)
+                .defaultIfEmpty(Collections.emptyList())
+                .map(VariableSeries::of)
+                .onErrorMap(error -> {
+                    log.warn("Failed to get {} readings for device {}: {}", variable, deviceId, error.toString());
+                    return new UbidotsUnavailableException(
+                            "Failed to get " + variable + " readings for device " + deviceId, error);
+                });
+    }
 
-            for (Map<String, Object> powerReading : powerData) {
-                long timestamp = ((Number) powerReading.get("timestamp")).longValue();
-                LocalDateTime dateTime = LocalDateTime.ofEpochSecond(timestamp / 1000, 0, ZoneOffset.UTC);
+    private Mono<VariableSeries> fetchOptionalVariable(String deviceId, String variable,
+                                                       long startTimestamp, long endTimestamp) {
+        return fetchVariable(deviceId, variable, startTimestamp, endTimestamp)
+                .onErrorResume(UbidotsUnavailableException.class, error -> Mono.just(VariableSeries.missing()));
+    }
 
-                Reading reading = new Reading();
-                reading.setDeviceId(deviceId);
-                reading.setTimestamp(dateTime);
-                reading.setPower(((Number) powerReading.get("value")).doubleValue());
-                reading.setVoltage(findValueByTimestamp(variableData.get("voltage"), timestamp));
-                reading.setCurrent(findValueByTimestamp(variableData.get("current"), timestamp));
-                reading.setTemperature(findValueByTimestamp(variableData.get("temperature"), timestamp));
+    private long toEpochMillis(LocalDateTime timestamp) {
+        return Timestamps.toEpochMillis(timestamp);
+    }
 
-                readings.add(reading);
-            }
-        } catch (Exception e) {
-            log.error("Error getting readings from Ubidots for device: {}", deviceId, e);
-            return Collections.emptyList();
+    //Union de las cuatro series en una sola pasada. La potencia marca los puntos de lectura
+    //y las demas variables se emparejan por el timestamp mas cercano dentro de la tolerancia.
+    private List<Reading> joinReadings(String deviceId, Tuple4<VariableSeries, VariableSeries,
+            VariableSeries, VariableSeries> variableData) {
+        VariableSeries voltage = variableData.getT1();
+        VariableSeries current = variableData.getT2();
+        VariableSeries power = variableData.getT3();
+        VariableSeries temperature = variableData.getT4();
+        long tolerance = ubidotsConfig.getJoinTolerance().toMillis();
+
+        List<Reading> readings = new ArrayList<>(power.size());
+        for (int i = 0; i < power.size(); i++) {
+            long timestamp = power.timestampAt(i);
+
+            Reading reading = new Reading();
+            reading.setDeviceId(deviceId);
+            reading.setTimestamp(Timestamps.fromEpochMillis(timestamp));
+            reading.setPower(power.valueAt(i));
+            reading.setVoltage(voltage.nearest(timestamp, tolerance));
+            reading.setCurrent(current.nearest(timestamp, tolerance));
+            reading.setTemperature(temperature.nearest(timestamp, tolerance));
+
+            readings.add(reading);
         }
         return readings;
     }
-
-    private double findValueByTimestamp(List<Map<String, Object>> temperature, long timestamp) {
-        return temperature.stream()
-                .filter(reading -> ((Number) reading.get("timestamp")).longValue() == timestamp)
-                .findFirst()
-                .map(reading -> ((Number) reading.get("value")).doubleValue())
-                .orElse(0.0);
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,222 @@
+package com.ecoenergy.eco_energy.ubidots.service;
+
+import com.ecoenergy.eco_energy.config.UbidotsConfig;
+import com.ecoenergy.eco_energy.ubidots.client.UbidotsClient;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+//Cola local en disco para los envios a Ubidots que fallaron o que no se intentaron por tener
+//el circuito abierto. Cada envio es una linea JSON en el segmento activo; periodicamente se
+//rota el segmento y se reenvian los cerrados. Lo que vuelve a fallar se guarda de nuevo.
+@Slf4j
+@Component
+public class UbidotsSpillQueue {
+    private static final String SEGMENT_PREFIX = "spill-";
+    private static final String SEGMENT_SUFFIX = ".jsonl";
+    private static final TypeReference<Map<String, Object>> ENTRY_TYPE = new TypeReference<>() {};
+
+    private final UbidotsClient ubidotsClient;
+    private final UbidotsConfig ubidotsConfig;
+    private final UbidotsConfig.Spill config;
+    private final MeterRegistry meterRegistry;
+    private final Duration replayTimeout;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ScheduledExecutorService replayer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ubidots-spill-replay");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Counter spilledPayloads;
+    private final Counter replayedPayloads;
+
+    private FileChannel activeSegment;
+    private Path activePath;
+    private long segmentSequence;
+
+    public UbidotsSpillQueue(UbidotsClient ubidotsClient, UbidotsConfig ubidotsConfig, MeterRegistry meterRegistry) {
+        this.ubidotsClient = ubidotsClient;
+        this.ubidotsConfig = ubidotsConfig;
+        this.config = ubidotsConfig.getSpill();
+        this.meterRegistry = meterRegistry;
+        this.replayTimeout = UbidotsIngestionPipeline.flushTimeout(ubidotsConfig).multipliedBy(4);
+
+        this.spilledPayloads = Counter.builder("ubidots.spill.written")
+                .description("Payloads written to the local spill queue")
+                .register(meterRegistry);
+        this.replayedPayloads = Counter.builder("ubidots.spill.replayed")
+                .description("Spilled payloads delivered to Ubidots")
+                .register(meterRegistry);
+    }
+
+    //El gauge se registra aqui y no en el constructor para no publicar this antes de construirlo
+    @PostConstruct
+    void start() throws IOException {
+        Files.createDirectories(config.getDirectory());
+        Gauge.builder("ubidots.spill.segments", this, queue -> queue.closedSegments().size())
+                .description("Spill segments waiting to be replayed")
+                .register(meterRegistry);
+        long interval = config.getReplayInterval().toMillis();
+        replayer.scheduleWithFixedDelay(this::replay, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    synchronized void stop() throws IOException {
+        replayer.shutdownNow();
+        closeActiveSegment();
+    }
+
+    //Escritura sincronizada en disco (force) antes de retornar: el payload sobrevive a un reinicio
+    public synchronized void spill(String deviceLabel, Map<String, Object> payload) {
+        try {
+            if (activeSegment == null || activeSegment.size() >= config.getMaxSegmentBytes()) {
+                rotate();
+            }
+            byte[] line = (objectMapper.writeValueAsString(Map.of("device", deviceLabel, "payload", payload)) + "\n")
+                    .getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                activeSegment.write(buffer);
+            }
+            activeSegment.force(false);
+            spilledPayloads.increment();
+        } catch (IOException e) {
+            log.error("Could not spill payload for device {}; it will be lost", deviceLabel, e);
+        }
+    }
+
+    //Para llamar desde operadores reactivos: la escritura en disco no bloquea los hilos de Netty
+    public Mono<Void> spillAsync(String deviceLabel, Map<String, Object> payload) {
+        return Mono.<Void>fromRunnable(() -> spill(deviceLabel, payload))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    //Solo corre en el hilo del replayer
+    private void replay() {
+        if (!ubidotsClient.isAvailable()) {
+            return;
+        }
+        try {
+            synchronized (this) {
+                closeActiveSegment();
+            }
+            for (Path segment : closedSegments()) {
+                if (!ubidotsClient.isAvailable()) {
+                    return;
+                }
+                replaySegment(segment);
+            }
+        } catch (Exception e) {
+            log.error("Error replaying spilled Ubidots payloads", e);
+        }
+    }
+
+    private void replaySegment(Path segment) throws IOException {
+        List<Map<String, Object>> entries = new ArrayList<>();
+        try (Stream<String> lines = Files.lines(segment, StandardCharsets.UTF_8)) {
+            lines.filter(line -> !line.isBlank()).forEach(line -> {
+                try {
+                    entries.add(objectMapper.readValue(line, ENTRY_TYPE));
+                } catch (IOException e) {
+                    // Linea incompleta (caida durante la escritura): se descarta
+                    log.warn("Skipping corrupt spill entry in {}", segment.getFileName());
+                }
+            });
+        }
+
+        // Se registra lo entregado: lo demas (fallido, o cancelado al agotarse el tiempo) se vuelve a guardar
+        Set<Integer> delivered = ConcurrentHashMap.newKeySet();
+        Flux.range(0, entries.size())
+                .flatMap(index -> ubidotsClient.sendDataDevice(
+                                (String) entries.get(index).get("device"), payloadOf(entries.get(index)))
+                        .doOnSuccess(response -> {
+                            delivered.add(index);
+                            replayedPayloads.increment();
+                        })
+                        .onErrorResume(error -> Mono.empty()), ubidotsConfig.getIngestion().getMaxConcurrentRequests())
+                .then()
+                .timeout(replayTimeout)
+                .onErrorResume(TimeoutException.class, error -> {
+                    log.warn("Replay of spill segment {} did not finish within {}", segment.getFileName(), replayTimeout);
+                    return Mono.empty();
+                })
+                .block();
+
+        // El segmento se elimina solo despues de volver a guardar lo que no se entrego
+        int respilled = 0;
+        for (int index = 0; index < entries.size(); index++) {
+            if (!delivered.contains(index)) {
+                spill((String) entries.get(index).get("device"), payloadOf(entries.get(index)));
+                respilled++;
+            }
+        }
+        Files.deleteIfExists(segment);
+        log.info("Replayed spill segment {}: {} delivered, {} re-spilled",
+                segment.getFileName(), entries.size() - respilled, respilled);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> payloadOf(Map<String, Object> entry) {
+        return (Map<String, Object>) entry.get("payload");
+    }
+
+    private void rotate() throws IOException {
+        closeActiveSegment();
+        // Nombre ordenable: milisegundos y secuencia con ancho fijo
+        activePath = config.getDirectory().resolve(String.format("%s%013d-%06d%s",
+                SEGMENT_PREFIX, System.currentTimeMillis(), segmentSequence++ % 1_000_000, SEGMENT_SUFFIX));
+        activeSegment = FileChannel.open(activePath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void closeActiveSegment() throws IOException {
+        if (activeSegment != null) {
+            activeSegment.close();
+            activeSegment = null;
+            activePath = null;
+        }
+    }
+
+    //Segmentos cerrados en orden de creacion
+    private List<Path> closedSegments() {
+        try (Stream<Path> files = Files.list(config.getDirectory())) {
+            Path active = activePath;
+            return files
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .filter(path -> !path.equals(active))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.ecoenergy.eco_energy.ubidots.service;
+
+//Ubidots no respondio (error, timeout o circuito abierto) al consultar el historial.
+//Se distingue de una consulta sin datos, que devuelve una lista vacia.
+public class UbidotsUnavailableException extends RuntimeException {
+    public UbidotsUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
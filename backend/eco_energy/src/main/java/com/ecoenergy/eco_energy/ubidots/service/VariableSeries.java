@@ -0,0 +1,121 @@
+package com.ecoenergy.eco_energy.ubidots.service;
+
+import com.ecoenergy.eco_energy.ubidots.dto.UbidotsValue;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+//Serie de una variable en arreglos primitivos, ordenada por timestamp ascendente.
+//Permite unir las variables en una sola pasada (sort-merge) en lugar de buscar linealmente cada punto.
+final class VariableSeries {
+    private final long[] timestamps;
+    private final double[] values;
+    // Valor cuando no hay punto dentro de la tolerancia
+    private final double absent;
+    private int cursor;
+
+    private VariableSeries(long[] timestamps, double[] values) {
+        this(timestamps, values, 0.0);
+    }
+
+    private VariableSeries(long[] timestamps, double[] values, double absent) {
+        this.timestamps = timestamps;
+        this.values = values;
+        this.absent = absent;
+    }
+
+    //Variable que no se pudo consultar: todas las lecturas la tienen como NaN, no como cero
+    static VariableSeries missing() {
+        return new VariableSeries(new long[0], new double[0], Double.NaN);
+    }
+
+    static VariableSeries of(List<UbidotsValue> points) {
+        int size = points.size();
+        long[] timestamps = new long[size];
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            UbidotsValue point = points.get(i);
+            timestamps[i] = point.getTimestamp();
+            values[i] = point.getValue();
+        }
+
+        if (!isAscending(timestamps)) {
+            // Ubidots entrega los valores del mas reciente al mas antiguo
+            if (isDescending(timestamps)) {
+                reverse(timestamps, values);
+            } else {
+                return sorted(points);
+            }
+        }
+        return new VariableSeries(timestamps, values);
+    }
+
+    int size() {
+        return timestamps.length;
+    }
+
+    long timestampAt(int index) {
+        return timestamps[index];
+    }
+
+    double valueAt(int index) {
+        return values[index];
+    }
+
+    //Valor mas cercano a timestamp dentro de la tolerancia, o 0.0 si no existe (NaN si la variable falto).
+    //Las consultas deben hacerse con timestamps crecientes: el cursor solo avanza.
+    double nearest(long timestamp, long toleranceMillis) {
+        while (cursor < timestamps.length && timestamps[cursor] < timestamp - toleranceMillis) {
+            cursor++;
+        }
+
+        int best = -1;
+        long bestDistance = Long.MAX_VALUE;
+        for (int i = cursor; i < timestamps.length && timestamps[i] <= timestamp + toleranceMillis; i++) {
+            long distance = Math.abs(timestamps[i] - timestamp);
+            if (distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+        return best >= 0 ? values[best] : absent;
+    }
+
+    private static VariableSeries sorted(List<UbidotsValue> points) {
+        UbidotsValue[] ordered = points.toArray(new UbidotsValue[0]);
+        Arrays.sort(ordered, Comparator.comparingLong(UbidotsValue::getTimestamp));
+        long[] timestamps = new long[ordered.length];
+        double[] values = new double[ordered.length];
+        for (int i = 0; i < ordered.length; i++) {
+            timestamps[i] = ordered[i].getTimestamp();
+            values[i] = ordered[i].getValue();
+        }
+        return new VariableSeries(timestamps, values);
+    }
+
+    private static boolean isAscending(long[] timestamps) {
+        for (int i = 1; i < timestamps.length; i++) {
+            if (timestamps[i] < timestamps[i - 1]) return false;
+        }
+        return true;
+    }
+
+    private static boolean isDescending(long[] timestamps) {
+        for (int i = 1; i < timestamps.length; i++) {
+            if (timestamps[i] > timestamps[i - 1]) return false;
+        }
+        return true;
+    }
+
+    private static void reverse(long[] timestamps, double[] values) {
+        for (int i = 0, j = timestamps.length - 1; i < j; i++, j--) {
+            long t = timestamps[i];
+            timestamps[i] = timestamps[j];
+            timestamps[j] = t;
+            double v = values[i];
+            values[i] = values[j];
+            values[j] = v;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+-- Convierte la tabla anomalies en una tabla particionada por mes (PostgreSQL 11+).
+-- Ejecutar una sola vez con la aplicacion detenida. Despues, AnomalyPartitionManager
+-- crea las particiones de los meses siguientes y elimina las que superan la retencion.
+-- Las anomalias fuera de las particiones mensuales (historiales antiguos, relojes adelantados)
+-- van a anomalies_default en lugar de hacer fallar el INSERT; AnomalyPartitionManager las mueve
+-- a su particion cuando el mes esta dentro de la retencion y borra las mas antiguas.
+BEGIN;
+
+ALTER TABLE anomalies RENAME TO anomalies_legacy;
+DROP INDEX IF EXISTS idx_anomalies_device_detected;
+DROP INDEX IF EXISTS idx_anomalies_type_detected;
+
+-- La llave primaria de una tabla particionada debe incluir la llave de particion
+CREATE TABLE anomalies (
+    id           uuid             NOT NULL,
+    device_id    uuid             NOT NULL,
+    anomaly_type varchar(255),
+    value        double precision NOT NULL,
+    detected_at  timestamp(6)     NOT NULL,
+    PRIMARY KEY (id, detected_at)
+) PARTITION BY RANGE (detected_at);
+
+CREATE INDEX idx_anomalies_device_detected ON anomalies (device_id, detected_at);
+CREATE INDEX idx_anomalies_type_detected ON anomalies (anomaly_type, detected_at);
+
+-- Una particion por mes desde la anomalia mas antigua hasta dos meses adelante
+DO $$
+DECLARE
+    month_start date := date_trunc('month', coalesce((SELECT min(detected_at) FROM anomalies_legacy), now()));
+    last_month  date := date_trunc('month', now()) + interval '2 months';
+BEGIN
+    WHILE month_start <= last_month LOOP
+        EXECUTE format(
+            'CREATE TABLE IF NOT EXISTS anomalies_p%s PARTITION OF anomalies FOR VALUES FROM (%L) TO (%L)',
+            to_char(month_start, 'YYYYMM'), month_start, month_start + interval '1 month');
+        month_start := month_start + interval '1 month';
+    END LOOP;
+END $$;
+
+CREATE TABLE IF NOT EXISTS anomalies_default PARTITION OF anomalies DEFAULT;
+
+INSERT INTO anomalies (id, device_id, anomaly_type, value, detected_at)
+SELECT id, device_id, anomaly_type, value, detected_at FROM anomalies_legacy;
+
+DROP TABLE anomalies_legacy;
+
+COMMIT;
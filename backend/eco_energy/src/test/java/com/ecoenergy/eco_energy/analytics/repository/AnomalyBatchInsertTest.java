@@ -0,0 +1,85 @@
+package com.ecoenergy.eco_energy.analytics.repository;
+
+import com.ecoenergy.eco_energy.analytics.model.Anomaly;
+import com.ecoenergy.eco_energy.config.JpaBatchingConfig;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//Guardado fila por fila (implementacion anterior: save por anomalia, cada uno en su transaccion)
+//contra saveAll con lotes JDBC, medido con las estadisticas de Hibernate sobre H2.
+@DataJpaTest(properties = {
+        // value es palabra reservada en H2 (columna Anomaly.value)
+        "spring.datasource.url=jdbc:h2:mem:anomalies;NON_KEYWORDS=VALUE",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(JpaBatchingConfig.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class AnomalyBatchInsertTest {
+    private static final int ANOMALIES = 500;
+
+    @Autowired
+    private AnomalyRepository anomalyRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        anomalyRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void perRowSaveIssuesOneStatementPerAnomaly() {
+        anomalies().forEach(anomalyRepository::save);
+
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(ANOMALIES);
+        assertThat(statistics.getPrepareStatementCount()).isGreaterThanOrEqualTo(ANOMALIES);
+        assertThat(statistics.getTransactionCount()).isGreaterThanOrEqualTo(ANOMALIES);
+    }
+
+    @Test
+    void saveAllIsSentInJdbcBatches() {
+        anomalyRepository.saveAll(anomalies());
+
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(ANOMALIES);
+        // Con lotes JDBC el INSERT se prepara una vez y se ejecuta por lotes de hibernate.jdbc.batch_size;
+        // sin lotes se prepara una sentencia por fila
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(ANOMALIES / 50);
+        assertThat(statistics.getTransactionCount()).isEqualTo(1);
+        assertThat(anomalyRepository.count()).isEqualTo(ANOMALIES);
+    }
+
+    private List<Anomaly> anomalies() {
+        UUID deviceId = UUID.randomUUID();
+        List<Anomaly> anomalies = new ArrayList<>(ANOMALIES);
+        for (int i = 0; i < ANOMALIES; i++) {
+            anomalies.add(new Anomaly(null, deviceId, "Z-SCORE", i, LocalDateTime.now()));
+        }
+        return anomalies;
+    }
+}
@@ -0,0 +1,115 @@
+package com.ecoenergy.eco_energy.analytics.service;
+
+import com.ecoenergy.eco_energy.analytics.model.Anomaly;
+import com.ecoenergy.eco_energy.analytics.repository.AnomalyRepository;
+import com.ecoenergy.eco_energy.config.AnalyticsConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AnomalyWriterTest {
+    private final AnomalyRepository repository = mock(AnomalyRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private AnalyticsConfig config;
+    private AnomalyWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        config = new AnalyticsConfig();
+        config.getWriter().setBatchSize(100);
+        config.getWriter().setMaxRetries(2);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        writer.stop();
+    }
+
+    private AnomalyWriter newWriter() {
+        writer = new AnomalyWriter(repository, config, mock(ApplicationEventPublisher.class), meterRegistry);
+        return writer;
+    }
+
+    private double dropped() {
+        return meterRegistry.counter("analytics.anomalies.dropped").count();
+    }
+
+    @Test
+    void failedBatchIsRetriedOnTheNextFlush() {
+        List<List<Anomaly>> attempts = new ArrayList<>();
+        when(repository.saveAll(anyList()))
+                .thenAnswer(invocation -> {
+                    attempts.add(List.copyOf(invocation.getArgument(0)));
+                    throw new DataAccessResourceFailureException("database down");
+                })
+                .thenAnswer(invocation -> {
+                    attempts.add(List.copyOf(invocation.getArgument(0)));
+                    return invocation.getArgument(0);
+                });
+        AnomalyWriter writer = newWriter();
+        List<Anomaly> anomalies = anomalies(3);
+        anomalies.forEach(anomaly -> anomaly.setId(UUID.randomUUID()));
+
+        writer.enqueue(anomalies);
+        writer.flush();
+        writer.flush();
+
+        assertThat(attempts).hasSize(2);
+        assertThat(attempts.get(1)).containsExactlyElementsOf(anomalies);
+        // Sin id: el reintento vuelve a ser un INSERT por lotes
+        assertThat(anomalies).allMatch(anomaly -> anomaly.getId() == null);
+        assertThat(dropped()).isZero();
+    }
+
+    @Test
+    void batchIsDroppedAndCountedAfterMaxRetries() {
+        when(repository.saveAll(anyList())).thenThrow(new DataAccessResourceFailureException("database down"));
+        AnomalyWriter writer = newWriter();
+
+        writer.enqueue(anomalies(3));
+        writer.flush();
+        writer.flush();
+        writer.flush();
+        writer.flush();
+
+        // Intento inicial + 2 reintentos; el cuarto flush ya no tiene nada que guardar
+        verify(repository, times(3)).saveAll(anyList());
+        assertThat(dropped()).isEqualTo(3);
+    }
+
+    @Test
+    void fullBufferWhileTheDatabaseIsDownCountsDrops() {
+        config.getWriter().setBufferCapacity(2);
+        when(repository.saveAll(anyList())).thenThrow(new DataAccessResourceFailureException("database down"));
+        AnomalyWriter writer = newWriter();
+
+        // La tercera vacia el buffer en un lote pendiente; con el lote pendiente y el buffer lleno
+        // la quinta ya no tiene lugar
+        writer.enqueue(anomalies(5));
+
+        assertThat(dropped()).isEqualTo(1);
+    }
+
+    private List<Anomaly> anomalies(int count) {
+        List<Anomaly> anomalies = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            anomalies.add(new Anomaly(null, UUID.randomUUID(), "Z-SCORE", i, LocalDateTime.now()));
+        }
+        return anomalies;
+    }
+}
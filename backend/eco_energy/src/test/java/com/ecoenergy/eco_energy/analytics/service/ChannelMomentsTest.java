@@ -0,0 +1,134 @@
+package com.ecoenergy.eco_energy.analytics.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static com.ecoenergy.eco_energy.analytics.service.ReadingBatch.CHANNELS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ChannelMomentsTest {
+
+    //Voltaje, corriente, potencia (correlacionada con ambas) y temperatura
+    private static double[][] rows(int size, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        double[][] rows = new double[size][];
+        for (int i = 0; i < size; i++) {
+            double voltage = 220 + random.nextGaussian() * 5;
+            double current = 10 + random.nextGaussian();
+            double temperature = 35 + random.nextGaussian() * 2;
+            rows[i] = new double[]{voltage, current, voltage * current + random.nextGaussian() * 10, temperature};
+        }
+        return rows;
+    }
+
+    private static ChannelMoments accumulate(double[][] rows, int from, int to) {
+        ChannelMoments moments = new ChannelMoments();
+        for (int i = from; i < to; i++) {
+            moments.add(rows[i][0], rows[i][1], rows[i][2], rows[i][3]);
+        }
+        return moments;
+    }
+
+    @Test
+    void welfordMatchesTwoPassMeanAndCovariance() {
+        double[][] rows = rows(5_000, 1);
+        ChannelMoments moments = accumulate(rows, 0, rows.length);
+
+        double[] mean = new double[CHANNELS];
+        for (double[] row : rows) {
+            for (int j = 0; j < CHANNELS; j++) {
+                mean[j] += row[j] / rows.length;
+            }
+        }
+        for (int j = 0; j < CHANNELS; j++) {
+            assertThat(moments.mean(j)).isCloseTo(mean[j], within(1e-9 * Math.abs(mean[j])));
+            for (int k = 0; k < CHANNELS; k++) {
+                double covariance = 0;
+                for (double[] row : rows) {
+                    covariance += (row[j] - mean[j]) * (row[k] - mean[k]) / rows.length;
+                }
+                assertThat(moments.covariance(j, k)).isCloseTo(covariance, within(1e-9 * Math.abs(covariance) + 1e-12));
+            }
+        }
+    }
+
+    @Test
+    void mergeEqualsSequentialAccumulation() {
+        double[][] rows = rows(3_001, 2);
+        ChannelMoments sequential = accumulate(rows, 0, rows.length);
+
+        ChannelMoments merged = accumulate(rows, 0, 1_000)
+                .merge(accumulate(rows, 1_000, 1_001))
+                .merge(accumulate(rows, 1_001, rows.length))
+                .merge(new ChannelMoments());
+        ChannelMoments intoEmpty = new ChannelMoments().merge(sequential);
+
+        assertThat(merged.getCount()).isEqualTo(sequential.getCount());
+        assertThat(intoEmpty.getCount()).isEqualTo(sequential.getCount());
+        for (int j = 0; j < CHANNELS; j++) {
+            assertThat(merged.mean(j)).isCloseTo(sequential.mean(j), within(1e-9));
+            assertThat(intoEmpty.mean(j)).isEqualTo(sequential.mean(j));
+            for (int k = 0; k < CHANNELS; k++) {
+                assertThat(merged.covariance(j, k))
+                        .isCloseTo(sequential.covariance(j, k), within(1e-9 * Math.abs(sequential.covariance(j, k)) + 1e-9));
+            }
+        }
+    }
+
+    @Test
+    void inverseTimesCovarianceIsIdentity() {
+        ChannelMoments moments = accumulate(rows(2_000, 3), 0, 2_000);
+
+        double[] product = multiplyByCovariance(moments, moments.inverseCovariance());
+
+        // Fuera de la diagonal el producto lleva las unidades de cada variable: se compara estandarizado
+        for (int j = 0; j < CHANNELS; j++) {
+            for (int k = 0; k < CHANNELS; k++) {
+                double scale = Math.sqrt(moments.covariance(j, j) / moments.covariance(k, k));
+                assertThat(product[j * CHANNELS + k] * scale).isCloseTo(j == k ? 1.0 : 0.0, within(1e-4));
+            }
+        }
+    }
+
+    @Test
+    void ridgeKeepsTheInverseFiniteForAConstantChannel() {
+        ChannelMoments moments = new ChannelMoments();
+        SplittableRandom random = new SplittableRandom(4);
+        for (int i = 0; i < 100; i++) {
+            // Temperatura constante: su varianza es cero y la covarianza seria singular
+            moments.add(220 + random.nextGaussian(), 10 + random.nextGaussian(), 2_200 + random.nextGaussian(), 35);
+        }
+
+        assertThat(Arrays.stream(moments.inverseCovariance())).allMatch(Double::isFinite);
+    }
+
+    @Test
+    void ewmaTracksALevelShift() {
+        ChannelMoments moments = new ChannelMoments(0.1);
+        for (int i = 0; i < 200; i++) {
+            moments.add(220, 10, 2_200, 35);
+        }
+        for (int i = 0; i < 200; i++) {
+            moments.add(200, 10, 2_000, 35);
+        }
+
+        // Con alpha = 0.1, 200 lecturas despues del salto la media ya olvido el nivel anterior
+        assertThat(moments.mean(0)).isCloseTo(200, within(1e-6));
+        assertThat(moments.covariance(0, 0)).isCloseTo(0, within(1e-6));
+    }
+
+    private static double[] multiplyByCovariance(ChannelMoments moments, double[] matrix) {
+        double[] product = new double[CHANNELS * CHANNELS];
+        for (int j = 0; j < CHANNELS; j++) {
+            for (int k = 0; k < CHANNELS; k++) {
+                for (int m = 0; m < CHANNELS; m++) {
+                    product[j * CHANNELS + k] += matrix[j * CHANNELS + m] * moments.covariance(m, k);
+                }
+            }
+        }
+        return product;
+    }
+}
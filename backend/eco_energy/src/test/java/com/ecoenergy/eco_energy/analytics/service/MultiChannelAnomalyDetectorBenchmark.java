@@ -0,0 +1,89 @@
+package com.ecoenergy.eco_energy.analytics.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.analytics.model.Anomaly;
+import com.ecoenergy.eco_energy.config.AnalyticsConfig;
+import com.ecoenergy.eco_energy.device.model.Device;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+//Deteccion multicanal (limites, z-score y Mahalanobis) sobre un lote de lecturas de un dispositivo.
+//  100k ~ un dia a una lectura por segundo
+//  1M   ~ once dias a una lectura por segundo
+//Ejecutar: mvn test-compile y luego java -cp target/test-classes:<classpath de test>
+//  com.ecoenergy.eco_energy.analytics.service.MultiChannelAnomalyDetectorBenchmark
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MultiChannelAnomalyDetectorBenchmark {
+    private static final LocalDateTime START = LocalDateTime.of(2025, 3, 1, 0, 0);
+
+    @State(Scope.Benchmark)
+    public static class History {
+        @Param({"100000", "1000000"})
+        int readings;
+
+        MultiChannelAnomalyDetector detector;
+        Device device;
+        List<Reading> list;
+        ReadingBatch batch;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            detector = new MultiChannelAnomalyDetector(new AnalyticsConfig());
+            device = new Device();
+            device.setId(UUID.randomUUID());
+            device.setMaxVoltage(235.0);
+            device.setMaxCurrent(12.0);
+
+            SplittableRandom random = new SplittableRandom(42);
+            list = new ArrayList<>(readings);
+            for (int i = 0; i < readings; i++) {
+                double voltage = 220 + random.nextGaussian() * 5;
+                double current = 10 + random.nextGaussian() * 0.5;
+                list.add(new Reading("meter-1", voltage, current, voltage * current + random.nextGaussian() * 10,
+                        35 + random.nextGaussian(), START.plusSeconds(i)));
+            }
+            batch = ReadingBatch.of(list);
+        }
+    }
+
+    @Benchmark
+    public List<Anomaly> detect(History history) {
+        return history.detector.detect(history.device, history.batch);
+    }
+
+    //Incluye el paso de la lista de lecturas a columnas primitivas
+    @Benchmark
+    public List<Anomaly> batchAndDetect(History history) {
+        return history.detector.detect(history.device, ReadingBatch.of(history.list));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MultiChannelAnomalyDetectorBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,104 @@
+package com.ecoenergy.eco_energy.analytics.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.analytics.model.Anomaly;
+import com.ecoenergy.eco_energy.config.AnalyticsConfig;
+import com.ecoenergy.eco_energy.device.model.Device;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MultiChannelAnomalyDetectorTest {
+    private static final LocalDateTime START = LocalDateTime.of(2025, 3, 1, 0, 0);
+
+    private final AnalyticsConfig config = new AnalyticsConfig();
+    private final MultiChannelAnomalyDetector detector = new MultiChannelAnomalyDetector(config);
+
+    private static Device device() {
+        Device device = new Device();
+        device.setId(UUID.randomUUID());
+        return device;
+    }
+
+    //Serie normal donde la potencia sigue a voltaje por corriente
+    private static List<Reading> normal(int size) {
+        SplittableRandom random = new SplittableRandom(7);
+        List<Reading> readings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            double voltage = 220 + random.nextGaussian();
+            double current = 10 + random.nextGaussian() * 0.1;
+            readings.add(new Reading("meter-1", voltage, current, voltage * current, 35 + random.nextGaussian() * 0.5,
+                    START.plusSeconds(i)));
+        }
+        return readings;
+    }
+
+    //La serie normal tambien tiene algunas lecturas a mas de 2 desviaciones; solo interesa la inyectada
+    private static List<Anomaly> at(List<Anomaly> anomalies, LocalDateTime detectedAt) {
+        return anomalies.stream().filter(anomaly -> anomaly.getDetectedAt().equals(detectedAt)).toList();
+    }
+
+    private static List<String> types(List<Anomaly> anomalies) {
+        return anomalies.stream().map(Anomaly::getAnomalyType).toList();
+    }
+
+    @Test
+    void deviceLimitsAreCheckedPerChannel() {
+        config.setZScoreThreshold(100);
+        config.setMahalanobisThreshold(Double.MAX_VALUE);
+        Device device = device();
+        device.setMinVoltage(210.0);
+        device.setMaxVoltage(230.0);
+        device.setMaxCurrent(12.0);
+        device.setMaxTemperature(40.0);
+        List<Reading> readings = new ArrayList<>(normal(100));
+        readings.add(new Reading("meter-1", 205, 10, 2_050, 35, START.plusMinutes(10)));
+        readings.add(new Reading("meter-1", 220, 13, 2_860, 45, START.plusMinutes(11)));
+
+        List<Anomaly> anomalies = detector.detect(device, ReadingBatch.of(readings));
+
+        assertThat(types(anomalies)).containsExactlyInAnyOrder("VOLTAGE_LOW", "CURRENT_HIGH", "TEMPERATURE_HIGH");
+        assertThat(anomalies).filteredOn(anomaly -> anomaly.getAnomalyType().equals("VOLTAGE_LOW"))
+                .singleElement().satisfies(anomaly -> {
+                    assertThat(anomaly.getValue()).isEqualTo(205);
+                    assertThat(anomaly.getDetectedAt()).isEqualTo(START.plusMinutes(10));
+                    assertThat(anomaly.getDeviceId()).isEqualTo(device.getId());
+                });
+    }
+
+    @Test
+    void zScoreFlagsAVoltageSagWithNormalPower() {
+        List<Reading> readings = new ArrayList<>(normal(1_000));
+        // La potencia queda en su valor habitual: el detector anterior, solo sobre potencia, no la veia
+        readings.add(new Reading("meter-1", 200, 11, 2_200, 35, START.plusHours(1)));
+
+        List<String> types = types(at(detector.detect(device(), ReadingBatch.of(readings)), START.plusHours(1)));
+
+        assertThat(types).contains("VOLTAGE_Z_SCORE").doesNotContain("POWER_Z_SCORE");
+    }
+
+    @Test
+    void mahalanobisFlagsABrokenCorrelationThatNoSingleChannelShows() {
+        config.setZScoreThreshold(3);
+        List<Reading> readings = new ArrayList<>(normal(2_000));
+        // Cada variable dentro de 2 desviaciones, pero la potencia no corresponde a voltaje por corriente
+        readings.add(new Reading("meter-1", 221.5, 10.15, 2_180, 35, START.plusHours(1)));
+
+        List<Anomaly> anomalies = at(detector.detect(device(), ReadingBatch.of(readings)), START.plusHours(1));
+
+        assertThat(types(anomalies)).containsExactly("MAHALANOBIS");
+        assertThat(anomalies.getFirst().getValue()).isGreaterThan(Math.sqrt(config.getMahalanobisThreshold()));
+    }
+
+    @Test
+    void emptyAndSingleReadingBatchesHaveNoStatisticalAnomalies() {
+        assertThat(detector.detect(device(), ReadingBatch.of(List.of()))).isEmpty();
+        assertThat(detector.detect(device(), ReadingBatch.of(normal(1)))).isEmpty();
+    }
+}
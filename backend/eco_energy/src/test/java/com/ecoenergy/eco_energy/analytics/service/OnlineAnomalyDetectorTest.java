@@ -0,0 +1,112 @@
+package com.ecoenergy.eco_energy.analytics.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.analytics.model.Anomaly;
+import com.ecoenergy.eco_energy.config.AnalyticsConfig;
+import com.ecoenergy.eco_energy.device.model.Device;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class OnlineAnomalyDetectorTest {
+    private static final LocalDateTime START = LocalDateTime.of(2025, 3, 1, 0, 0);
+    private static final int WARMUP = 8;
+
+    private final AnomalyWriter anomalyWriter = mock(AnomalyWriter.class);
+    private final AnalyticsConfig config = new AnalyticsConfig();
+    private final OnlineAnomalyDetector detector = new OnlineAnomalyDetector(anomalyWriter, config);
+    private final Device device = device();
+
+    @BeforeEach
+    void setUp() {
+        config.setMinSamples(WARMUP);
+        // Cada lectura se evalua contra las estadisticas exactas de las anteriores
+        config.setScorerRefreshReadings(1);
+    }
+
+    private static Device device() {
+        Device device = new Device();
+        device.setId(UUID.randomUUID());
+        return device;
+    }
+
+    //Diseno factorial 2^3: cada variable vale media +- desviacion y las cuatro quedan incorrelacionadas.
+    //Media (220, 10, 2200, 35), desviacion (2, 1, 20, 1); la distancia de Mahalanobis es la suma de z².
+    private void warmUp(Device device) {
+        for (int i = 0; i < WARMUP; i++) {
+            int s0 = (i & 1) == 0 ? -1 : 1;
+            int s1 = (i & 2) == 0 ? -1 : 1;
+            int s2 = (i & 4) == 0 ? -1 : 1;
+            assertThat(evaluate(device, 220 + 2 * s0, 10 + s1, 2_200 + 20 * s2, 35 + s0 * s1 * s2)).isEmpty();
+        }
+    }
+
+    private List<Anomaly> evaluate(Device device, double voltage, double current, double power, double temperature) {
+        return detector.evaluate(device, new Reading("meter-1", voltage, current, power, temperature, START));
+    }
+
+    @Test
+    void readingWithinThresholdIsNotReported() {
+        warmUp(device);
+
+        // z = 1.95; cada lectura evaluada entra en las estadisticas, por eso se evalua una sola
+        assertThat(evaluate(device, 223.9, 10, 2_200, 35)).isEmpty();
+        verify(anomalyWriter, never()).enqueue(any());
+    }
+
+    @Test
+    void channelBeyondThresholdIsReportedAsZScore() {
+        warmUp(device);
+
+        // z = 2.05 solo en el voltaje
+        List<Anomaly> anomalies = evaluate(device, 224.1, 10, 2_200, 35);
+
+        assertThat(anomalies).extracting(Anomaly::getAnomalyType).containsExactly("VOLTAGE_Z_SCORE");
+        assertThat(anomalies.get(0).getValue()).isEqualTo(224.1);
+        assertThat(anomalies.get(0).getDeviceId()).isEqualTo(device.getId());
+        verify(anomalyWriter).enqueue(anomalies);
+    }
+
+    @Test
+    void mahalanobisFlagsJointDeviationsBelowTheZScoreThreshold() {
+        config.setZScoreThreshold(3.0);
+        warmUp(device);
+
+        // z = 2 en las cuatro variables: d² = 16, por debajo de 18.47
+        assertThat(evaluate(device, 224, 12, 2_240, 37)).isEmpty();
+
+        Device other = device();
+        warmUp(other);
+        // z = 2.5 en las cuatro variables: ninguna supera 3 por separado, pero d² = 25
+        assertThat(evaluate(other, 225, 12.5, 2_250, 37.5)).extracting(Anomaly::getAnomalyType)
+                .containsExactly("MAHALANOBIS");
+    }
+
+    @Test
+    void onlyDeviceLimitsApplyDuringWarmup() {
+        device.setMaxVoltage(230.0);
+
+        // Antes de minSamples lecturas no hay estadisticas: una lectura extrema solo supera el limite
+        assertThat(evaluate(device, 240, 10, 2_200, 35)).extracting(Anomaly::getAnomalyType)
+                .containsExactly("VOLTAGE_HIGH");
+        assertThat(evaluate(device, 220, 500, 2_200, 35)).isEmpty();
+    }
+
+    @Test
+    void limitAndStatisticsAreReportedTogetherAfterWarmup() {
+        device.setMaxVoltage(230.0);
+        warmUp(device);
+
+        assertThat(evaluate(device, 240, 10, 2_200, 35)).extracting(Anomaly::getAnomalyType)
+                .containsExactly("VOLTAGE_Z_SCORE", "VOLTAGE_HIGH", "MAHALANOBIS");
+    }
+}
@@ -0,0 +1,102 @@
+package com.ecoenergy.eco_energy.analytics.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class RunningStatisticsTest {
+
+    private static RunningStatistics of(RunningStatistics statistics, double... values) {
+        for (double value : values) {
+            statistics.add(value);
+        }
+        return statistics;
+    }
+
+    @Test
+    void emptyStatisticsHaveZeroVariance() {
+        RunningStatistics statistics = new RunningStatistics();
+
+        assertThat(statistics.getCount()).isZero();
+        assertThat(statistics.getVariance()).isZero();
+        assertThat(statistics.getStandardDeviation()).isZero();
+    }
+
+    @Test
+    void welfordGivesThePopulationMeanAndVariance() {
+        // Media 5, varianza poblacional 4
+        RunningStatistics statistics = of(new RunningStatistics(), 2, 4, 4, 4, 5, 5, 7, 9);
+
+        assertThat(statistics.getCount()).isEqualTo(8);
+        assertThat(statistics.getMean()).isCloseTo(5.0, within(1e-12));
+        assertThat(statistics.getVariance()).isCloseTo(4.0, within(1e-12));
+        assertThat(statistics.getStandardDeviation()).isCloseTo(2.0, within(1e-12));
+    }
+
+    @Test
+    void welfordIsStableForLargeOffsets() {
+        // Mismas diferencias que arriba sobre un nivel de 1e9: la suma de cuadrados ingenua pierde la varianza
+        RunningStatistics statistics = of(new RunningStatistics(),
+                1e9 + 2, 1e9 + 4, 1e9 + 4, 1e9 + 4, 1e9 + 5, 1e9 + 5, 1e9 + 7, 1e9 + 9);
+
+        assertThat(statistics.getMean()).isCloseTo(1e9 + 5, within(1e-6));
+        assertThat(statistics.getVariance()).isCloseTo(4.0, within(1e-6));
+    }
+
+    @Test
+    void ewmaWeightsRecentValues() {
+        // alpha = 0.5, calculado a mano:
+        //  10 -> media 10,   varianza 0
+        //  20 -> media 15,   varianza 0.5 * (0 + 10 * 5)       = 25
+        //  10 -> media 12.5, varianza 0.5 * (25 + (-5) * (-2.5)) = 18.75
+        RunningStatistics statistics = new RunningStatistics(0.5);
+
+        statistics.add(10);
+        assertThat(statistics.getMean()).isEqualTo(10.0);
+        assertThat(statistics.getVariance()).isZero();
+
+        statistics.add(20);
+        assertThat(statistics.getMean()).isEqualTo(15.0);
+        assertThat(statistics.getVariance()).isEqualTo(25.0);
+
+        statistics.add(10);
+        assertThat(statistics.getMean()).isEqualTo(12.5);
+        assertThat(statistics.getVariance()).isEqualTo(18.75);
+    }
+
+    @Test
+    void ewmaForgetsALevelShift() {
+        RunningStatistics statistics = new RunningStatistics(0.1);
+        for (int i = 0; i < 200; i++) {
+            statistics.add(220);
+        }
+        for (int i = 0; i < 200; i++) {
+            statistics.add(200);
+        }
+
+        // Welford con toda la historia seguiria en 210
+        assertThat(statistics.getMean()).isCloseTo(200, within(1e-6));
+        assertThat(statistics.getVariance()).isCloseTo(0, within(1e-6));
+    }
+
+    @Test
+    void outlierIsStrictlyBeyondThresholdDeviations() {
+        RunningStatistics statistics = of(new RunningStatistics(), 2, 4, 4, 4, 5, 5, 7, 9);
+
+        // Media 5 y desviacion 2: con umbral 2 el limite es |x - 5| > 4
+        assertThat(statistics.isOutlier(9, 2)).isFalse();
+        assertThat(statistics.isOutlier(1, 2)).isFalse();
+        assertThat(statistics.isOutlier(9.01, 2)).isTrue();
+        assertThat(statistics.isOutlier(0.99, 2)).isTrue();
+        assertThat(statistics.isOutlier(9.01, 3)).isFalse();
+    }
+
+    @Test
+    void anyChangeIsAnOutlierForAConstantSeries() {
+        RunningStatistics statistics = of(new RunningStatistics(), 35, 35, 35);
+
+        assertThat(statistics.isOutlier(35, 2)).isFalse();
+        assertThat(statistics.isOutlier(35.1, 2)).isTrue();
+    }
+}
@@ -0,0 +1,76 @@
+package com.ecoenergy.eco_energy.device.service;
+
+import com.ecoenergy.eco_energy.analytics.service.OnlineAnomalyDetector;
+import com.ecoenergy.eco_energy.config.DeviceCacheConfig;
+import com.ecoenergy.eco_energy.device.model.Device;
+import com.ecoenergy.eco_energy.device.repository.DeviceRepository;
+import com.ecoenergy.eco_energy.timeseries.service.ReadingStore;
+import com.ecoenergy.eco_energy.ubidots.service.UbidotsService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DeviceServiceTest {
+    private final DeviceRepository deviceRepository = mock(DeviceRepository.class);
+    private final DeviceCache deviceCache =
+            new DeviceCache(deviceRepository, new DeviceCacheConfig(), new SimpleMeterRegistry());
+    private final DeviceService deviceService = new DeviceService(deviceRepository, mock(UbidotsService.class),
+            mock(ReadingStore.class), mock(OnlineAnomalyDetector.class), deviceCache);
+
+    private static Device device(UUID id, String name) {
+        Device device = new Device();
+        device.setId(id);
+        device.setName(name);
+        device.setUbidotsLabel("meter-1");
+        return device;
+    }
+
+    @Test
+    void updateStartsFromAFreshEntityAndCachesTheSavedVersion() {
+        UUID id = UUID.randomUUID();
+        when(deviceRepository.findById(id)).thenReturn(Optional.of(device(id, "old")));
+        Device cached = deviceService.getDevice(id).orElseThrow();
+
+        // La base de datos devuelve otra instancia, como haria JPA en una nueva sesion
+        when(deviceRepository.findById(id)).thenReturn(Optional.of(device(id, "old")));
+        when(deviceRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        Device updated = deviceService.updateDevice(id, device -> device.setName("new")).orElseThrow();
+
+        assertThat(cached.getName()).isEqualTo("old");
+        assertThat(updated.getUpdatedAt()).isNotNull();
+        assertThat(deviceService.getDevice(id)).containsSame(updated);
+    }
+
+    @Test
+    void updateOfMissingDeviceReturnsEmpty() {
+        UUID id = UUID.randomUUID();
+        when(deviceRepository.findById(id)).thenReturn(Optional.empty());
+
+        assertThat(deviceService.updateDevice(id, device -> device.setName("new"))).isEmpty();
+    }
+
+    @Test
+    void unknownLabelIsLookedUpOnceUntilADeviceIsCreatedWithIt() {
+        when(deviceRepository.findByUbidotsLabel("meter-1")).thenReturn(Optional.empty());
+        for (int i = 0; i < 3; i++) {
+            assertThat(deviceService.getDeviceByUbidotsLabel("meter-1")).isEmpty();
+        }
+        verify(deviceRepository, times(1)).findByUbidotsLabel("meter-1");
+
+        Device created = device(UUID.randomUUID(), "new");
+        when(deviceRepository.save(any())).thenReturn(created);
+        when(deviceRepository.findByUbidotsLabel("meter-1")).thenReturn(Optional.of(created));
+        deviceService.createDevice(created);
+
+        assertThat(deviceService.getDeviceByUbidotsLabel("meter-1")).containsSame(created);
+    }
+}
@@ -0,0 +1,72 @@
+package com.ecoenergy.eco_energy.notification.websocket;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.timeseries.service.Timestamps;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Decodificador de referencia del subprotocolo eco-energy.bin.v1, tal como lo implementaria un
+//cliente siguiendo la especificacion de BinaryFrameEncoder
+class BinaryFrameDecoder {
+    private final Map<Integer, String> labels = new HashMap<>();
+    private final Map<Integer, long[]> values = new HashMap<>();
+
+    List<Reading> decode(ByteBuffer frame) {
+        byte type = frame.get();
+        if (type == BinaryFrameEncoder.KEYFRAME) {
+            labels.clear();
+            values.clear();
+        } else if (type != BinaryFrameEncoder.READINGS_FRAME) {
+            throw new IllegalArgumentException("Unknown frame type " + type);
+        }
+
+        int count = (int) readVarint(frame);
+        List<Reading> readings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long ref = readVarint(frame);
+            int id = (int) (ref >>> 1);
+            if ((ref & 1) == 1) {
+                byte[] label = new byte[(int) readVarint(frame)];
+                frame.get(label);
+                labels.put(id, new String(label, StandardCharsets.UTF_8));
+                values.put(id, new long[5]);
+            }
+            String label = labels.get(id);
+            long[] state = values.get(id);
+            if (label == null) {
+                throw new IllegalStateException("Unknown device id " + id);
+            }
+            for (int v = 0; v < state.length; v++) {
+                long zigzag = readVarint(frame);
+                state[v] += (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+            readings.add(new Reading(label,
+                    unscaled(state[1]), unscaled(state[2]), unscaled(state[3]), unscaled(state[4]),
+                    state[0] == 0 ? null : Timestamps.fromEpochMillis(state[0])));
+        }
+        if (frame.hasRemaining()) {
+            throw new IllegalStateException(frame.remaining() + " trailing bytes");
+        }
+        return readings;
+    }
+
+    private static double unscaled(long value) {
+        return (double) value / BinaryFrameEncoder.VALUE_SCALE;
+    }
+
+    private static long readVarint(ByteBuffer frame) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = frame.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.ecoenergy.eco_energy.notification.websocket;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.config.WebSocketStreamConfig;
+import com.ecoenergy.eco_energy.simulator.service.LatencyRecorder;
+import com.ecoenergy.eco_energy.timeseries.service.SystemZone;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BinaryFrameEncoderTest {
+    private static final LocalDateTime START = LocalDateTime.of(2025, 3, 1, 12, 0, 0, 123_000_000);
+
+    @Test
+    void framesRoundTripThroughTheDecoder() {
+        BinaryFrameEncoder encoder = new BinaryFrameEncoder();
+        BinaryFrameDecoder decoder = new BinaryFrameDecoder();
+
+        List<Reading> first = List.of(
+                new Reading("meter-1", 220.5, 1.25, 275.625, 30.1, START),
+                new Reading("bomba-ñ", 380, 12.5, 4750, 45.0, START.plusSeconds(1)));
+        // Valores que bajan (diferencias negativas), un timestamp nulo y un dispositivo nuevo
+        List<Reading> second = List.of(
+                new Reading("meter-1", 210.25, 0.5, -12.75, -5.5, START.minusSeconds(30)),
+                new Reading("bomba-ñ", 379.999, 12.5, 4750, 44.9, null),
+                new Reading("meter-2", 0, 0, 0, 0, START.plusMinutes(1)));
+        List<Reading> third = List.of(
+                new Reading("bomba-ñ", 381, 13, 4953, 46, START.plusSeconds(2)));
+
+        assertDecodesTo(decoder.decode(encoder.encode(first)), first);
+        assertDecodesTo(decoder.decode(encoder.encode(second)), second);
+        assertDecodesTo(decoder.decode(encoder.encode(third)), third);
+    }
+
+    @Test
+    void timestampIsTheEpochOfTheLocalReadingTime() throws Throwable {
+        SystemZone.run(SystemZone.NON_UTC, () -> {
+            ByteBuffer frame = new BinaryFrameEncoder().encode(List.of(new Reading("m", 0, 0, 0, 0, START)));
+
+            // tipo, n, ref con etiqueta (1 byte), largo y etiqueta "m", luego la diferencia del timestamp
+            frame.position(5);
+            long zigzag = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = frame.get();
+                zigzag |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) break;
+            }
+            long epochMillis = (zigzag >>> 1) ^ -(zigzag & 1);
+            assertThat(epochMillis).isEqualTo(START.atZone(SystemZone.NON_UTC).toInstant().toEpochMilli());
+            frame.rewind();
+            assertThat(new BinaryFrameDecoder().decode(frame)).singleElement()
+                    .extracting(Reading::getTimestamp).isEqualTo(START.truncatedTo(ChronoUnit.MILLIS));
+        });
+    }
+
+    @Test
+    void onlyFirstSightingCarriesTheLabel() {
+        BinaryFrameEncoder encoder = new BinaryFrameEncoder();
+        Reading reading = new Reading("meter-1", 220, 1, 220, 30, START);
+
+        ByteBuffer first = encoder.encode(List.of(reading));
+        ByteBuffer repeated = encoder.encode(List.of(reading));
+
+        assertThat(first.get(0)).isEqualTo(BinaryFrameEncoder.KEYFRAME);
+        assertThat(repeated.get(0)).isEqualTo(BinaryFrameEncoder.READINGS_FRAME);
+        // Sin etiqueta y con las cinco diferencias en cero: tipo, n, ref y 5 bytes
+        assertThat(repeated.remaining()).isEqualTo(8);
+    }
+
+    @Test
+    void resetStartsAKeyframeTheClientCanDecodeWithoutTheLostFrame() {
+        BinaryFrameEncoder encoder = new BinaryFrameEncoder();
+        BinaryFrameDecoder decoder = new BinaryFrameDecoder();
+        List<Reading> delivered = List.of(new Reading("meter-1", 220, 1, 220, 30, START));
+        List<Reading> lost = List.of(new Reading("meter-1", 230, 2, 460, 31, START.plusSeconds(5)),
+                new Reading("meter-2", 100, 1, 100, 25, START.plusSeconds(5)));
+        List<Reading> next = List.of(new Reading("meter-2", 110, 1, 110, 26, START.plusSeconds(10)),
+                new Reading("meter-1", 240, 3, 720, 32, START.plusSeconds(10)));
+
+        decoder.decode(encoder.encode(delivered));
+        encoder.encode(lost);
+        encoder.reset();
+
+        ByteBuffer frame = encoder.encode(next);
+        assertThat(frame.get(0)).isEqualTo(BinaryFrameEncoder.KEYFRAME);
+        assertDecodesTo(decoder.decode(frame), next);
+    }
+
+    @Test
+    void failedSendMakesTheNextFrameAKeyframe() throws Exception {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("session-1");
+        when(session.isOpen()).thenReturn(true);
+        when(session.getAcceptedProtocol()).thenReturn(BinaryFrameEncoder.SUBPROTOCOL);
+        List<ByteBuffer> sent = new ArrayList<>();
+        doAnswer(invocation -> {
+            ByteBuffer payload = ((BinaryMessage) invocation.getArgument(0)).getPayload();
+            sent.add(payload);
+            if (sent.size() == 2) {
+                throw new IOException("broken pipe");
+            }
+            return null;
+        }).when(session).sendMessage(any());
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SessionSender sender = new SessionSender(session, Runnable::run, new LatencyRecorder(),
+                new WebSocketStreamConfig(), new SessionSender.Metrics(
+                Counter.builder("conflated").register(registry),
+                Counter.builder("dropped").register(registry),
+                Counter.builder("evicted").register(registry)));
+
+        BinaryFrameDecoder decoder = new BinaryFrameDecoder();
+        for (int i = 0; i < 3; i++) {
+            sender.sendLatest("meter-1", null, new Reading("meter-1", 220 + i, 1, 220 + i, 30, START.plusSeconds(i)));
+        }
+
+        assertThat(sent).hasSize(3);
+        decoder.decode(sent.get(0));
+        assertThat(sent.get(2).get(0)).isEqualTo(BinaryFrameEncoder.KEYFRAME);
+        assertThat(decoder.decode(sent.get(2))).singleElement()
+                .extracting(Reading::getPower).isEqualTo(222.0);
+    }
+
+    private static void assertDecodesTo(List<Reading> decoded, List<Reading> expected) {
+        assertThat(decoded).hasSameSizeAs(expected);
+        for (int i = 0; i < expected.size(); i++) {
+            Reading actual = decoded.get(i);
+            Reading reading = expected.get(i);
+            assertThat(actual.getDeviceId()).isEqualTo(reading.getDeviceId());
+            assertThat(actual.getVoltage()).isEqualTo(reading.getVoltage());
+            assertThat(actual.getCurrent()).isEqualTo(reading.getCurrent());
+            assertThat(actual.getPower()).isEqualTo(reading.getPower());
+            assertThat(actual.getTemperature()).isEqualTo(reading.getTemperature());
+            assertThat(actual.getTimestamp()).isEqualTo(reading.getTimestamp() == null
+                    ? null : reading.getTimestamp().truncatedTo(ChronoUnit.MILLIS));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.ecoenergy.eco_energy.notification.websocket;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.config.WebSocketStreamConfig;
+import com.ecoenergy.eco_energy.simulator.service.LatencyRecorder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EnergyDataHandlerTest {
+    private final ObjectMapper objectMapper = spy(new ObjectMapper().findAndRegisterModules());
+    private final EnergyDataHandler handler = new EnergyDataHandler(new LatencyRecorder(), objectMapper,
+            new WebSocketStreamConfig(), new SimpleMeterRegistry());
+
+    @AfterEach
+    void tearDown() {
+        handler.shutdown();
+    }
+
+    private WebSocketSession connect(String id) throws Exception {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.isOpen()).thenReturn(true);
+        handler.afterConnectionEstablished(session);
+        return session;
+    }
+
+    private void message(WebSocketSession session, String type, String deviceId, String extra) throws Exception {
+        handler.handleTextMessage(session, new TextMessage(
+                "{\"type\": \"" + type + "\", \"deviceId\": \"" + deviceId + "\"" + extra + "}"));
+    }
+
+    @Test
+    void invalidJsonGetsAnErrorFrameAndKeepsTheSessionOpen() throws Exception {
+        WebSocketSession session = connect("session-1");
+
+        handler.handleTextMessage(session, new TextMessage("{\"type\": \"subscribe\", \"deviceId\""));
+        handler.handleTextMessage(session, new TextMessage("{\"type\": \"subscribe\", \"deviceId\": \"meter-1\"}"));
+
+        verify(session, timeout(1000)).sendMessage(argThat(message ->
+                message instanceof TextMessage text && text.getPayload().contains("\"error\"")));
+        verify(session, timeout(1000)).sendMessage(argThat(message ->
+                message instanceof TextMessage text && text.getPayload().contains("\"subscribed\"")));
+        verify(session, never()).close(any());
+    }
+
+    @Test
+    void readingIsSerializedOnceAndSharedByEveryJsonSession() throws Exception {
+        WebSocketSession first = connect("session-1");
+        WebSocketSession second = connect("session-2");
+        message(first, "subscribe", "meter-1", "");
+        message(second, "subscribe", "meter-1", "");
+        verify(first, timeout(1000).times(2)).sendMessage(any());
+        verify(second, timeout(1000).times(2)).sendMessage(any());
+        clearInvocations(objectMapper);
+
+        handler.sendEnergyData("meter-1", new Reading("meter-1", 220, 1, 220, 30, LocalDateTime.now()));
+
+        ArgumentCaptor<WebSocketMessage<?>> toFirst = ArgumentCaptor.forClass(WebSocketMessage.class);
+        ArgumentCaptor<WebSocketMessage<?>> toSecond = ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(first, timeout(1000).times(3)).sendMessage(toFirst.capture());
+        verify(second, timeout(1000).times(3)).sendMessage(toSecond.capture());
+        assertThat(toFirst.getValue()).isSameAs(toSecond.getValue());
+        assertThat(((TextMessage) toFirst.getValue()).getPayload()).contains("\"energy_data\"");
+        verify(objectMapper, times(1)).writeValueAsString(any());
+    }
+
+    @Test
+    void indexIsClearedOnUnsubscribeAndWhenTheSessionCloses() throws Exception {
+        WebSocketSession first = connect("session-1");
+        WebSocketSession second = connect("session-2");
+        message(first, "subscribe", "meter-1", "");
+        message(first, "subscribe", "meter-2", ", \"windowMs\": 1000");
+        message(second, "subscribe", "meter-1", "");
+
+        message(first, "unsubscribe", "meter-1", "");
+        assertThat(handler.hasSubscribers("meter-1")).isTrue();
+        handler.afterConnectionClosed(second, CloseStatus.NORMAL);
+        assertThat(handler.hasSubscribers("meter-1")).isFalse();
+        assertThat(handler.hasSubscribers("meter-2")).isTrue();
+        handler.afterConnectionClosed(first, CloseStatus.NORMAL);
+        assertThat(handler.hasSubscribers("meter-2")).isFalse();
+
+        // Sin suscriptores la lectura ni siquiera se serializa
+        clearInvocations(objectMapper);
+        for (String deviceId : List.of("meter-1", "meter-2")) {
+            handler.sendEnergyData(deviceId, new Reading(deviceId, 220, 1, 220, 30, LocalDateTime.now()));
+        }
+        verify(objectMapper, never()).writeValueAsString(any());
+    }
+}
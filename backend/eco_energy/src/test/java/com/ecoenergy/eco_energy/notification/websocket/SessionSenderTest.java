@@ -0,0 +1,143 @@
+package com.ecoenergy.eco_energy.notification.websocket;
+
+import com.ecoenergy.eco_energy.config.WebSocketStreamConfig;
+import com.ecoenergy.eco_energy.simulator.service.LatencyRecorder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SessionSenderTest {
+    private final WebSocketSession session = mock(WebSocketSession.class);
+    private final WebSocketStreamConfig config = new WebSocketStreamConfig();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SessionSender.Metrics metrics = new SessionSender.Metrics(
+            Counter.builder("conflated").register(registry),
+            Counter.builder("dropped").register(registry),
+            Counter.builder("evicted").register(registry));
+
+    // El primer envio se queda bloqueado en el socket hasta que se libera, como un cliente lento
+    private final CountDownLatch firstSendStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseFirstSend = new CountDownLatch(1);
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(session.getId()).thenReturn("session-1");
+        when(session.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            WebSocketMessage<?> message = invocation.getArgument(0);
+            if (sent.isEmpty()) {
+                firstSendStarted.countDown();
+                releaseFirstSend.await();
+            }
+            sent.add((String) message.getPayload());
+            return null;
+        }).when(session).sendMessage(any());
+    }
+
+    @AfterEach
+    void tearDown() {
+        releaseFirstSend.countDown();
+        executor.shutdownNow();
+    }
+
+    private SessionSender sender() {
+        return new SessionSender(session, executor, new LatencyRecorder(), config, metrics);
+    }
+
+    //Mensaje de exactamente size bytes
+    private static TextMessage message(String id, int size) {
+        return new TextMessage(id + " ".repeat(size - id.length()));
+    }
+
+    private void awaitSent(int count) throws InterruptedException {
+        for (int attempt = 0; sent.size() < count; attempt++) {
+            assertThat(attempt).isLessThan(100);
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    void newestReadingReplacesThePendingOneOfTheSameDevice() throws Exception {
+        SessionSender sender = sender();
+        sender.sendLatest("meter-1", message("m1-a", 10), null);
+        assertThat(firstSendStarted.await(1, TimeUnit.SECONDS)).isTrue();
+
+        sender.sendLatest("meter-1", message("m1-b", 10), null);
+        sender.sendLatest("meter-2", message("m2-a", 10), null);
+        sender.sendLatest("meter-1", message("m1-c", 10), null);
+        releaseFirstSend.countDown();
+
+        awaitSent(3);
+        Thread.sleep(50);
+        // meter-1 conserva su lugar en la cola pero solo se envia su lectura mas reciente
+        assertThat(sent).extracting(String::trim).containsExactly("m1-a", "m1-c", "m2-a");
+        assertThat(metrics.conflated().count()).isEqualTo(1);
+        assertThat(metrics.dropped().count()).isZero();
+        assertThat(metrics.evicted().count()).isZero();
+    }
+
+    @Test
+    void sessionIsEvictedWhenPendingBytesExceedTheLimit() throws Exception {
+        config.setBufferSizeLimit(100);
+        SessionSender sender = sender();
+        sender.sendLatest("meter-1", message("m1", 40), null);
+        assertThat(firstSendStarted.await(1, TimeUnit.SECONDS)).isTrue();
+
+        sender.sendLatest("meter-2", message("m2", 40), null);
+        verify(session, never()).close(any());
+        sender.sendLatest("meter-3", message("m3", 40), null);
+
+        verify(session, timeout(1000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertThat(metrics.evicted().count()).isEqualTo(1);
+        // Las dos lecturas pendientes se descartan, y tambien lo que llegue despues del cierre
+        assertThat(metrics.dropped().count()).isEqualTo(2);
+        sender.sendLatest("meter-4", message("m4", 40), null);
+        sender.send(message("control", 40));
+        assertThat(metrics.dropped().count()).isEqualTo(4);
+
+        releaseFirstSend.countDown();
+        Thread.sleep(50);
+        assertThat(sent).extracting(String::trim).containsExactly("m1");
+        assertThat(metrics.evicted().count()).isEqualTo(1);
+    }
+
+    @Test
+    void sessionIsEvictedWhenASendExceedsTheTimeLimit() throws Exception {
+        config.setSendTimeLimit(Duration.ofMillis(50));
+        SessionSender sender = sender();
+        sender.sendLatest("meter-1", message("m1", 10), null);
+        assertThat(firstSendStarted.await(1, TimeUnit.SECONDS)).isTrue();
+
+        Thread.sleep(100);
+        sender.sendLatest("meter-2", message("m2", 10), null);
+
+        verify(session, timeout(1000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertThat(metrics.evicted().count()).isEqualTo(1);
+        assertThat(metrics.dropped().count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,75 @@
+package com.ecoenergy.eco_energy.notification.websocket;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.analytics.dto.ReadingChannel;
+import com.ecoenergy.eco_energy.timeseries.dto.SeriesPoint;
+import com.ecoenergy.eco_energy.timeseries.service.Downsampler;
+import com.ecoenergy.eco_energy.timeseries.service.Timestamps;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.TimeZone;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WindowedStreamTest {
+    private static final long HOUR = Duration.ofHours(1).toMillis();
+
+    private TimeZone defaultZone;
+
+    @BeforeEach
+    void setUp() {
+        defaultZone = TimeZone.getDefault();
+        // Zona con media hora de desfase: los cortes en UTC y en hora local no coinciden
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kolkata"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        TimeZone.setDefault(defaultZone);
+    }
+
+    private static Reading reading(LocalDateTime timestamp, double power) {
+        return new Reading("meter-1", 220, 1, power, 30, timestamp);
+    }
+
+    @Test
+    void windowsFollowTheLocalClockOfTheReadings() {
+        LocalDateTime hour = LocalDateTime.of(2025, 3, 1, 12, 0);
+        WindowedStream stream = new WindowedStream(
+                new WindowedStream.Spec(HOUR, ReadingChannel.POWER, Downsampler.Method.MINMAX, 2),
+                Timestamps.toEpochMillis(hour.plusMinutes(10)));
+
+        stream.add(reading(hour.plusMinutes(5), 100));
+        stream.add(reading(hour.plusMinutes(20), 300));
+        stream.add(reading(hour.plusMinutes(40), 50));
+        assertThat(stream.closeIfDue(Timestamps.toEpochMillis(hour.plusMinutes(59)))).isNull();
+
+        WindowedStream.Window window = stream.closeIfDue(Timestamps.toEpochMillis(hour.plusMinutes(61)));
+
+        assertThat(Timestamps.fromEpochMillis(window.from())).isEqualTo(hour);
+        assertThat(Timestamps.fromEpochMillis(window.to())).isEqualTo(hour.plusHours(1));
+        assertThat(window.points()).extracting(SeriesPoint::getTimestamp)
+                .containsExactly(hour, hour.plusMinutes(30));
+        assertThat(window.points()).extracting(SeriesPoint::getCount).containsExactly(2, 1);
+        assertThat(window.points().getFirst().getMax()).isEqualTo(300);
+    }
+
+    @Test
+    void readingsWithoutTimestampUseTheSameClock() {
+        long now = Timestamps.nowEpochMillis();
+        WindowedStream stream = new WindowedStream(
+                new WindowedStream.Spec(HOUR, ReadingChannel.POWER, Downsampler.Method.RAW, 1), now);
+
+        stream.add(reading(null, 42));
+        WindowedStream.Window window = stream.closeIfDue(now + HOUR);
+
+        assertThat(window.points()).singleElement().satisfies(point -> {
+            assertThat(point.getValue()).isEqualTo(42);
+            assertThat(Timestamps.toEpochMillis(point.getTimestamp())).isBetween(window.from(), window.to() - 1);
+        });
+    }
+}
@@ -0,0 +1,100 @@
+package com.ecoenergy.eco_energy.report.controller;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.analytics.repository.AnomalyRepository;
+import com.ecoenergy.eco_energy.config.ReportConfig;
+import com.ecoenergy.eco_energy.device.service.DeviceService;
+import com.ecoenergy.eco_energy.report.service.ColumnarExportService;
+import com.ecoenergy.eco_energy.report.service.ExportJobService;
+import com.ecoenergy.eco_energy.report.service.ReportCache;
+import com.ecoenergy.eco_energy.report.service.ReportService;
+import com.ecoenergy.eco_energy.timeseries.service.ReadingStore;
+import com.ecoenergy.eco_energy.timeseries.service.RollupService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReportControllerTest {
+    private static final String LABEL = "meter-1";
+    private static final LocalDate FROM = LocalDate.of(2025, 3, 1);
+    private static final LocalDate TO = LocalDate.of(2025, 3, 2);
+
+    private final ReadingStore readingStore = mock(ReadingStore.class);
+    private final List<Reading> history = new ArrayList<>();
+    private final AtomicInteger bytesWrittenWhenStoreCompleted = new AtomicInteger(-1);
+    private ReportController controller;
+
+    @BeforeEach
+    void setUp() {
+        // Diez segundos entre lecturas desde el dia anterior hasta el siguiente al rango, incluida la medianoche final
+        for (LocalDateTime t = FROM.minusDays(1).atStartOfDay(); !t.isAfter(TO.plusDays(2).atStartOfDay()); t = t.plusSeconds(10)) {
+            history.add(new Reading(LABEL, 220, 1, 220, 30, t));
+        }
+
+        ReportService reportService = new ReportService(readingStore, mock(AnomalyRepository.class),
+                mock(DeviceService.class), mock(RollupService.class), new ReportConfig(), mock(ReportCache.class));
+        controller = new ReportController(reportService, readingStore, mock(ColumnarExportService.class),
+                mock(ExportJobService.class));
+    }
+
+    @Test
+    void csvExportIsStreamedAndStopsBeforeTheNextDay() throws IOException {
+        ByteArrayOutputStream out = streamFrom(false);
+
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertThat(lines.get(0) + "\n").isEqualTo(ReportService.CSV_HEADER);
+        assertThat(lines).hasSize(1 + 2 * 24 * 360);
+        assertThat(lines.get(1)).contains(FROM.atStartOfDay().toString());
+        assertThat(lines.get(lines.size() - 1)).contains(TO.atTime(23, 59, 50).toString());
+        // Cuando el almacen termina, la mayor parte del archivo ya se escribio en la respuesta
+        assertThat(bytesWrittenWhenStoreCompleted.get()).isGreaterThan(out.size() / 2);
+    }
+
+    @Test
+    void gzipExportContainsTheSameCsv() throws IOException {
+        byte[] plain = streamFrom(false).toByteArray();
+        byte[] compressed = streamFrom(true).toByteArray();
+
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertThat(in.readAllBytes()).isEqualTo(plain);
+        }
+        assertThat(compressed.length).isLessThan(plain.length);
+    }
+
+    private ByteArrayOutputStream streamFrom(boolean gzip) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // El almacen trata el limite superior como inclusivo
+        when(readingStore.streamRange(eq(LABEL), any(), any())).thenAnswer(invocation -> {
+            LocalDateTime from = invocation.getArgument(1);
+            LocalDateTime to = invocation.getArgument(2);
+            return Flux.fromIterable(history)
+                    .filter(reading -> !reading.getTimestamp().isBefore(from) && !reading.getTimestamp().isAfter(to))
+                    .doOnComplete(() -> bytesWrittenWhenStoreCompleted.set(out.size()));
+        });
+
+        ResponseEntity<StreamingResponseBody> response = controller.exportToCsv(LABEL, FROM, TO, gzip);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE)).isEqualTo(gzip ? "application/gzip" : "text/csv");
+        response.getBody().writeTo(out);
+        return out;
+    }
+}
@@ -0,0 +1,144 @@
+package com.ecoenergy.eco_energy.report.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.analytics.repository.AnomalyRepository;
+import com.ecoenergy.eco_energy.config.ReportConfig;
+import com.ecoenergy.eco_energy.timeseries.service.ReadingStore;
+import com.ecoenergy.eco_energy.timeseries.service.SystemZone;
+import com.ecoenergy.eco_energy.timeseries.service.Timestamps;
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.TimeStampMilliTZVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.apache.arrow.vector.ipc.SeekableReadChannel;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.util.ByteArrayReadableSeekableByteChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest(properties = "spring.datasource.url=jdbc:h2:mem:export;NON_KEYWORDS=VALUE")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ColumnarExportServiceTest {
+    private static final LocalDateTime FROM = LocalDateTime.of(2025, 3, 1, 0, 0);
+    private static final LocalDateTime TO = FROM.plusDays(1);
+
+    @Autowired
+    private AnomalyRepository anomalyRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown() {
+        anomalyRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void anomaliesAreExportedPageByPageInsideHalfOpenRange() throws IOException {
+        UUID deviceId = UUID.randomUUID();
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            // Varias anomalias por instante para que el keyset tambien dependa del id
+            rows.add(row(deviceId, i, FROM.plusMinutes(i / 3)));
+        }
+        rows.add(row(deviceId, -1, FROM.minusNanos(1000)));
+        rows.add(row(deviceId, -1, TO));
+        // Con JDBC para fijar detected_at (la entidad lo llena con @CreationTimestamp)
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO anomalies (id, device_id, anomaly_type, value, detected_at) VALUES (?, ?, ?, ?, ?)", rows);
+
+        ReportConfig config = new ReportConfig();
+        config.setColumnarBatchRows(100);
+        ColumnarExportService exportService =
+                new ColumnarExportService(mock(ReadingStore.class), anomalyRepository, config);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long exported;
+        try {
+            exported = exportService.writeAnomalies(deviceId, FROM, TO, out);
+        } finally {
+            exportService.close();
+        }
+
+        assertThat(exported).isEqualTo(250);
+        List<Long> timestamps = new ArrayList<>();
+        int batches = 0;
+        try (BufferAllocator allocator = new RootAllocator();
+             SeekableReadChannel channel = new SeekableReadChannel(
+                     new ByteArrayReadableSeekableByteChannel(out.toByteArray()));
+             ArrowFileReader reader = new ArrowFileReader(channel, allocator, CommonsCompressionFactory.INSTANCE)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            while (reader.loadNextBatch()) {
+                batches++;
+                TimeStampMilliTZVector detectedAt = (TimeStampMilliTZVector) root.getVector("detected_at");
+                for (int i = 0; i < root.getRowCount(); i++) {
+                    timestamps.add(detectedAt.get(i));
+                }
+            }
+            assertThat(reader.getMetaData()).containsEntry("row_count", "250");
+        }
+
+        assertThat(batches).isEqualTo(3);
+        assertThat(timestamps).hasSize(250).isSorted()
+                .allSatisfy(t -> assertThat(t).isBetween(
+                        Timestamps.toEpochMillis(FROM), Timestamps.toEpochMillis(TO) - 1));
+    }
+
+    @Test
+    void readingTimestampsAreUtcInstantsOfTheLocalReadingTime() throws Throwable {
+        SystemZone.run(SystemZone.NON_UTC, () -> {
+            LocalDateTime readAt = FROM.plusHours(1);
+            ReadingStore readingStore = mock(ReadingStore.class);
+            when(readingStore.streamRange(eq("meter-1"), any(), any()))
+                    .thenReturn(Flux.just(new Reading("meter-1", 220, 1, 220, 30, readAt)));
+            ColumnarExportService exportService =
+                    new ColumnarExportService(readingStore, anomalyRepository, new ReportConfig());
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                exportService.writeReadings("meter-1", FROM, TO, out);
+            } finally {
+                exportService.close();
+            }
+
+            try (BufferAllocator allocator = new RootAllocator();
+                 SeekableReadChannel channel = new SeekableReadChannel(
+                         new ByteArrayReadableSeekableByteChannel(out.toByteArray()));
+                 ArrowFileReader reader = new ArrowFileReader(channel, allocator, CommonsCompressionFactory.INSTANCE)) {
+                VectorSchemaRoot root = reader.getVectorSchemaRoot();
+                assertThat(reader.loadNextBatch()).isTrue();
+                TimeStampMilliTZVector timestamps = (TimeStampMilliTZVector) root.getVector("timestamp");
+                assertThat(((ArrowType.Timestamp) timestamps.getField().getType()).getTimezone()).isEqualTo("UTC");
+                // El instante real de la hora local, no la hora local leida como UTC
+                assertThat(timestamps.get(0)).isEqualTo(readAt.atZone(SystemZone.NON_UTC).toInstant().toEpochMilli());
+            }
+        });
+    }
+
+    private static Object[] row(UUID deviceId, double value, LocalDateTime detectedAt) {
+        return new Object[]{UUID.randomUUID(), deviceId, "Z-SCORE", value, detectedAt};
+    }
+}
@@ -0,0 +1,133 @@
+package com.ecoenergy.eco_energy.report.service;
+
+import com.ecoenergy.eco_energy.config.ReportConfig;
+import com.ecoenergy.eco_energy.device.model.Device;
+import com.ecoenergy.eco_energy.device.service.DeviceService;
+import com.ecoenergy.eco_energy.report.dto.ExportJobRequest;
+import com.ecoenergy.eco_energy.report.dto.ExportJobStatus;
+import com.ecoenergy.eco_energy.timeseries.service.ReadingStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ExportJobServiceTest {
+    private static final LocalDate DAY = LocalDate.of(2025, 3, 1);
+
+    private final ReportService reportService = mock(ReportService.class);
+    private final ReadingStore readingStore = mock(ReadingStore.class);
+    private final DeviceService deviceService = mock(DeviceService.class);
+    private final ReportConfig config = new ReportConfig();
+    private ExportJobService exportJobService;
+
+    @TempDir
+    Path exportDirectory;
+
+    @BeforeEach
+    void setUp() {
+        config.setExportDirectory(exportDirectory);
+        when(readingStore.streamRange(anyString(), any(), any())).thenReturn(Flux.empty());
+        exportJobService = new ExportJobService(reportService, readingStore, deviceService, config);
+    }
+
+    private UUID device(String label) {
+        Device device = new Device();
+        device.setId(UUID.randomUUID());
+        device.setUbidotsLabel(label);
+        when(deviceService.getDevice(device.getId())).thenReturn(Optional.of(device));
+        return device.getId();
+    }
+
+    @Test
+    void labelsThatSanitizeToTheSameNameGetTheirOwnZipEntries() throws IOException, InterruptedException {
+        List<UUID> devices = List.of(device("meter.1"), device("meter_1"), device("meter/1"));
+
+        ExportJobStatus submitted = exportJobService.submit(new ExportJobRequest(devices, DAY, DAY));
+        Path archive = awaitArchive(submitted);
+
+        List<String> entries = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(archive))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.add(entry.getName());
+            }
+        }
+        assertThat(entries).containsExactlyInAnyOrder(
+                "energy_data_meter_1_2025-03-01_to_2025-03-01.csv",
+                "energy_data_meter_1_2025-03-01_to_2025-03-01_2.csv",
+                "energy_data_meter_1_2025-03-01_to_2025-03-01_3.csv");
+    }
+
+    @Test
+    void exportReadsWholeDaysWithoutTheNextMidnight() throws InterruptedException {
+        ExportJobStatus submitted = exportJobService.submit(new ExportJobRequest(List.of(device("meter")), DAY, DAY));
+        awaitArchive(submitted);
+
+        // ReadingStore incluye el limite superior
+        verify(readingStore).streamRange("meter", DAY.atStartOfDay(), DAY.plusDays(1).atStartOfDay().minusNanos(1));
+    }
+
+    @Test
+    void unknownDeviceIsRejected() {
+        ExportJobRequest request = new ExportJobRequest(List.of(UUID.randomUUID()), DAY, DAY);
+        assertThatThrownBy(() -> exportJobService.submit(request)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void jobsBeyondTheLimitAreRejectedUntilOneFinishes() throws Exception {
+        config.setExportMaxActiveJobs(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(reportService.writeCsv(any(), any())).thenAnswer(invocation -> {
+            release.await();
+            return 0L;
+        });
+        ExportJobRequest request = new ExportJobRequest(List.of(device("meter")), DAY, DAY);
+
+        ExportJobStatus first = exportJobService.submit(request);
+        assertThatThrownBy(() -> exportJobService.submit(request)).isInstanceOf(RejectedExecutionException.class);
+
+        release.countDown();
+        awaitArchive(first);
+        // El cupo se libera al terminar la limpieza del trabajo, un poco despues del archivo
+        for (int attempt = 0; ; attempt++) {
+            try {
+                exportJobService.submit(request);
+                break;
+            } catch (RejectedExecutionException e) {
+                assertThat(attempt).isLessThan(100);
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private Path awaitArchive(ExportJobStatus job) throws InterruptedException {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            Optional<Path> archive = exportJobService.getArchive(job.getJobId());
+            if (archive.isPresent()) {
+                return archive.get();
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("Export job " + job.getJobId() + " did not finish");
+    }
+}
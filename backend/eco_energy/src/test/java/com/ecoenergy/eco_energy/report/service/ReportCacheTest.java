@@ -0,0 +1,103 @@
+package com.ecoenergy.eco_energy.report.service;
+
+import com.ecoenergy.eco_energy.config.ReportConfig;
+import com.ecoenergy.eco_energy.device.model.Device;
+import com.ecoenergy.eco_energy.device.service.DeviceService;
+import com.ecoenergy.eco_energy.report.dto.DailyReport;
+import com.ecoenergy.eco_energy.timeseries.dto.RollupsSavedEvent;
+import com.ecoenergy.eco_energy.ubidots.service.UbidotsUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReportCacheTest {
+    private static final UUID DEVICE_ID = UUID.randomUUID();
+    private static final LocalDate LAST_WEEK = LocalDate.now().minusDays(7);
+
+    private final ReportConfig config = new ReportConfig();
+    private final DeviceService deviceService = mock(DeviceService.class);
+    private final AtomicInteger builds = new AtomicInteger();
+
+    private ReportCache newCache() {
+        return new ReportCache(config, deviceService, new SimpleMeterRegistry());
+    }
+
+    private DailyReport daily(ReportCache cache) {
+        return cache.get(ReportCache.Type.DAILY, DEVICE_ID, LAST_WEEK, LAST_WEEK, build(),
+                report -> report.toBuilder().build());
+    }
+
+    private Supplier<DailyReport> build() {
+        return () -> DailyReport.builder()
+                .deviceId(DEVICE_ID.toString())
+                .date(LAST_WEEK)
+                .totalConsumption(builds.incrementAndGet())
+                .build();
+    }
+
+    @Test
+    void closedPeriodsExpire() throws InterruptedException {
+        config.setCacheClosedPeriodTtl(Duration.ofMillis(50));
+        ReportCache cache = newCache();
+
+        daily(cache);
+        daily(cache);
+        assertThat(builds).hasValue(1);
+
+        Thread.sleep(100);
+        daily(cache);
+        assertThat(builds).hasValue(2);
+    }
+
+    @Test
+    void callersGetCopiesOfTheCachedReport() {
+        ReportCache cache = newCache();
+
+        daily(cache).setTotalConsumption(-1);
+
+        assertThat(daily(cache).getTotalConsumption()).isEqualTo(1);
+    }
+
+    @Test
+    void failedBuildsAreNotCached() {
+        ReportCache cache = newCache();
+
+        assertThatThrownBy(() -> cache.get(ReportCache.Type.DAILY, DEVICE_ID, LAST_WEEK, LAST_WEEK,
+                () -> {
+                    throw new UbidotsUnavailableException("down", null);
+                }, report -> report)).isInstanceOf(UbidotsUnavailableException.class);
+
+        assertThat(daily(cache).getTotalConsumption()).isEqualTo(1);
+    }
+
+    @Test
+    void savedRollupsInvalidateReportsCoveringTheirDays() {
+        Device device = new Device();
+        device.setId(DEVICE_ID);
+        when(deviceService.getDeviceByUbidotsLabel("meter-1")).thenReturn(Optional.of(device));
+        ReportCache cache = newCache();
+        daily(cache);
+
+        cache.onRollupsSaved(new RollupsSavedEvent(Map.of("meter-1", Set.of(LAST_WEEK.minusDays(1)))));
+        daily(cache);
+        assertThat(builds).hasValue(1);
+
+        // Lectura tardia de un dia cerrado
+        cache.onRollupsSaved(new RollupsSavedEvent(Map.of("meter-1", Set.of(LAST_WEEK))));
+        daily(cache);
+        assertThat(builds).hasValue(2);
+    }
+}
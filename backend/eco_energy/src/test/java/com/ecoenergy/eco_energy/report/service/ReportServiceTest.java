@@ -0,0 +1,162 @@
+package com.ecoenergy.eco_energy.report.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.analytics.repository.AnomalyRepository;
+import com.ecoenergy.eco_energy.config.ReportConfig;
+import com.ecoenergy.eco_energy.device.model.Device;
+import com.ecoenergy.eco_energy.device.service.DeviceService;
+import com.ecoenergy.eco_energy.report.dto.DailyReport;
+import com.ecoenergy.eco_energy.report.dto.DeviceKpis;
+import com.ecoenergy.eco_energy.timeseries.repository.ReadingRollupRepository;
+import com.ecoenergy.eco_energy.timeseries.service.ReadingStore;
+import com.ecoenergy.eco_energy.timeseries.service.RollupService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+class ReportServiceTest {
+    private static final String LABEL = "meter-1";
+    private static final LocalDate FROM = LocalDate.of(2025, 3, 1);
+    private static final LocalDate TO = LocalDate.of(2025, 3, 5);
+    //El almacen (y con el los agregados) empezo a mitad del 3 de marzo
+    private static final LocalDateTime STORE_START = LocalDateTime.of(2025, 3, 3, 10, 0);
+
+    private final ReadingStore readingStore = mock(ReadingStore.class);
+    private final DeviceService deviceService = mock(DeviceService.class);
+    private final ReportConfig config = new ReportConfig();
+    private final RollupService rollupService =
+            new RollupService(mock(ReadingRollupRepository.class), mock(ApplicationEventPublisher.class));
+    private final List<Reading> history = new ArrayList<>();
+    private ReportService reportService;
+    private UUID deviceId;
+
+    @BeforeEach
+    void setUp() {
+        Device device = new Device();
+        device.setId(UUID.randomUUID());
+        device.setUbidotsLabel(LABEL);
+        deviceId = device.getId();
+        when(deviceService.getDevice(deviceId)).thenReturn(Optional.of(device));
+
+        // Cada seis horas, con potencia distinta por dia; solo lo posterior a STORE_START tiene agregados
+        for (LocalDateTime t = FROM.atStartOfDay(); t.isBefore(TO.plusDays(1).atStartOfDay()); t = t.plusHours(6)) {
+            Reading reading = new Reading(LABEL, 220, 1, 100 * t.getDayOfMonth(), 30, t);
+            history.add(reading);
+            if (!t.isBefore(STORE_START)) {
+                rollupService.record(reading);
+            }
+        }
+        // El almacen sirve el rango completo: Ubidots antes de STORE_START y lo local despues (inclusivo)
+        when(readingStore.streamRange(eq(LABEL), any(), any())).thenAnswer(invocation -> {
+            LocalDateTime from = invocation.getArgument(1);
+            LocalDateTime to = invocation.getArgument(2);
+            return Flux.fromIterable(history)
+                    .filter(reading -> !reading.getTimestamp().isBefore(from) && !reading.getTimestamp().isAfter(to));
+        });
+
+        reportService = new ReportService(readingStore, mock(AnomalyRepository.class), deviceService,
+                rollupService, config, new ReportCache(config, deviceService, new SimpleMeterRegistry()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        reportService.close();
+    }
+
+    @Test
+    void kpisCombineRollupsWithReadingsForDaysTheyDoNotCover() {
+        DeviceKpis kpis = reportService.getDeviceStatistics(deviceId, FROM, TO);
+
+        // 4 lecturas por dia de 100, 200, 300, 400 y 500
+        assertThat(kpis.getAvgPower()).isEqualTo(300.0);
+        assertThat(kpis.getCurrentPower()).isEqualTo(500.0);
+        assertThat(kpis.getUptimeHours()).isEqualTo(20);
+        // Solo los dias sin agregado completo se recorren lectura por lectura
+        verify(readingStore).streamRange(LABEL, FROM.atStartOfDay(), LocalDate.of(2025, 3, 4).atStartOfDay().minusNanos(1));
+        verifyNoMoreInteractions(readingStore);
+    }
+
+    @Test
+    void dayWhenTheStoreStartedIsReadInFull() {
+        DailyReport started = reportService.generateDailyReport(deviceId, STORE_START.toLocalDate());
+        DailyReport before = reportService.generateDailyReport(deviceId, FROM);
+        DailyReport covered = reportService.generateDailyReport(deviceId, TO);
+
+        assertThat(started.getTotalConsumption()).isEqualTo(4 * 300.0);
+        assertThat(before.getTotalConsumption()).isEqualTo(4 * 100.0);
+        assertThat(covered.getTotalConsumption()).isEqualTo(4 * 500.0);
+    }
+
+    @Test
+    void slowDeviceIsReportedUnavailableWhileTheOthersArrive() throws InterruptedException {
+        config.setKpiConcurrency(2);
+        // Holgura para el primer calculo en frio de los dispositivos rapidos; el lento no termina nunca
+        config.setKpiTimeout(Duration.ofSeconds(2));
+        Device slow = activeDevice("meter-slow");
+        List<Device> devices = List.of(slow, activeDevice("meter-2"), activeDevice("meter-3"), activeDevice("meter-4"));
+        when(deviceService.getAllActiveDevices()).thenReturn(devices);
+
+        Map<String, String> threads = new ConcurrentHashMap<>();
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(readingStore.streamRange(any(), any(), any())).thenAnswer(invocation -> {
+            String label = invocation.getArgument(0);
+            threads.put(label, Thread.currentThread().getName());
+            if (label.equals("meter-slow")) {
+                try {
+                    Thread.sleep(60_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+            }
+            return Flux.just(new Reading(label, 220, 1, 100, 30, LocalDate.now().atStartOfDay()));
+        });
+
+        long start = System.nanoTime();
+        List<DeviceKpis> kpis = reportService.streamSystemKpis().collectList().block(Duration.ofSeconds(10));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        Map<String, String> statusById = kpis.stream()
+                .collect(Collectors.toMap(DeviceKpis::getDeviceId, DeviceKpis::getStatus));
+        assertThat(statusById).hasSize(4);
+        assertThat(statusById.get(slow.getId().toString())).isEqualTo("Unavailable");
+        assertThat(statusById).containsValue("Normal").doesNotContainValue("No Data");
+        assertThat(statusById.values().stream().filter("Unavailable"::equals)).hasSize(1);
+        assertThat(elapsedMillis).isLessThan(5_000);
+        // El calculo bloqueado se interrumpe al vencer el tiempo y todo corre en los hilos limitados
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(threads.values()).allMatch(thread -> thread.startsWith("kpi"));
+    }
+
+    private Device activeDevice(String label) {
+        Device device = new Device();
+        device.setId(UUID.randomUUID());
+        device.setUbidotsLabel(label);
+        when(deviceService.getDevice(device.getId())).thenReturn(Optional.of(device));
+        return device;
+    }
+}
@@ -0,0 +1,36 @@
+package com.ecoenergy.eco_energy.simulator.service;
+
+import com.ecoenergy.eco_energy.config.SimulatorConfig;
+import com.ecoenergy.eco_energy.config.UbidotsConfig;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BenchmarkRunnerTest {
+
+    @Test
+    void benchmarkModeUsesLocalSinksByDefault() {
+        SimulatorConfig config = new SimulatorConfig();
+        assertThat(config.activeSinks().isUbidots()).isTrue();
+
+        config.getBenchmark().setEnabled(true);
+        SimulatorConfig.Sinks sinks = config.activeSinks();
+        assertThat(sinks.isStore()).isFalse();
+        assertThat(sinks.isAnomalyDetection()).isFalse();
+        assertThat(sinks.isUbidots()).isFalse();
+        assertThat(sinks.isWebSocket()).isFalse();
+    }
+
+    @Test
+    void ubidotsSinkIsOnlyAllowedAgainstAMock() {
+        UbidotsConfig ubidotsConfig = new UbidotsConfig();
+        SimulatorConfig.Sinks sinks = SimulatorConfig.Sinks.localOnly();
+        assertThat(BenchmarkRunner.targetsProductionUbidots(sinks, ubidotsConfig)).isFalse();
+
+        sinks.setUbidots(true);
+        assertThat(BenchmarkRunner.targetsProductionUbidots(sinks, ubidotsConfig)).isTrue();
+
+        ubidotsConfig.setApiUrl("http://localhost:8089/api/v1.6");
+        assertThat(BenchmarkRunner.targetsProductionUbidots(sinks, ubidotsConfig)).isFalse();
+    }
+}
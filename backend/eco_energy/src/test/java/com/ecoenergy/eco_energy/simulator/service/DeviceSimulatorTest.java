@@ -0,0 +1,127 @@
+package com.ecoenergy.eco_energy.simulator.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.analytics.service.OnlineAnomalyDetector;
+import com.ecoenergy.eco_energy.config.SimulatorConfig;
+import com.ecoenergy.eco_energy.device.model.Device;
+import com.ecoenergy.eco_energy.device.service.DeviceService;
+import com.ecoenergy.eco_energy.notification.websocket.EnergyDataHandler;
+import com.ecoenergy.eco_energy.timeseries.service.ReadingStore;
+import com.ecoenergy.eco_energy.ubidots.service.UbidotsService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DeviceSimulatorTest {
+    private final DeviceService deviceService = mock(DeviceService.class);
+    private final ReadingStore readingStore = mock(ReadingStore.class);
+    private final SimulatorConfig config = new SimulatorConfig();
+    private DeviceSimulator simulator;
+
+    private final Device a = device("meter-a");
+    private final Device b = device("meter-b");
+    private final Device c = device("meter-c");
+
+    @BeforeEach
+    void setUp() {
+        config.setTickInterval(Duration.ofMillis(50));
+        config.setShards(2);
+        // Solo corre el refresco inicial; los siguientes los dispara la prueba
+        config.setRefreshInterval(Duration.ofHours(1));
+        config.setAnomalyProbability(0);
+        simulator = new DeviceSimulator(deviceService, mock(UbidotsService.class), mock(EnergyDataHandler.class),
+                readingStore, mock(OnlineAnomalyDetector.class), config, new LatencyRecorder(), new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        simulator.stop();
+    }
+
+    private static Device device(String label) {
+        Device device = new Device();
+        device.setId(UUID.randomUUID());
+        device.setName(label);
+        device.setUbidotsLabel(label);
+        device.setType("motor");
+        device.setStatus(Device.DeviceStatus.ACTIVE);
+        return device;
+    }
+
+    private void awaitSimulated(Set<UUID> ids) throws InterruptedException {
+        for (int attempt = 0; !simulator.simulatedDeviceIds().equals(ids); attempt++) {
+            assertThat(attempt).isLessThan(100);
+            Thread.sleep(20);
+        }
+    }
+
+    private void verifyTicking(String label) {
+        verify(readingStore, timeout(1000).atLeastOnce()).append(argThat((Reading reading) -> label.equals(reading.getDeviceId())));
+    }
+
+    @Test
+    void refreshAddsNewDevicesAndRemovesInactiveOnes() throws Exception {
+        when(deviceService.getAllActiveDevices()).thenReturn(List.of(a, b));
+        simulator.start();
+        awaitSimulated(Set.of(a.getId(), b.getId()));
+        verifyTicking("meter-a");
+        verifyTicking("meter-b");
+
+        when(deviceService.getAllActiveDevices()).thenReturn(List.of(b, c));
+        simulator.refreshDevices();
+
+        assertThat(simulator.simulatedDeviceIds()).containsExactlyInAnyOrder(b.getId(), c.getId());
+        verifyTicking("meter-c");
+        // Una lectura de meter-a ya en curso al cancelar puede terminar; despues no hay mas
+        Thread.sleep(100);
+        clearInvocations(readingStore);
+        Thread.sleep(200);
+        verify(readingStore, never()).append(argThat((Reading reading) -> "meter-a".equals(reading.getDeviceId())));
+        verify(readingStore, atLeastOnce()).append(argThat((Reading reading) -> "meter-b".equals(reading.getDeviceId())));
+    }
+
+    @Test
+    void refreshUpdatesTheDataOfScheduledDevices() throws Exception {
+        when(deviceService.getAllActiveDevices()).thenReturn(List.of(a));
+        simulator.start();
+        awaitSimulated(Set.of(a.getId()));
+
+        Device renamed = device("meter-a2");
+        renamed.setId(a.getId());
+        when(deviceService.getAllActiveDevices()).thenReturn(List.of(renamed));
+        simulator.refreshDevices();
+
+        // La misma tarea sigue corriendo, ahora con los datos nuevos
+        assertThat(simulator.simulatedDeviceIds()).containsExactly(a.getId());
+        verifyTicking("meter-a2");
+    }
+
+    @Test
+    void virtualDevicesAreScheduledWithoutTheDatabase() throws Exception {
+        config.setVirtualDevices(3);
+        when(deviceService.getAllActiveDevices()).thenReturn(List.of());
+        simulator.start();
+
+        awaitSimulated(Set.of(
+                ReadingGenerator.virtualDevice("virtual-", "motor", 0).getId(),
+                ReadingGenerator.virtualDevice("virtual-", "pump", 1).getId(),
+                ReadingGenerator.virtualDevice("virtual-", "compressor", 2).getId()));
+        verifyTicking("virtual-00002");
+    }
+}
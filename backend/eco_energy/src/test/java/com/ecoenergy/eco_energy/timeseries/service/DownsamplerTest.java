@@ -0,0 +1,104 @@
+package com.ecoenergy.eco_energy.timeseries.service;
+
+import com.ecoenergy.eco_energy.timeseries.dto.SeriesPoint;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DownsamplerTest {
+    private static final long FROM = Timestamps.toEpochMillis(LocalDateTime.of(2025, 3, 1, 0, 0));
+
+    @Test
+    void bucketsKeepMinMaxAverageAndSkipEmptyOnes() {
+        Downsampler.Buckets buckets = new Downsampler.Buckets(FROM, FROM + 1000, 4);
+        buckets.add(FROM, 10);
+        buckets.add(FROM + 100, 30);
+        buckets.add(FROM + 800, 5);
+        // Fuera del rango: se cuentan en los buckets de los extremos
+        buckets.add(FROM - 50, 20);
+        buckets.add(FROM + 5000, 7);
+
+        List<SeriesPoint> points = buckets.toPoints();
+
+        assertThat(points).extracting(point -> Timestamps.toEpochMillis(point.getTimestamp()))
+                .containsExactly(FROM, FROM + 750);
+        assertThat(points.getFirst()).satisfies(point -> {
+            assertThat(point.getMin()).isEqualTo(10);
+            assertThat(point.getMax()).isEqualTo(30);
+            assertThat(point.getValue()).isEqualTo(20);
+            assertThat(point.getCount()).isEqualTo(3);
+        });
+        assertThat(points.getLast()).satisfies(point -> {
+            assertThat(point.getMin()).isEqualTo(5);
+            assertThat(point.getMax()).isEqualTo(7);
+            assertThat(point.getCount()).isEqualTo(2);
+        });
+    }
+
+    @Test
+    void lttbKeepsEndpointsAndPeaks() {
+        int size = 1000;
+        long[] timestamps = new long[size];
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            timestamps[i] = FROM + i * 1000L;
+            values[i] = Math.sin(i / 50.0);
+        }
+        values[333] = 25;
+        values[777] = -25;
+
+        List<SeriesPoint> points = Downsampler.lttb(timestamps, values, size, 50);
+
+        assertThat(points).hasSize(50);
+        assertThat(points.getFirst().getTimestamp()).isEqualTo(Timestamps.fromEpochMillis(timestamps[0]));
+        assertThat(points.getLast().getTimestamp()).isEqualTo(Timestamps.fromEpochMillis(timestamps[size - 1]));
+        assertThat(points).extracting(SeriesPoint::getTimestamp).isSorted();
+        assertThat(points).extracting(SeriesPoint::getValue).contains(25.0, -25.0);
+    }
+
+    @Test
+    void lttbReturnsShortSeriesUnchanged() {
+        long[] timestamps = {FROM, FROM + 1000, FROM + 2000, FROM + 3000};
+        double[] values = {1, 2, 3, 4};
+
+        assertThat(Downsampler.lttb(timestamps, values, 4, 10)).extracting(SeriesPoint::getValue)
+                .containsExactly(1.0, 2.0, 3.0, 4.0);
+        // Con menos de 3 puntos pedidos se conservan al menos el primero, el ultimo y uno intermedio
+        assertThat(Downsampler.lttb(timestamps, values, 4, 1)).hasSize(3);
+    }
+
+    @Test
+    void seriesDownsamplesWithTheRequestedMethod() {
+        Downsampler.Series series = new Downsampler.Series();
+        for (int i = 0; i < 600; i++) {
+            series.add(FROM + i * 100L, i);
+        }
+
+        assertThat(series.size()).isEqualTo(600);
+        assertThat(series.downsample(Downsampler.Method.RAW, FROM, FROM + 60_000, 10)).hasSize(600);
+        assertThat(series.downsample(Downsampler.Method.MINMAX, FROM, FROM + 60_000, 10)).hasSize(10)
+                .allSatisfy(point -> assertThat(point.getCount()).isEqualTo(60));
+        assertThat(series.downsample(Downsampler.Method.LTTB, FROM, FROM + 60_000, 10)).hasSize(10);
+    }
+
+    @Test
+    void pointsCarryTheLocalTimeOfTheReadings() throws Throwable {
+        SystemZone.run(SystemZone.NON_UTC, () -> {
+            LocalDateTime start = LocalDateTime.of(2025, 3, 1, 12, 0);
+            long from = Timestamps.toEpochMillis(start);
+            Downsampler.Series series = new Downsampler.Series();
+            for (int i = 0; i < 10; i++) {
+                series.add(from + i * 1000L, i);
+            }
+
+            // Mismas horas locales que las lecturas, sin el desfase de la zona
+            for (Downsampler.Method method : Downsampler.Method.values()) {
+                assertThat(series.downsample(method, from, from + 10_000, 5).getFirst().getTimestamp())
+                        .as(method.name()).isEqualTo(start);
+            }
+        });
+    }
+}
@@ -0,0 +1,88 @@
+package com.ecoenergy.eco_energy.timeseries.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.timeseries.model.ReadingRollup;
+import com.ecoenergy.eco_energy.timeseries.model.ReadingRollup.Granularity;
+import com.ecoenergy.eco_energy.timeseries.repository.ReadingRollupRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RollupServiceTest {
+    private static final String DEVICE = "device-1";
+
+    private final ReadingRollupRepository repository = mock(ReadingRollupRepository.class);
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private final RollupService rollupService = new RollupService(repository, eventPublisher);
+
+    private static Reading reading(LocalDateTime timestamp) {
+        return new Reading(DEVICE, 120, 1, 120, 30, timestamp, 0);
+    }
+
+    private List<ReadingRollup> savedDays() {
+        List<ReadingRollup> saved = new ArrayList<>();
+        doAnswer(invocation -> {
+            ReadingRollup rollup = invocation.getArgument(0);
+            if (rollup.getGranularity() == Granularity.DAY) {
+                saved.add(new ReadingRollup(rollup.getDeviceId(), rollup.getGranularity(), rollup.getBucketStart())
+                        .merge(rollup));
+            }
+            return rollup;
+        }).when(repository).save(any());
+        return saved;
+    }
+
+    @Test
+    void failedSaveIsRetriedOnNextFlush() {
+        LocalDateTime now = LocalDateTime.now();
+        rollupService.record(reading(now));
+
+        when(repository.save(any())).thenThrow(new DataAccessResourceFailureException("db down"));
+        rollupService.flush();
+
+        List<ReadingRollup> saved = savedDays();
+        rollupService.flush();
+
+        assertThat(saved).hasSize(1);
+        assertThat(saved.getFirst().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    void closedBucketIsReleasedOnlyAfterItIsSaved() {
+        LocalDateTime yesterday = LocalDate.now().minusDays(2).atTime(12, 0);
+        rollupService.record(reading(yesterday));
+
+        when(repository.save(any())).thenThrow(new DataAccessResourceFailureException("db down"));
+        rollupService.flush();
+        // Sigue en memoria aunque el dia ya cerro, porque no se pudo guardar
+        assertThat(rollupService.findDay(DEVICE, yesterday.toLocalDate())).get()
+                .extracting(ReadingRollup::getCount).isEqualTo(1L);
+
+        List<ReadingRollup> saved = savedDays();
+        rollupService.flush();
+        assertThat(saved).hasSize(1);
+
+        // Liberado: una lectura tardia continua desde lo guardado
+        when(repository.findByDeviceIdAndGranularityAndBucketStart(anyString(), eq(Granularity.DAY), any()))
+                .thenReturn(Optional.of(saved.getFirst()));
+        rollupService.record(reading(yesterday.plusMinutes(5)));
+        rollupService.flush();
+
+        assertThat(saved).hasSize(2);
+        assertThat(saved.getLast().getCount()).isEqualTo(2);
+    }
+}
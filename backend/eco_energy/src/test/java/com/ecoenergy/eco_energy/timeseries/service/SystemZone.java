@@ -0,0 +1,25 @@
+package com.ecoenergy.eco_energy.timeseries.service;
+
+import org.junit.jupiter.api.function.Executable;
+
+import java.time.ZoneId;
+import java.util.TimeZone;
+
+//Ejecuta una prueba con otra zona por defecto (la de las lecturas, ver Timestamps) y la restaura.
+//Con una zona distinta de UTC y un desfase de media hora cualquier conversion que asuma UTC se nota.
+public final class SystemZone {
+    public static final ZoneId NON_UTC = ZoneId.of("Asia/Kolkata");
+
+    private SystemZone() {
+    }
+
+    public static void run(ZoneId zone, Executable body) throws Throwable {
+        TimeZone previous = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone(zone));
+        try {
+            body.execute();
+        } finally {
+            TimeZone.setDefault(previous);
+        }
+    }
+}
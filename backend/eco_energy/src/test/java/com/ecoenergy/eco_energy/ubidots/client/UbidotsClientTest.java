@@ -0,0 +1,164 @@
+package com.ecoenergy.eco_energy.ubidots.client;
+
+import com.ecoenergy.eco_energy.config.UbidotsConfig;
+import com.ecoenergy.eco_energy.ubidots.dto.UbidotsValue;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UbidotsClientTest {
+    private static final Map<String, Object> PAYLOAD = Map.of("power", 120.0);
+
+    private MockWebServer server;
+    private UbidotsClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        client = newClient(testConfig(server));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    static UbidotsConfig testConfig(MockWebServer server) {
+        UbidotsConfig config = new UbidotsConfig();
+        config.setApiUrl(server.url("/api/v1.6").toString());
+        config.setToken("test-token");
+        config.getResilience().setMaxRetries(2);
+        config.getResilience().setRetryBackoff(Duration.ofMillis(10));
+        config.getResilience().setMaxRetryBackoff(Duration.ofMillis(50));
+        config.getResilience().setSlidingWindowSize(4);
+        config.getResilience().setMinimumNumberOfCalls(4);
+        config.getResilience().setOpenStateWait(Duration.ofMinutes(1));
+        config.getHttp().setResponseTimeout(Duration.ofSeconds(2));
+        return config;
+    }
+
+    static UbidotsClient newClient(UbidotsConfig config) {
+        return new UbidotsClient(config.ubidotsWebClient(),
+                config.ubidotsCircuitBreaker(new SimpleMeterRegistry()), config);
+    }
+
+    @Test
+    void serverErrorsAndThrottlingAreRetried() throws InterruptedException {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(429));
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        assertThat(client.sendDataDevice("meter-1", PAYLOAD).block()).isEqualTo("{}");
+        assertThat(server.getRequestCount()).isEqualTo(3);
+        assertThat(server.takeRequest().getPath()).isEqualTo("/api/v1.6/devices/meter-1");
+    }
+
+    @Test
+    void clientErrorsAreNotRetried() {
+        server.enqueue(new MockResponse().setResponseCode(400));
+
+        assertThatThrownBy(() -> client.sendDataDevice("meter-1", PAYLOAD).block())
+                .isInstanceOf(WebClientResponseException.BadRequest.class);
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    void retriesStopAfterMaxRetries() {
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setResponseCode(500));
+        }
+
+        assertThatThrownBy(() -> client.sendDataDevice("meter-1", PAYLOAD).block())
+                .isInstanceOf(WebClientResponseException.InternalServerError.class);
+        assertThat(server.getRequestCount()).isEqualTo(3);
+    }
+
+    @Test
+    void breakerOpensAfterRepeatedFailuresAndStopsCallingUbidots() {
+        // 2 peticiones con 2 reintentos cada una: 6 intentos fallidos, mas que la ventana del breaker
+        for (int i = 0; i < 6; i++) {
+            server.enqueue(new MockResponse().setResponseCode(500));
+        }
+        for (int i = 0; i < 2 && client.isAvailable(); i++) {
+            assertThatThrownBy(() -> client.sendDataDevice("meter-1", PAYLOAD).block()).isNotNull();
+        }
+        assertThat(client.isAvailable()).isFalse();
+        int requests = server.getRequestCount();
+
+        assertThatThrownBy(() -> client.sendDataDevice("meter-1", PAYLOAD).block())
+                .isInstanceOf(CallNotPermittedException.class);
+        assertThat(server.getRequestCount()).isEqualTo(requests);
+    }
+
+    @Test
+    void clientErrorsDoNotOpenTheBreaker() {
+        for (int i = 0; i < 6; i++) {
+            server.enqueue(new MockResponse().setResponseCode(404));
+            assertThatThrownBy(() -> client.sendDataDevice("missing", PAYLOAD).block()).isNotNull();
+        }
+        assertThat(client.isAvailable()).isTrue();
+    }
+
+    //Pagina de Ubidots; next es la ruta de la siguiente pagina en el servidor de prueba o null
+    private MockResponse page(String next, long... timestamps) {
+        StringBuilder results = new StringBuilder();
+        for (long timestamp : timestamps) {
+            results.append(results.isEmpty() ? "" : ",")
+                    .append("{\"timestamp\": ").append(timestamp).append(", \"value\": ").append(timestamp / 10).append("}");
+        }
+        String nextUrl = next == null ? "null" : "\"" + server.url(next) + "\"";
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody("{\"count\": true, \"next\": " + nextUrl + ", \"results\": [" + results + "]}");
+    }
+
+    @Test
+    void readingsFollowTheNextCursorUntilTheLastPage() throws InterruptedException {
+        server.enqueue(page("/api/v1.6/devices/meter-1/power/values?page=2", 50, 40));
+        server.enqueue(page("/api/v1.6/devices/meter-1/power/values?page=3", 30, 20));
+        server.enqueue(page(null, 10));
+
+        List<UbidotsValue> values = client.getDeviceReadings("meter-1", "power", 0, 100).block();
+
+        assertThat(values).extracting(UbidotsValue::getTimestamp).containsExactly(50L, 40L, 30L, 20L, 10L);
+        assertThat(values).extracting(UbidotsValue::getValue).containsExactly(5.0, 4.0, 3.0, 2.0, 1.0);
+        assertThat(server.getRequestCount()).isEqualTo(3);
+        RecordedRequest first = server.takeRequest();
+        assertThat(first.getRequestUrl().encodedPath()).isEqualTo("/api/v1.6/devices/meter-1/power/values");
+        assertThat(first.getRequestUrl().queryParameter("start")).isEqualTo("0");
+        assertThat(first.getRequestUrl().queryParameter("end")).isEqualTo("100");
+        assertThat(first.getRequestUrl().queryParameter("page_size")).isEqualTo("1000");
+        assertThat(server.takeRequest().getPath()).isEqualTo("/api/v1.6/devices/meter-1/power/values?page=2");
+        assertThat(server.takeRequest().getPath()).isEqualTo("/api/v1.6/devices/meter-1/power/values?page=3");
+    }
+
+    @Test
+    void nextPageIsOnlyRequestedOnDemand() {
+        server.enqueue(page("/api/v1.6/devices/meter-1/power/values?page=2", 50, 40));
+        server.enqueue(page(null, 30));
+
+        List<UbidotsValue> firstPage = client.getDeviceReadingPages("meter-1", "power", 0, 100)
+                .take(1)
+                .single()
+                .block()
+                .getResults();
+
+        assertThat(firstPage).hasSize(2);
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,81 @@
+package com.ecoenergy.eco_energy.ubidots.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.config.UbidotsConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+//Escritura en el outbox desde un solo hilo. Objetivo: 100k lecturas/s en un nucleo.
+//Los segmentos rotan durante la medicion (2 de 64 MB), asi se incluye el costo de mapear los nuevos.
+//Ejecutar: mvn test-compile y luego java -cp target/test-classes:<classpath de test>
+//  com.ecoenergy.eco_energy.ubidots.service.ReadingOutboxAppendBenchmark
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(1)
+@Fork(1)
+public class ReadingOutboxAppendBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Outbox {
+        Path directory;
+        ReadingOutbox outbox;
+        Reading reading = new Reading("meter-1", 220.5, 1.2, 264.6, 31.5, LocalDateTime.of(2025, 3, 1, 12, 0));
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("outbox-benchmark");
+            UbidotsConfig config = new UbidotsConfig();
+            config.getOutbox().setDirectory(directory);
+            config.getOutbox().setSegmentBytes(64 * 1024 * 1024);
+            config.getOutbox().setMaxSegments(2);
+            outbox = new ReadingOutbox(config, new SimpleMeterRegistry());
+            outbox.open();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException, InterruptedException {
+            outbox.close();
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void append(Outbox state) {
+        state.outbox.append(state.reading);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ReadingOutboxAppendBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,155 @@
+package com.ecoenergy.eco_energy.ubidots.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.config.UbidotsConfig;
+import com.ecoenergy.eco_energy.timeseries.service.SystemZone;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReadingOutboxTest {
+    private static final LocalDateTime START = LocalDateTime.of(2025, 3, 1, 12, 0);
+    //Registro de "meter-1": 8 de cabecera + 42 fijos + 7 de etiqueta
+    private static final int RECORD_BYTES = 57;
+
+    private final List<ReadingOutbox> opened = new ArrayList<>();
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        for (ReadingOutbox outbox : opened) {
+            outbox.close();
+        }
+    }
+
+    private ReadingOutbox open(int segmentBytes, int maxSegments) throws IOException {
+        UbidotsConfig config = new UbidotsConfig();
+        config.getOutbox().setDirectory(directory);
+        config.getOutbox().setSegmentBytes(segmentBytes);
+        config.getOutbox().setMaxSegments(maxSegments);
+        ReadingOutbox outbox = new ReadingOutbox(config, new SimpleMeterRegistry());
+        outbox.open();
+        opened.add(outbox);
+        return outbox;
+    }
+
+    private static Reading reading(int i) {
+        return new Reading("meter-1", 220 + i, 1, i, 30, START.plusSeconds(i));
+    }
+
+    @Test
+    void uncommittedReadingsSurviveACrash() throws IOException {
+        ReadingOutbox outbox = open(64 * 1024, 8);
+        for (int i = 0; i < 10; i++) {
+            outbox.append(reading(i));
+        }
+        outbox.commit(outbox.read(4));
+
+        // Sin close(): el proceso se detiene con los segmentos mapeados tal como estan
+        ReadingOutbox recovered = open(64 * 1024, 8);
+
+        assertThat(recovered.pending()).isEqualTo(6);
+        List<Reading> readings = recovered.read(100).readings();
+        assertThat(readings).extracting(Reading::getPower).containsExactly(4.0, 5.0, 6.0, 7.0, 8.0, 9.0);
+        assertThat(readings.getFirst().getTimestamp()).isEqualTo(START.plusSeconds(4).truncatedTo(ChronoUnit.MILLIS));
+    }
+
+    @Test
+    void tornRecordIsDroppedAndWritingResumesAfterTheLastValidOne() throws IOException {
+        ReadingOutbox outbox = open(64 * 1024, 8);
+        for (int i = 0; i < 3; i++) {
+            outbox.append(reading(i));
+        }
+        // Caida a mitad de la escritura del tercer registro: su contenido no coincide con el CRC
+        try (FileChannel channel = FileChannel.open(onlySegment(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4}), 2L * RECORD_BYTES + 20);
+        }
+
+        ReadingOutbox recovered = open(64 * 1024, 8);
+        assertThat(recovered.pending()).isEqualTo(2);
+
+        recovered.append(reading(3));
+        assertThat(recovered.pending()).isEqualTo(3);
+        assertThat(recovered.read(100).readings()).extracting(Reading::getPower).containsExactly(0.0, 1.0, 3.0);
+    }
+
+    @Test
+    void checkpointWithoutSegmentsStartsFromTheNewSegment() throws IOException {
+        ReadingOutbox outbox = open(64 * 1024, 8);
+        for (int i = 0; i < 5; i++) {
+            outbox.append(reading(i));
+        }
+        outbox.commit(outbox.read(100));
+        Files.delete(onlySegment());
+
+        ReadingOutbox recovered = open(64 * 1024, 8);
+        recovered.append(reading(42));
+
+        assertThat(recovered.pending()).isEqualTo(1);
+        assertThat(recovered.read(100).readings()).extracting(Reading::getPower).containsExactly(42.0);
+    }
+
+    @Test
+    void pendingStaysExactWhenAnInFlightBatchLosesItsFirstSegment() throws IOException {
+        // 4 registros por segmento y como maximo 2 segmentos
+        ReadingOutbox outbox = open(4 * RECORD_BYTES, 2);
+        for (int i = 0; i < 6; i++) {
+            outbox.append(reading(i));
+        }
+        ReadingOutbox.Batch batch = outbox.read(6);
+        assertThat(batch.readings()).hasSize(6);
+
+        // El tercer segmento descarta el primero (4 lecturas) mientras el lote esta en vuelo
+        for (int i = 6; i < 9; i++) {
+            outbox.append(reading(i));
+        }
+        assertThat(outbox.pending()).isEqualTo(5);
+
+        outbox.commit(batch);
+
+        List<Reading> remaining = outbox.read(100).readings();
+        assertThat(remaining).extracting(Reading::getPower).containsExactly(6.0, 7.0, 8.0);
+        assertThat(outbox.pending()).isEqualTo(remaining.size());
+    }
+
+    @Test
+    void recordsStoreTheInstantOfTheLocalReadingTimeAndReadItBack() throws Throwable {
+        SystemZone.run(SystemZone.NON_UTC, () -> {
+            ReadingOutbox outbox = open(64 * 1024, 8);
+            outbox.append(reading(0));
+
+            // El timestamp va despues de la cabecera del registro, como epoch real (no la hora local leida como UTC)
+            try (FileChannel channel = FileChannel.open(onlySegment(), StandardOpenOption.READ)) {
+                ByteBuffer timestamp = ByteBuffer.allocate(Long.BYTES);
+                channel.read(timestamp, 8);
+                assertThat(timestamp.getLong(0)).isEqualTo(START.atZone(SystemZone.NON_UTC).toInstant().toEpochMilli());
+            }
+            assertThat(outbox.read(1).readings()).extracting(Reading::getTimestamp).containsExactly(START);
+        });
+    }
+
+    private Path onlySegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = files.filter(path -> path.toString().endsWith(".wal")).toList();
+            assertThat(segments).hasSize(1);
+            return segments.getFirst();
+        }
+    }
+}
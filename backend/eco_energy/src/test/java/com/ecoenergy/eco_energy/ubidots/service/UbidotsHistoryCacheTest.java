@@ -0,0 +1,124 @@
+package com.ecoenergy.eco_energy.ubidots.service;
+
+import com.ecoenergy.eco_energy.config.UbidotsConfig;
+import com.ecoenergy.eco_energy.ubidots.client.UbidotsClient;
+import com.ecoenergy.eco_energy.ubidots.dto.UbidotsValue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UbidotsHistoryCacheTest {
+    private static final long HOUR = Duration.ofHours(1).toMillis();
+    //2025-03-01T00:00Z: todos los bloques de este dia estan cerrados
+    private static final long PAST = 1_740_787_200_000L;
+
+    private final UbidotsClient ubidotsClient = mock(UbidotsClient.class);
+    private final UbidotsConfig config = new UbidotsConfig();
+    private final AtomicInteger calls = new AtomicInteger();
+    private UbidotsHistoryCache historyCache;
+
+    @BeforeEach
+    void setUp() {
+        config.getHistoryCache().setBlock(Duration.ofHours(1));
+        // Cada bloque devuelve un punto en su inicio
+        answerWith(Duration.ZERO);
+    }
+
+    private UbidotsHistoryCache historyCache() {
+        if (historyCache == null) {
+            historyCache = new UbidotsHistoryCache(ubidotsClient, config, new SimpleMeterRegistry());
+        }
+        return historyCache;
+    }
+
+    private void answerWith(Duration delay) {
+        when(ubidotsClient.getDeviceReadings(eq("meter-1"), eq("power"), anyLong(), anyLong()))
+                .thenAnswer(invocation -> {
+                    long start = invocation.getArgument(2);
+                    return Mono.fromCallable(() -> {
+                        calls.incrementAndGet();
+                        return List.of(new UbidotsValue(start, 100));
+                    }).delaySubscription(delay);
+                });
+    }
+
+    private List<UbidotsValue> get(long start, long end) {
+        return historyCache().getDeviceReadings("meter-1", "power", start, end).block(Duration.ofSeconds(10));
+    }
+
+    @Test
+    void closedBlocksAreFetchedOnceAndReused() {
+        List<UbidotsValue> first = get(PAST, PAST + 3 * HOUR - 1);
+        List<UbidotsValue> second = get(PAST + HOUR, PAST + 3 * HOUR - 1);
+
+        assertThat(first).extracting(UbidotsValue::getTimestamp).containsExactly(PAST, PAST + HOUR, PAST + 2 * HOUR);
+        assertThat(second).extracting(UbidotsValue::getTimestamp).containsExactly(PAST + HOUR, PAST + 2 * HOUR);
+        for (int block = 0; block < 3; block++) {
+            verify(ubidotsClient).getDeviceReadings("meter-1", "power", PAST + block * HOUR, PAST + (block + 1) * HOUR - 1);
+        }
+        assertThat(calls).hasValue(3);
+    }
+
+    @Test
+    void openTailIsFetchedAgainOnceItExpires() {
+        config.getHistoryCache().setTailTtl(Duration.ZERO);
+        long now = System.currentTimeMillis();
+
+        get(now - 60_000, now);
+        get(now - 60_000, now);
+
+        verify(ubidotsClient, times(2)).getDeviceReadings("meter-1", "power", now - 60_000, now);
+    }
+
+    @Test
+    void simultaneousIdenticalQueriesShareOneCall() {
+        answerWith(Duration.ofMillis(200));
+        long now = System.currentTimeMillis();
+
+        Mono<List<UbidotsValue>> first = historyCache().getDeviceReadings("meter-1", "power", now - 60_000, now);
+        Mono<List<UbidotsValue>> second = historyCache().getDeviceReadings("meter-1", "power", now - 60_000, now);
+        List<List<UbidotsValue>> results = Mono.zip(first, second, List::of).block(Duration.ofSeconds(10));
+
+        assertThat(results.get(0)).isEqualTo(results.get(1)).hasSize(1);
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void failuresAreNotCached() {
+        when(ubidotsClient.getDeviceReadings("meter-1", "power", PAST, PAST + HOUR - 1))
+                .thenReturn(Mono.error(new IllegalStateException("Ubidots unavailable")))
+                .thenReturn(Mono.just(List.of(new UbidotsValue(PAST, 100))));
+
+        assertThatThrownBy(() -> get(PAST, PAST + HOUR - 1)).hasMessageContaining("Ubidots unavailable");
+        assertThat(get(PAST, PAST + HOUR - 1)).hasSize(1);
+        verify(ubidotsClient, times(2)).getDeviceReadings("meter-1", "power", PAST, PAST + HOUR - 1);
+    }
+
+    @Test
+    void readTimeoutAppliesToEachBlockNotToTheWholeRange() {
+        config.setReadTimeout(Duration.ofMillis(500));
+        config.getHistoryCache().setConcurrency(1);
+        answerWith(Duration.ofMillis(200));
+
+        // Cuatro bloques uno tras otro tardan mas que el timeout, pero ninguno por separado lo excede
+        assertThat(get(PAST, PAST + 4 * HOUR - 1)).hasSize(4);
+
+        answerWith(Duration.ofSeconds(2));
+        assertThatThrownBy(() -> get(PAST + 4 * HOUR, PAST + 5 * HOUR - 1)).hasCauseInstanceOf(TimeoutException.class);
+    }
+}
@@ -0,0 +1,134 @@
+package com.ecoenergy.eco_energy.ubidots.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.config.UbidotsConfig;
+import com.ecoenergy.eco_energy.timeseries.service.SystemZone;
+import com.ecoenergy.eco_energy.ubidots.client.UbidotsClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UbidotsIngestionPipelineTest {
+    private static final LocalDateTime START = LocalDateTime.of(2025, 3, 1, 12, 0);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Set<String> delivered = ConcurrentHashMap.newKeySet();
+    private final Queue<String> bodies = new ConcurrentLinkedQueue<>();
+    private MockWebServer server;
+    private ReadingOutbox outbox;
+    private UbidotsIngestionPipeline pipeline;
+    private volatile int rejectedStatus = 400;
+
+    @TempDir
+    Path outboxDirectory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        // meter-bad siempre recibe rejectedStatus; el resto se acepta
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String device = request.getPath().substring(request.getPath().lastIndexOf('/') + 1);
+                if (device.equals("meter-bad")) {
+                    return new MockResponse().setResponseCode(rejectedStatus);
+                }
+                delivered.add(device);
+                bodies.add(request.getBody().readUtf8());
+                return new MockResponse().setBody("{}");
+            }
+        });
+        server.start();
+
+        UbidotsConfig config = new UbidotsConfig();
+        config.setApiUrl(server.url("/api/v1.6").toString());
+        config.setToken("test-token");
+        config.getResilience().setMaxRetries(0);
+        config.getOutbox().setDirectory(outboxDirectory);
+        config.getOutbox().setSegmentBytes(64 * 1024);
+        UbidotsClient client = new UbidotsClient(config.ubidotsWebClient(),
+                config.ubidotsCircuitBreaker(new SimpleMeterRegistry()), config);
+        outbox = new ReadingOutbox(config, new SimpleMeterRegistry());
+        outbox.open();
+        pipeline = new UbidotsIngestionPipeline(client, outbox, config, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException, InterruptedException {
+        outbox.close();
+        server.shutdown();
+    }
+
+    private void submitFor(List<String> devices) {
+        for (int i = 0; i < 3; i++) {
+            for (String device : devices) {
+                pipeline.submit(new Reading(device, 220, 1, 220, 30, START.plusSeconds(i)));
+            }
+        }
+    }
+
+    @Test
+    void rejectedDeviceIsDiscardedAndTheRestOfTheBatchIsCommitted() {
+        submitFor(List.of("meter-1", "meter-bad", "meter-2"));
+
+        pipeline.flush();
+
+        assertThat(delivered).containsExactlyInAnyOrder("meter-1", "meter-2");
+        assertThat(outbox.pending()).isZero();
+        assertThat(meterRegistry.counter("ubidots.ingestion.rejected.readings").count()).isEqualTo(3);
+
+        // El outbox sigue avanzando: un lote nuevo se envia sin repetir el anterior
+        delivered.clear();
+        submitFor(List.of("meter-3"));
+        pipeline.flush();
+        assertThat(delivered).containsExactly("meter-3");
+        assertThat(server.getRequestCount()).isEqualTo(4);
+    }
+
+    @Test
+    void transientFailureKeepsTheBatchForTheNextFlush() {
+        rejectedStatus = 503;
+        submitFor(List.of("meter-1", "meter-bad"));
+
+        pipeline.flush();
+
+        assertThat(outbox.pending()).isEqualTo(6);
+        assertThat(meterRegistry.counter("ubidots.ingestion.rejected.readings").count()).isZero();
+
+        rejectedStatus = 200;
+        pipeline.flush();
+        assertThat(outbox.pending()).isZero();
+    }
+
+    @Test
+    void timestampsAreSentAsTheInstantOfTheLocalReadingTime() throws Throwable {
+        SystemZone.run(SystemZone.NON_UTC, () -> {
+            pipeline.submit(new Reading("meter-1", 220, 1, 220, 30, START));
+
+            pipeline.flush();
+
+            long expected = START.atZone(SystemZone.NON_UTC).toInstant().toEpochMilli();
+            assertThat(bodies).singleElement().asString()
+                    .contains("\"timestamp\":" + expected)
+                    .doesNotContain("\"timestamp\":" + START.toInstant(ZoneOffset.UTC).toEpochMilli());
+        });
+    }
+}
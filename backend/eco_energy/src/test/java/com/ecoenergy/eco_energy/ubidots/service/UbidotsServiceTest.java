@@ -0,0 +1,84 @@
+package com.ecoenergy.eco_energy.ubidots.service;
+
+import com.ecoenergy.eco_energy.analytics.dto.Reading;
+import com.ecoenergy.eco_energy.config.UbidotsConfig;
+import com.ecoenergy.eco_energy.timeseries.service.Timestamps;
+import com.ecoenergy.eco_energy.ubidots.client.UbidotsClient;
+import com.ecoenergy.eco_energy.ubidots.dto.UbidotsValue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UbidotsServiceTest {
+    private static final LocalDateTime FROM = LocalDateTime.of(2025, 3, 1, 12, 0);
+    private static final LocalDateTime TO = FROM.plusMinutes(1);
+    private static final long T1 = Timestamps.toEpochMillis(FROM);
+    private static final long T2 = T1 + 30_000;
+
+    private final UbidotsHistoryCache historyCache = mock(UbidotsHistoryCache.class);
+    private final UbidotsService ubidotsService = new UbidotsService(mock(UbidotsClient.class), new UbidotsConfig(),
+            mock(UbidotsIngestionPipeline.class), historyCache, mock(UbidotsSpillQueue.class));
+
+    @BeforeEach
+    void setUp() {
+        variable("voltage", Mono.just(List.of(new UbidotsValue(T2, 221), new UbidotsValue(T1, 220))));
+        variable("current", Mono.just(List.of(new UbidotsValue(T2, 2), new UbidotsValue(T1, 1))));
+        variable("power", Mono.just(List.of(new UbidotsValue(T2, 442), new UbidotsValue(T1, 220))));
+        variable("temperature", Mono.just(List.of(new UbidotsValue(T2, 31), new UbidotsValue(T1, 30))));
+    }
+
+    private void variable(String name, Mono<List<UbidotsValue>> values) {
+        when(historyCache.getDeviceReadings(eq("meter-1"), eq(name), anyLong(), anyLong())).thenReturn(values);
+    }
+
+    @Test
+    void allVariablesAreJoinedByTimestamp() {
+        List<Reading> readings = ubidotsService.getReading("meter-1", FROM, TO);
+
+        assertThat(readings).extracting(Reading::getPower).containsExactly(220.0, 442.0);
+        assertThat(readings).extracting(Reading::getVoltage).containsExactly(220.0, 221.0);
+        assertThat(readings).extracting(Reading::getTemperature).containsExactly(30.0, 31.0);
+    }
+
+    @Test
+    void failedVariableIsMarkedAsNaNAndTheOthersAreKept() {
+        variable("voltage", Mono.error(new TimeoutException()));
+        variable("temperature", Mono.error(new IllegalStateException("503 Service Unavailable")));
+
+        List<Reading> readings = ubidotsService.getReading("meter-1", FROM, TO);
+
+        assertThat(readings).extracting(Reading::getPower).containsExactly(220.0, 442.0);
+        assertThat(readings).extracting(Reading::getCurrent).containsExactly(1.0, 2.0);
+        assertThat(readings).allMatch(reading -> Double.isNaN(reading.getVoltage()))
+                .allMatch(reading -> Double.isNaN(reading.getTemperature()));
+    }
+
+    @Test
+    void missingPowerFailsTheWholeQuery() {
+        variable("power", Mono.error(new TimeoutException()));
+
+        assertThatThrownBy(() -> ubidotsService.getReading("meter-1", FROM, TO))
+                .isInstanceOf(UbidotsUnavailableException.class)
+                .hasMessageContaining("power");
+    }
+
+    @Test
+    void pointWithoutAMatchWithinToleranceIsStillZero() {
+        variable("current", Mono.just(List.of(new UbidotsValue(T1, 1))));
+
+        List<Reading> readings = ubidotsService.getReading("meter-1", FROM, TO);
+
+        assertThat(readings).extracting(Reading::getCurrent).containsExactly(1.0, 0.0);
+    }
+}
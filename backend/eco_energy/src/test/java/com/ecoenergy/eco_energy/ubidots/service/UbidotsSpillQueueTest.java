@@ -0,0 +1,94 @@
+package com.ecoenergy.eco_energy.ubidots.service;
+
+import com.ecoenergy.eco_energy.config.UbidotsConfig;
+import com.ecoenergy.eco_energy.ubidots.client.UbidotsClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UbidotsSpillQueueTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private MockWebServer server;
+    private UbidotsSpillQueue spillQueue;
+
+    @TempDir
+    Path spillDirectory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+
+        UbidotsConfig config = new UbidotsConfig();
+        config.setApiUrl(server.url("/api/v1.6").toString());
+        config.setToken("test-token");
+        config.getResilience().setMaxRetries(0);
+        config.getSpill().setDirectory(spillDirectory);
+        config.getSpill().setReplayInterval(Duration.ofMillis(100));
+        UbidotsClient client = new UbidotsClient(config.ubidotsWebClient(),
+                config.ubidotsCircuitBreaker(new SimpleMeterRegistry()), config);
+        spillQueue = new UbidotsSpillQueue(client, config, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        spillQueue.stop();
+        server.shutdown();
+    }
+
+    @Test
+    void spilledPayloadsAreReplayedAndFailuresKeptForTheNextRound() throws Exception {
+        // El primer envio falla y se vuelve a guardar; el segundo ciclo lo entrega
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("{}"));
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        spillQueue.spill("meter-1", Map.of("power", 1.0));
+        spillQueue.spill("meter-1", Map.of("power", 1.0));
+        spillQueue.start();
+
+        List<String> bodies = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+            assertThat(request).isNotNull();
+            assertThat(request.getPath()).isEqualTo("/api/v1.6/devices/meter-1");
+            bodies.add(request.getBody().readUtf8());
+        }
+        assertThat(bodies).allMatch(body -> body.contains("\"power\":1.0"));
+
+        for (int attempt = 0; attempt < 50 && meterRegistry.counter("ubidots.spill.replayed").count() < 2; attempt++) {
+            Thread.sleep(100);
+        }
+        assertThat(meterRegistry.counter("ubidots.spill.replayed").count()).isEqualTo(2);
+        assertThat(meterRegistry.counter("ubidots.spill.written").count()).isEqualTo(3);
+        assertThat(server.takeRequest(300, TimeUnit.MILLISECONDS)).isNull();
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            assertThat(files.filter(Files::isRegularFile).mapToLong(UbidotsSpillQueueTest::size).sum()).isZero();
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
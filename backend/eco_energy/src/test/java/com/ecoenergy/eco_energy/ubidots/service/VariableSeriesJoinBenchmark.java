@@ -0,0 +1,149 @@
+package com.ecoenergy.eco_energy.ubidots.service;
+
+import com.ecoenergy.eco_energy.ubidots.dto.UbidotsValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+//Union de las cuatro variables de un dia: busqueda lineal por timestamp (implementacion anterior,
+//O(n·m) sobre mapas) contra VariableSeries (una pasada sobre arreglos primitivos).
+//  1k    ~ un dia a 86 s entre lecturas
+//  17k   ~ un dia a 5 s entre lecturas
+//  500k  ~ un dia a 170 ms (solo VariableSeries: la busqueda lineal tardaria minutos por operacion)
+//Ejecutar: mvn test-compile y luego java -cp target/test-classes:<classpath de test>
+//  com.ecoenergy.eco_energy.ubidots.service.VariableSeriesJoinBenchmark
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VariableSeriesJoinBenchmark {
+    private static final long DAY_MILLIS = 86_400_000L;
+    private static final long TOLERANCE_MILLIS = 1_000;
+
+    @State(Scope.Benchmark)
+    public static class Day {
+        @Param({"1000", "17280", "500000"})
+        int points;
+
+        List<UbidotsValue> voltage;
+        List<UbidotsValue> current;
+        List<UbidotsValue> power;
+        List<UbidotsValue> temperature;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            SplittableRandom random = new SplittableRandom(42);
+            voltage = variable(points, random, 220);
+            current = variable(points, random, 5);
+            power = variable(points, random, 1_100);
+            temperature = variable(points, random, 35);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class LegacyDay {
+        @Param({"1000", "17280"})
+        int points;
+
+        List<Map<String, Object>> voltage;
+        List<Map<String, Object>> current;
+        List<Map<String, Object>> power;
+        List<Map<String, Object>> temperature;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            SplittableRandom random = new SplittableRandom(42);
+            voltage = asMaps(variable(points, random, 220));
+            current = asMaps(variable(points, random, 5));
+            power = asMaps(variable(points, random, 1_100));
+            temperature = asMaps(variable(points, random, 35));
+        }
+    }
+
+    @Benchmark
+    public double sortMergeJoin(Day day) {
+        VariableSeries voltage = VariableSeries.of(day.voltage);
+        VariableSeries current = VariableSeries.of(day.current);
+        VariableSeries power = VariableSeries.of(day.power);
+        VariableSeries temperature = VariableSeries.of(day.temperature);
+
+        double checksum = 0;
+        for (int i = 0; i < power.size(); i++) {
+            long timestamp = power.timestampAt(i);
+            checksum += power.valueAt(i)
+                    + voltage.nearest(timestamp, TOLERANCE_MILLIS)
+                    + current.nearest(timestamp, TOLERANCE_MILLIS)
+                    + temperature.nearest(timestamp, TOLERANCE_MILLIS);
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public double linearScanJoin(LegacyDay day) {
+        double checksum = 0;
+        for (Map<String, Object> powerReading : day.power) {
+            long timestamp = ((Number) powerReading.get("timestamp")).longValue();
+            checksum += ((Number) powerReading.get("value")).doubleValue()
+                    + findValueByTimestamp(day.voltage, timestamp)
+                    + findValueByTimestamp(day.current, timestamp)
+                    + findValueByTimestamp(day.temperature, timestamp);
+        }
+        return checksum;
+    }
+
+    //Implementacion anterior de UbidotsService
+    private static double findValueByTimestamp(List<Map<String, Object>> values, long timestamp) {
+        return values.stream()
+                .filter(reading -> ((Number) reading.get("timestamp")).longValue() == timestamp)
+                .findFirst()
+                .map(reading -> ((Number) reading.get("value")).doubleValue())
+                .orElse(0.0);
+    }
+
+    //Puntos del dia del mas reciente al mas antiguo, como los entrega Ubidots
+    private static List<UbidotsValue> variable(int points, SplittableRandom random, double mean) {
+        long step = DAY_MILLIS / points;
+        List<UbidotsValue> values = new ArrayList<>(points);
+        for (int i = points - 1; i >= 0; i--) {
+            values.add(new UbidotsValue(i * step, mean * (0.9 + random.nextDouble() * 0.2)));
+        }
+        return values;
+    }
+
+    private static List<Map<String, Object>> asMaps(List<UbidotsValue> values) {
+        List<Map<String, Object>> maps = new ArrayList<>(values.size());
+        for (UbidotsValue value : values) {
+            Map<String, Object> map = new HashMap<>();
+            map.put("timestamp", value.getTimestamp());
+            map.put("value", value.getValue());
+            maps.add(map);
+        }
+        return maps;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(VariableSeriesJoinBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
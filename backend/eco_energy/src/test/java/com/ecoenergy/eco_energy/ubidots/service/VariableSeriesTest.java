@@ -0,0 +1,114 @@
+package com.ecoenergy.eco_energy.ubidots.service;
+
+import com.ecoenergy.eco_energy.ubidots.dto.UbidotsValue;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VariableSeriesTest {
+
+    private static VariableSeries series(long... timestampsAndValues) {
+        List<UbidotsValue> points = new ArrayList<>();
+        for (int i = 0; i < timestampsAndValues.length; i += 2) {
+            points.add(new UbidotsValue(timestampsAndValues[i], timestampsAndValues[i + 1]));
+        }
+        return VariableSeries.of(points);
+    }
+
+    @Test
+    void exactMatchWithZeroTolerance() {
+        VariableSeries voltage = series(1_000, 220, 2_000, 221, 3_000, 222);
+
+        assertThat(voltage.nearest(1_000, 0)).isEqualTo(220);
+        assertThat(voltage.nearest(2_500, 0)).isEqualTo(0.0);
+        assertThat(voltage.nearest(3_000, 0)).isEqualTo(222);
+    }
+
+    @Test
+    void toleranceEdgesAreInclusive() {
+        // Serie nueva por consulta: el cursor solo admite timestamps crecientes
+        assertThat(series(10_000, 220).nearest(9_500, 500)).isEqualTo(220);
+        assertThat(series(10_000, 220).nearest(10_500, 500)).isEqualTo(220);
+        assertThat(series(10_000, 220).nearest(9_499, 500)).isEqualTo(0.0);
+        assertThat(series(10_000, 220).nearest(10_501, 500)).isEqualTo(0.0);
+    }
+
+    @Test
+    void picksClosestPointInsideTolerance() {
+        VariableSeries current = series(1_000, 1, 1_900, 2, 2_300, 3);
+
+        assertThat(current.nearest(2_000, 1_000)).isEqualTo(2);
+        assertThat(current.nearest(2_200, 1_000)).isEqualTo(3);
+    }
+
+    @Test
+    void tiesResolveToTheEarlierPoint() {
+        VariableSeries temperature = series(1_000, 30, 3_000, 40);
+
+        assertThat(temperature.nearest(2_000, 1_000)).isEqualTo(30);
+    }
+
+    @Test
+    void duplicateTimestampsKeepTheFirstValue() {
+        VariableSeries temperature = series(1_000, 30, 1_000, 31, 2_000, 32);
+
+        assertThat(temperature.nearest(1_000, 0)).isEqualTo(30);
+        assertThat(temperature.nearest(2_000, 0)).isEqualTo(32);
+    }
+
+    @Test
+    void gapsReturnZeroAndTheCursorResumesAfterThem() {
+        VariableSeries voltage = series(1_000, 220, 2_000, 221, 60_000, 230, 61_000, 231);
+
+        assertThat(voltage.nearest(1_000, 100)).isEqualTo(220);
+        assertThat(voltage.nearest(30_000, 100)).isEqualTo(0.0);
+        assertThat(voltage.nearest(45_000, 100)).isEqualTo(0.0);
+        assertThat(voltage.nearest(60_050, 100)).isEqualTo(230);
+        assertThat(voltage.nearest(61_000, 100)).isEqualTo(231);
+        assertThat(voltage.nearest(90_000, 100)).isEqualTo(0.0);
+    }
+
+    @Test
+    void emptySeriesAlwaysReturnsZero() {
+        VariableSeries empty = VariableSeries.of(List.of());
+
+        assertThat(empty.size()).isZero();
+        assertThat(empty.nearest(1_000, 10_000)).isEqualTo(0.0);
+    }
+
+    @Test
+    void descendingInputIsReversed() {
+        // Ubidots entrega los valores del mas reciente al mas antiguo
+        VariableSeries power = series(3_000, 3, 2_000, 2, 1_000, 1);
+
+        assertThat(power.timestampAt(0)).isEqualTo(1_000);
+        assertThat(power.valueAt(0)).isEqualTo(1);
+        assertThat(power.timestampAt(2)).isEqualTo(3_000);
+        assertThat(power.valueAt(2)).isEqualTo(3);
+    }
+
+    @Test
+    void unorderedInputIsSorted() {
+        VariableSeries power = series(2_000, 2, 3_000, 3, 1_000, 1);
+
+        assertThat(power.timestampAt(0)).isEqualTo(1_000);
+        assertThat(power.timestampAt(1)).isEqualTo(2_000);
+        assertThat(power.timestampAt(2)).isEqualTo(3_000);
+        assertThat(power.nearest(2_000, 0)).isEqualTo(2);
+    }
+
+    @Test
+    void matchesExactJoinWhenTimestampsAlign() {
+        // Mismo resultado que la busqueda lineal anterior cuando los timestamps coinciden
+        VariableSeries voltage = series(0, 100, 5_000, 101, 10_000, 102, 20_000, 104);
+        long[] queries = {0, 5_000, 10_000, 15_000, 20_000};
+        double[] expected = {100, 101, 102, 0.0, 104};
+
+        for (int i = 0; i < queries.length; i++) {
+            assertThat(voltage.nearest(queries[i], 0)).isEqualTo(expected[i]);
+        }
+    }
+}